@@ -42,6 +42,7 @@ public final class App {
       if(Reminder.isAfterRemindingDate())
         SwingUtilities.invokeLater( new Runnable(){ @Override public void run() { new Reminder(); } } );
     } else {
+      TimeSeries.preload();
       SwingUtilities.invokeLater(new Runnable() {
         @Override public void run() {
           DiabetesDoc dd = new DiabetesDoc();
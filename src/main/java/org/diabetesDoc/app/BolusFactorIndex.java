@@ -0,0 +1,264 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * This Class is the index of the bolus factors for carbohydrates (see <i>resources/bolusfactor.dtd</i>).<br>
+ * Every file of the directory <i>xml/bolusfactors</i> is valid from its <code>begin</code> on and
+ * defines a factor per period of the day. The index keeps the beginnings sorted and one factor
+ * per minute of the day for every file, so a factor is found by a binary search and an array access.
+ * The index is immutable; if the files change, a new index is built and replaces the old one.
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class BolusFactorIndex {
+  /** The directory containing the bolus factors. */
+  static final File DIR = new File("xml/bolusfactors");
+
+  /** The directory read, {@link BolusFactorIndex#DIR} but for tests. */
+  private static volatile File dir = DIR;
+
+  /** The minimal time in milliseconds between two checks of the files for changes. */
+  private static final long CHECK_INTERVAL = 2000;
+
+  /** The minutes of a day. */
+  private static final int MINUTES = 24 * 60;
+
+  /** The current index. */
+  private static volatile BolusFactorIndex current;
+
+  /** The time of the last check of the files in milliseconds. */
+  private static volatile long lastCheck;
+
+  /** The beginnings of the validity in milliseconds, sorted ascending. */
+  private final long[] begins;
+
+  /** The factors per minute of the day, in the order of {@link BolusFactorIndex#begins}. */
+  private final double[][] factors;
+
+  /** The signature of the files, the index was built from. */
+  private final long signature;
+
+  private BolusFactorIndex(final long[] begins, final double[][] factors, final long signature) {
+    this.begins = begins;
+    this.factors = factors;
+    this.signature = signature;
+  }
+
+  /**
+   * Returns the current index. At most every {@link BolusFactorIndex#CHECK_INTERVAL} milliseconds,
+   * the files are checked for changes and the index is built again, if necessary.
+   *
+   * @return The current {@code BolusFactorIndex}.
+   */
+  static BolusFactorIndex get() {
+    BolusFactorIndex index = current;
+    long now = System.currentTimeMillis();
+    if(index == null || now - lastCheck > CHECK_INTERVAL) {
+      synchronized(BolusFactorIndex.class) {
+        index = current;
+        if(index == null || now - lastCheck > CHECK_INTERVAL) {
+          File[] files = listFiles();
+          long signature = signature(files);
+          if(index == null || index.signature != signature) {
+            index = build(files, signature);
+            current = index;
+          }
+          lastCheck = now;
+        }
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Sets the directory containing the bolus factors, e.g. a temporary one for tests.
+   * The index is built again from its files when next used.
+   *
+   * @param directory - The directory.
+   */
+  static synchronized void setDirectory(final File directory) {
+    dir = directory;
+    current = null;
+  }
+
+  /**
+   * Returns the bolus factor for carbohydrates at the given time.
+   *
+   * @param date - The date and time.
+   * @return The factor in IU per gram or <code>0</code>, if no factor is defined.
+   */
+  double getFactor(final Calendar date) {
+    return getFactor(date.getTimeInMillis(), date.get(Calendar.HOUR_OF_DAY) * 60 + date.get(Calendar.MINUTE));
+  }
+
+  /**
+   * Returns the bolus factor for carbohydrates at the given time.
+   * The factors valid are those of the latest <code>begin</code> before the time,
+   * of these the factor of the latest period beginning before the minute.
+   *
+   * @param millis - The time in milliseconds.
+   * @param minute - The minute of the day of the time.
+   * @return The factor in IU per gram or <code>0</code>, if no factor is defined.
+   */
+  double getFactor(final long millis, final int minute) {
+    int i = Arrays.binarySearch(begins, millis);
+    i = (i >= 0) ? i - 1 : -i - 2; // the last beginning strictly before
+    while(i >= 0 && begins[i] >= millis)
+      i--;
+    if(i < 0 || minute < 0 || minute >= MINUTES)
+      return 0;
+    return factors[i][minute];
+  }
+
+  /**
+   * @return The signature of the files, the index was built from.
+   */
+  long getSignature() {
+    return signature;
+  }
+
+  /**
+   * @return The files of the bolus factors, sorted by name.
+   */
+  private static File[] listFiles() {
+    File[] files = dir.listFiles(new java.io.FileFilter() {
+      @Override
+      public boolean accept(File f) {
+        return f.isFile() && f.getName().toLowerCase().endsWith(".xml");
+      }
+    });
+    if(files == null)
+      return new File[0];
+    Arrays.sort(files);
+    return files;
+  }
+
+  /**
+   * @param files - The files of the bolus factors.
+   * @return The signature of the names, sizes and modification times of the files.
+   */
+  private static long signature(final File[] files) {
+    long signature = files.length;
+    for(File f : files)
+      signature = 31 * (31 * (31 * signature + f.getName().hashCode()) + f.length()) + f.lastModified();
+    return signature;
+  }
+
+  /**
+   * Builds the index of the given files. Files, which cannot be read, are skipped.
+   *
+   * @param files - The files of the bolus factors, sorted by name.
+   * @param signature - The signature of the files.
+   * @return The new {@code BolusFactorIndex}.
+   */
+  private static BolusFactorIndex build(final File[] files, final long signature) {
+    List<Factors> entries = new ArrayList<Factors>();
+    for(File f : files) {
+      try {
+        entries.add(read(f));
+      } catch(IOException | XMLStreamException | RuntimeException e) {
+        e.printStackTrace();
+      }
+    }
+    // stable, so of equal beginnings the last file wins
+    Collections.sort(entries, new Comparator<Factors>() {
+      @Override
+      public int compare(Factors f1, Factors f2) {
+        return Long.compare(f1.begin, f2.begin);
+      }
+    });
+    long[] begins = new long[entries.size()];
+    double[][] factors = new double[entries.size()][];
+    for(int i = 0; i < begins.length; i++) {
+      begins[i] = entries.get(i).begin;
+      factors[i] = entries.get(i).minutes;
+    }
+    return new BolusFactorIndex(begins, factors, signature);
+  }
+
+  /**
+   * Reads a file of bolus factors.
+   *
+   * @param f - The file with DTD <code>bolusfactor</code>.
+   * @return The factors of the file.
+   * @throws IOException If an I/O exception occurs while reading the file.
+   * @throws XMLStreamException If an error occurs while parsing the XML-data.
+   */
+  private static Factors read(final File f) throws IOException, XMLStreamException {
+    Long begin = null;
+    double[] minutes = new double[MINUTES];
+    try(InputStream in = new BufferedInputStream(new FileInputStream(f))) {
+      XMLStreamReader r = DeviceInputParser.XML_INPUT_FACTORY.createXMLStreamReader(in);
+      try {
+        while(r.hasNext()) {
+          if(r.next() != XMLStreamConstants.START_ELEMENT)
+            continue;
+          if(r.getLocalName().equals("bolusfactor")) {
+            begin = Utils.toMillis(r.getAttributeValue(null, "begin"));
+          } else if(r.getLocalName().equals("period")) {
+            String[] time = r.getAttributeValue(null, "begin").split(":");
+            int start = Integer.parseInt(time[0]) * 60 + Integer.parseInt(time[1]);
+            double factor = Double.parseDouble(r.getAttributeValue(null, "khfactor"));
+            // a period applies after its beginning, later periods of the file replace earlier ones
+            Arrays.fill(minutes, Math.max(0, Math.min(MINUTES, start + 1)), MINUTES, factor);
+          }
+        }
+      } finally {
+        r.close();
+      }
+    }
+    if(begin == null)
+      throw new IllegalArgumentException("No bolusfactor: " + f.getPath());
+    return new Factors(begin, minutes);
+  }
+
+  /**
+   * The factors of one file.
+   */
+  private static final class Factors {
+    /** The beginning of the validity in milliseconds. */
+    final long begin;
+    /** The factors per minute of the day. */
+    final double[] minutes;
+
+    Factors(final long begin, final double[] minutes) {
+      this.begin = begin;
+      this.minutes = minutes;
+    }
+  }
+}
@@ -0,0 +1,242 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+
+import java.text.DateFormatSymbols;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Locale;
+
+/**
+ * This Class is the date and time core of DiabetesDoc: it parses dates and times
+ * at fixed positions into primitives (days since 1970-01-01 and minutes of the day)
+ * and formats them again, without {@link java.util.Calendar}s, regular expressions
+ * or {@link java.util.Formatter}s.
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class DateUtils {
+  /** The localized names of the days of week of the last locale used. */
+  private static volatile Weekdays weekdays;
+
+  /** No constructor, only static methods. */
+  private DateUtils() {}
+
+  /**
+   * Converts the given date {@code String} to the days since 1970-01-01.
+   * As with a lenient {@code Calendar}, days and months out of range roll over.
+   *
+   * @param date - The date with the format <code>YYYY-MM-DD</code>,
+   *               <code>MM/DD/YY</code> (since 2000) or <code>DD.MM.YYYY</code>
+   * @return The epoch day.
+   * @throws NumberFormatException If the date has none of the formats.
+   */
+  static long toEpochDay(final String date) {
+    if(date.length() == 10 && date.charAt(4) == '-' && date.charAt(7) == '-') // GB and ISO-8601
+      return toEpochDay(digits(date, 0, 4), digits(date, 5, 7), digits(date, 8, 10));
+    if(date.length() == 10 && date.charAt(2) == '.' && date.charAt(5) == '.') // DE
+      return toEpochDay(digits(date, 6, 10), digits(date, 3, 5), digits(date, 0, 2));
+    int slash1 = date.indexOf('/'), slash2 = date.indexOf('/', slash1 + 1); // US
+    if(slash1 < 0 || slash2 < 0)
+      throw new NumberFormatException("No date: " + date);
+    return toEpochDay(2000 + digits(date, slash2 + 1, date.length()), digits(date, 0, slash1),
+        digits(date, slash1 + 1, slash2));
+  }
+
+  /**
+   * Converts the given date to the days since 1970-01-01 (proleptic Gregorian calendar).
+   * Days and months out of range roll over.
+   *
+   * @param year - The year.
+   * @param month - The month (<code>1</code> to <code>12</code>).
+   * @param day - The day of month (<code>1</code> to <code>31</code>).
+   * @return The epoch day.
+   */
+  static long toEpochDay(final int year, final int month, final int day) {
+    return LocalDate.of(year + Math.floorDiv(month - 1, 12), Math.floorMod(month - 1, 12) + 1, 1).toEpochDay() + day - 1;
+  }
+
+  /**
+   * Converts the given epoch day to year, month and day of month.
+   *
+   * @param epochDay - The days since 1970-01-01.
+   * @return The date as number <code>YYYYMMDD</code> (year * 10000 + month * 100 + day).
+   */
+  static int toYearMonthDay(final long epochDay) {
+    LocalDate d = LocalDate.ofEpochDay(epochDay);
+    return d.getYear() * 10000 + d.getMonthValue() * 100 + d.getDayOfMonth();
+  }
+
+  /**
+   * @param epochDay - The days since 1970-01-01.
+   * @return The day of week as {@link java.util.Calendar#SUNDAY} (<code>1</code>)
+   *         to {@link java.util.Calendar#SATURDAY} (<code>7</code>).
+   */
+  static int dayOfWeek(final long epochDay) {
+    // 1970-01-01 was a thursday
+    return (int) Math.floorMod(epochDay + 4, 7) + 1;
+  }
+
+  /**
+   * @param epochDay - The days since 1970-01-01.
+   * @return <b><code>true</code></b>, if the day is a saturday or sunday;
+   *         <b><code>false</code></b>, otherwise.
+   */
+  static boolean isWeekend(final long epochDay) {
+    int d = dayOfWeek(epochDay);
+    return d == java.util.Calendar.SATURDAY || d == java.util.Calendar.SUNDAY;
+  }
+
+  /**
+   * @param epochDay - The days since 1970-01-01.
+   * @return The milliseconds since 1970-01-01 00:00 UTC of the beginning of the day
+   *         in the default time zone.
+   */
+  static long toMillis(final long epochDay) {
+    return LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+
+  /**
+   * Converts the given time {@code String} to the minute of the day.
+   *
+   * @param time - The time with the format <code>hh:mm</code>.
+   * @return The minute of the day or <code>-1</code>, if the time is not of the format <code>hh:mm</code>.
+   */
+  static int toMinute(final String time) {
+    if(time == null || time.length() != 5 || time.charAt(2) != ':')
+      return -1;
+    int h1 = time.charAt(0) - '0', h2 = time.charAt(1) - '0', m1 = time.charAt(3) - '0', m2 = time.charAt(4) - '0';
+    if(h1 < 0 || h1 > 9 || h2 < 0 || h2 > 9 || m1 < 0 || m1 > 9 || m2 < 0 || m2 > 9)
+      return -1;
+    return (10*h1 + h2) * 60 + 10*m1 + m2;
+  }
+
+  /**
+   * Formats the given date.
+   *
+   * @param year - The year.
+   * @param month - The month (<code>1</code> to <code>12</code>).
+   * @param day - The day of month.
+   * @param german - Whether the format is <code>DD.MM.YYYY</code> instead of <code>YYYY-MM-DD</code>.
+   * @return The formatted date.
+   */
+  static String toDateString(final int year, final int month, final int day, final boolean german) {
+    if(year < 0 || year > 9999) // not of fixed width
+      return german ? String.format("%02d.%02d.%04d", day, month, year) : String.format("%04d-%02d-%02d", year, month, day);
+    char[] c = new char[10];
+    if(german) {
+      put(c, 0, day, 2);
+      c[2] = '.';
+      put(c, 3, month, 2);
+      c[5] = '.';
+      put(c, 6, year, 4);
+    } else {
+      put(c, 0, year, 4);
+      c[4] = '-';
+      put(c, 5, month, 2);
+      c[7] = '-';
+      put(c, 8, day, 2);
+    }
+    return new String(c);
+  }
+
+  /**
+   * Formats the given epoch day.
+   *
+   * @param epochDay - The days since 1970-01-01.
+   * @param german - Whether the format is <code>DD.MM.YYYY</code> instead of <code>YYYY-MM-DD</code>.
+   * @return The formatted date.
+   */
+  static String toDateString(final long epochDay, final boolean german) {
+    int ymd = toYearMonthDay(epochDay);
+    return toDateString(ymd / 10000, ymd / 100 % 100, ymd % 100, german);
+  }
+
+  /**
+   * Returns the name of the day of week in the language set by {@link Locale#getDefault(Locale.Category)}.
+   *
+   * @param dayOfWeek - The day of week, given by {@link java.util.Calendar#SUNDAY} to
+   *                    {@link java.util.Calendar#SATURDAY}.
+   * @return The localized name.
+   */
+  static String getWeekdayName(final int dayOfWeek) {
+    Locale l = Locale.getDefault(Locale.Category.FORMAT);
+    Weekdays w = weekdays;
+    if(w == null || !l.equals(w.locale)) {
+      w = new Weekdays(l);
+      weekdays = w;
+    }
+    return w.names[dayOfWeek];
+  }
+
+  /**
+   * Parses the decimal digits between the given positions.
+   *
+   * @param s - The {@code String} to parse.
+   * @param from - The first position (inclusive).
+   * @param to - The last position (exclusive).
+   * @return The number.
+   * @throws NumberFormatException If there are no digits or other chars.
+   */
+  private static int digits(final String s, final int from, final int to) {
+    if(from >= to)
+      throw new NumberFormatException("No number in: " + s);
+    int n = 0;
+    for(int i = from; i < to; i++) {
+      int d = s.charAt(i) - '0';
+      if(d < 0 || d > 9)
+        throw new NumberFormatException("No number in: " + s);
+      n = 10 * n + d;
+    }
+    return n;
+  }
+
+  /**
+   * Writes the given number with leading zeros.
+   *
+   * @param c - The chars to write to.
+   * @param pos - The first position.
+   * @param n - The non-negative number.
+   * @param width - The number of digits.
+   */
+  private static void put(final char[] c, final int pos, int n, final int width) {
+    for(int i = pos + width - 1; i >= pos; i--) {
+      c[i] = (char) ('0' + n % 10);
+      n /= 10;
+    }
+  }
+
+  /**
+   * The names of the days of week of a locale, published together with it.
+   */
+  private static final class Weekdays {
+    /** The locale. */
+    final Locale locale;
+    /** The localized names, indexed by {@link java.util.Calendar#DAY_OF_WEEK}. */
+    final String[] names;
+
+    Weekdays(final Locale locale) {
+      this.locale = locale;
+      this.names = DateFormatSymbols.getInstance(locale).getWeekdays();
+    }
+  }
+}
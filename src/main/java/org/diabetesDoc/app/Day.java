@@ -0,0 +1,91 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This Class is a stored day as element of {@link DayStore#stream(String, String)}:
+ * its entries and its typed readings (bg values, insulin, carbohydrates and events
+ * by minute of the day, see {@link DayBuffer}).
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class Day {
+  /** The day's date (format <code>YYYY-MM-DD</code>). */
+  private final String date;
+
+  /** The day's entries in stored order. */
+  private final List<DayRecord> records;
+
+  /** The day's readings or <code>null</code>, if not yet created. */
+  private DayBuffer readings;
+
+  /**
+   * Creates a new {@code Day}.
+   *
+   * @param date - The day's date (format <code>YYYY-MM-DD</code>).
+   * @param records - The day's entries.
+   */
+  Day(final String date, final List<DayRecord> records) {
+    this.date = date;
+    this.records = Collections.unmodifiableList(records);
+  }
+
+  /**
+   * @return The day's date (format <code>YYYY-MM-DD</code>).
+   */
+  String getDate() {
+    return date;
+  }
+
+  /**
+   * @return The days since 1970-01-01.
+   */
+  long getEpochDay() {
+    return DateUtils.toEpochDay(date);
+  }
+
+  /**
+   * @return The day's entries in stored order.
+   */
+  List<DayRecord> getRecords() {
+    return records;
+  }
+
+  /**
+   * @return The day's readings, created on first use.
+   */
+  DayBuffer getReadings() {
+    if(readings == null)
+      readings = DayBuffer.of(date, records);
+    return readings;
+  }
+
+  /**
+   * @return The {@link Table}s of the day (see {@link TableFactory}).
+   */
+  List<Table> createTables() {
+    return TableFactory.createTables(date, records);
+  }
+}
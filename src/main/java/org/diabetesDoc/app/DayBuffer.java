@@ -0,0 +1,253 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This Class holds the measurements of a day in parallel primitive arrays (one entry per index):
+ * minute of the day, bg, insulin (total, for carbohydrates and for correction), carbohydrates
+ * and event code. A buffer can be reset and filled again, so reading many days allocates
+ * nothing per entry. The insulin for carbohydrates is calculated with the bolus factor
+ * valid at the entry's date and time (see {@link BolusFactorIndex}).
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class DayBuffer {
+  /** The date of the day (format <code>YYYY-MM-DD</code>). */
+  private String date;
+
+  /** The beginning of the day in milliseconds. */
+  private long dayStart;
+
+  /** The number of entries. */
+  private int size = 0;
+
+  /** The minutes of the day. */
+  private int[] minutes;
+
+  /** The bg values in mg/dl, <code>0</code> if none. */
+  private short[] bg;
+
+  /** The total insulin units. */
+  private float[] bolus;
+
+  /** The carbohydrates in bread units (12 g). */
+  private float[] carbs;
+
+  /** The insulin units for correction, i.e. not for carbohydrates. */
+  private float[] correction;
+
+  /** The event codes (see {@link DayRecord#getEventCode()}). */
+  private short[] events;
+
+  /**
+   * Creates a new, empty {@code DayBuffer}.
+   *
+   * @param capacity - The initial capacity; the buffer grows if necessary.
+   */
+  DayBuffer(final int capacity) {
+    int c = Math.max(1, capacity);
+    minutes = new int[c];
+    bg = new short[c];
+    bolus = new float[c];
+    carbs = new float[c];
+    correction = new float[c];
+    events = new short[c];
+  }
+
+  /**
+   * Creates a {@code DayBuffer} of all entries of a day having a time:
+   * the bg values (except control measurements), the insulin and carbohydrates noted at the bg,
+   * the boluses and the events.
+   *
+   * @param date - The day's date (format <code>YYYY-MM-DD</code>).
+   * @param records - The day's entries.
+   * @return The {@code DayBuffer}.
+   */
+  static DayBuffer of(final String date, final List<DayRecord> records) {
+    DayBuffer buffer = new DayBuffer(records.size());
+    buffer.fill(date, records);
+    return buffer;
+  }
+
+  /**
+   * Resets the buffer and fills it with the entries of a day (see {@link DayBuffer#of(String, List)}).
+   *
+   * @param date - The day's date (format <code>YYYY-MM-DD</code>).
+   * @param records - The day's entries.
+   */
+  void fill(final String date, final List<DayRecord> records) {
+    reset(date);
+    for(DayRecord r : records) {
+      int minute = r.getMinute();
+      if(minute < 0)
+        continue;
+      short event = r.getEventCode();
+      switch(r.name) {
+      case "BG":
+        if(event == DayRecord.EVENT_CONTROL)
+          add(minute, 0, 0, 0, event);
+        else
+          add(minute, r.getBG(), r.getInsulin(), toBreadUnits(r.getCarbs()), event);
+        break;
+      case "BOLUS":
+        add(minute, 0, r.getInsulin(), 0, event);
+        break;
+      default:
+        if(event != DayRecord.EVENT_NONE)
+          add(minute, 0, 0, 0, event);
+      }
+    }
+  }
+
+  /**
+   * Converts gram to bread units, rounded to one decimal as shown in the tables.
+   *
+   * @param gram - The carbohydrates in gram.
+   * @return The carbohydrates in bread units (12 g).
+   */
+  static float toBreadUnits(final float gram) {
+    return Math.round(gram / 12.0 * 10) / 10f;
+  }
+
+  /**
+   * Removes all entries and sets the date.
+   *
+   * @param date - The date of the day (format <code>YYYY-MM-DD</code>).
+   */
+  void reset(final String date) {
+    if(!date.equals(this.date)) {
+      this.date = date;
+      this.dayStart = Utils.isDateString(date) ? Utils.toMillis(date) : 0;
+    }
+    size = 0;
+  }
+
+  /**
+   * Adds an entry.
+   *
+   * @param minute - The minute of the day.
+   * @param bgValue - The bg in mg/dl or <code>0</code>.
+   * @param insulin - The total insulin units.
+   * @param breadUnits - The carbohydrates in bread units.
+   * @param event - The event code (see {@link DayRecord#getEventCode()}).
+   * @return The index of the entry.
+   */
+  int add(final int minute, final int bgValue, final float insulin, final float breadUnits, final short event) {
+    if(size == minutes.length)
+      grow();
+    minutes[size] = minute;
+    bg[size] = (short) bgValue;
+    bolus[size] = insulin;
+    carbs[size] = breadUnits;
+    events[size] = event;
+    correction[size] = insulin - carbInsulin(minute, breadUnits);
+    return size++;
+  }
+
+  /**
+   * Adds the values to the entry with the given index: the bg values are averaged,
+   * the insulin and carbohydrates summed. The time of the entry is kept.
+   *
+   * @param i - The index of the entry.
+   * @param bgValue - The bg in mg/dl or <code>0</code>.
+   * @param insulin - The total insulin units.
+   * @param breadUnits - The carbohydrates in bread units.
+   */
+  void merge(final int i, final int bgValue, final float insulin, final float breadUnits) {
+    if(bg[i] == 0 || bgValue == 0)
+      bg[i] += bgValue;
+    else
+      bg[i] = (short) ((bg[i] + bgValue) / 2);
+    bolus[i] += insulin;
+    carbs[i] += breadUnits;
+    correction[i] = bolus[i] - carbInsulin(minutes[i], carbs[i]);
+  }
+
+  /**
+   * @param minute - The minute of the day.
+   * @param breadUnits - The carbohydrates in bread units.
+   * @return The insulin units for the carbohydrates.
+   */
+  private float carbInsulin(final int minute, final float breadUnits) {
+    if(breadUnits == 0)
+      return 0;
+    // the factors begin at midnight, so any time after it is "after the beginning of the day"
+    return (float) (breadUnits * BolusFactorIndex.get().getFactor(dayStart + Math.min(minute, 1), minute));
+  }
+
+  private void grow() {
+    int c = 2 * minutes.length;
+    minutes = Arrays.copyOf(minutes, c);
+    bg = Arrays.copyOf(bg, c);
+    bolus = Arrays.copyOf(bolus, c);
+    carbs = Arrays.copyOf(carbs, c);
+    correction = Arrays.copyOf(correction, c);
+    events = Arrays.copyOf(events, c);
+  }
+
+  /** @return The date of the day (format <code>YYYY-MM-DD</code>). */
+  String getDate() {
+    return date;
+  }
+
+  /** @return The number of entries. */
+  int size() {
+    return size;
+  }
+
+  /** @return The minute of the day of the entry. */
+  int getMinute(final int i) {
+    return minutes[i];
+  }
+
+  /** @return The bg of the entry in mg/dl or <code>0</code>. */
+  int getBG(final int i) {
+    return bg[i];
+  }
+
+  /** @return The total insulin units of the entry. */
+  float getBolus(final int i) {
+    return bolus[i];
+  }
+
+  /** @return The carbohydrates of the entry in bread units. */
+  float getCarbs(final int i) {
+    return carbs[i];
+  }
+
+  /** @return The insulin units for carbohydrates of the entry. */
+  float getCarbInsulin(final int i) {
+    return bolus[i] - correction[i];
+  }
+
+  /** @return The insulin units for correction of the entry. */
+  float getCorrection(final int i) {
+    return correction[i];
+  }
+
+  /** @return The event code of the entry (see {@link DayRecord#getEventCode()}). */
+  short getEvent(final int i) {
+    return events[i];
+  }
+}
@@ -0,0 +1,267 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * This Class is the catalog of the days of a {@link DayStore}.<br>
+ * For every day stored it keeps a summary (see {@link Entry}), so the list of days and
+ * the days of a range are known without touching the files of the days. The catalog is
+ * saved in a file of the store and updated with every day written.
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class DayCatalog {
+  /** The separator of the values of an entry. */
+  private static final String SEPARATOR = ";";
+
+  /** The file, in which the catalog is saved. */
+  private final File file;
+
+  /** The store of the days. */
+  private final DayStore store;
+
+  /** The entries by date. */
+  private final TreeMap<String, Entry> entries = new TreeMap<String, Entry>();
+
+  /** Whether the entries have been changed since loading. */
+  private boolean modified = false;
+
+  /**
+   * Creates a new {@code DayCatalog} for the given store and loads it from the given file.
+   * Days added to or removed from the store without the catalog (e.g. by copying files)
+   * are detected by comparing the dates, days changed without it (e.g. by editing them by hand)
+   * by comparing the time of the last modification; a missing catalog is created from all days.
+   *
+   * @param file - The file, in which the catalog is saved.
+   * @param store - The {@link DayStore} of the days.
+   */
+  DayCatalog(final File file, final DayStore store) {
+    this.file = file;
+    this.store = store;
+    if(file.exists()) {
+      Properties p = new Properties();
+      try(FileReader fr = new FileReader(file)) {
+        p.load(fr);
+        for(String date : p.stringPropertyNames()) {
+          Entry e = Entry.parse(p.getProperty(date));
+          if(e != null)
+            entries.put(date, e);
+        }
+      } catch(IOException e) {
+        e.printStackTrace(); // create it again
+        entries.clear();
+      }
+    }
+    try {
+      List<String> dates = store.getDates();
+      modified = !file.exists() | entries.keySet().retainAll(dates);
+      for(String date : dates) {
+        Entry e = entries.get(date);
+        if(e == null || e.modified != store.lastModified(date))
+          reread(date);
+      }
+      save();
+    } catch(IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * @return The dates of all days, sorted ascending.
+   */
+  synchronized List<String> getDates() {
+    return new ArrayList<String>(entries.keySet());
+  }
+
+  /**
+   * @param from - The first date (inclusive, format <code>YYYY-MM-DD</code>).
+   * @param to - The last date (inclusive, format <code>YYYY-MM-DD</code>).
+   * @return The dates of the days in the range, sorted ascending.
+   */
+  synchronized List<String> getDates(final String from, final String to) {
+    if(from.compareTo(to) > 0)
+      return new ArrayList<String>();
+    return new ArrayList<String>(entries.subMap(from, true, to, true).keySet());
+  }
+
+  /**
+   * @param date - The day's date (format <code>YYYY-MM-DD</code>).
+   * @return The summary of the day or <code>null</code>, if it is not stored.
+   */
+  synchronized Entry get(final String date) {
+    return entries.get(date);
+  }
+
+  /**
+   * Updates the summary of the given day.
+   *
+   * @param date - The day's date (format <code>YYYY-MM-DD</code>).
+   * @param records - The day's entries or <code>null</code>, if they cannot be read.
+   */
+  synchronized void update(final String date, final List<DayRecord> records) {
+    entries.put(date, new Entry(records, store.lastModified(date)));
+    modified = true;
+  }
+
+  /**
+   * Checks the given days for changes made without the catalog (e.g. by editing the files by hand)
+   * and updates the summaries of the days changed.
+   *
+   * @param dates - The dates of the days (format <code>YYYY-MM-DD</code>).
+   * @throws IOException If an I/O exception occurs while reading a day changed.
+   */
+  synchronized void check(final List<String> dates) throws IOException {
+    for(String date : dates) {
+      Entry e = entries.get(date);
+      if(e != null && e.modified != store.lastModified(date))
+        reread(date);
+    }
+  }
+
+  /**
+   * Reads the given day again and updates its summary.
+   *
+   * @param date - The day's date (format <code>YYYY-MM-DD</code>).
+   * @throws IOException If an I/O exception occurs while reading the day.
+   */
+  private void reread(final String date) throws IOException {
+    long time = store.lastModified(date);
+    try {
+      entries.put(date, new Entry(store.read(date), time));
+    } catch(org.jdom2.JDOMException e) {
+      entries.put(date, new Entry(null, time));
+    }
+    modified = true;
+  }
+
+  /**
+   * Saves the catalog, if it has been changed.
+   *
+   * @throws IOException If an I/O exception occurs while writing the file.
+   */
+  synchronized void save() throws IOException {
+    if(!modified)
+      return;
+    Properties p = new Properties();
+    for(Map.Entry<String, Entry> e : entries.entrySet())
+      p.setProperty(e.getKey(), e.getValue().toString());
+    file.getParentFile().mkdirs();
+    File tmp = new File(file.getParentFile(), "." + file.getName() + ".tmp");
+    try(FileWriter fw = new FileWriter(tmp)) {
+      p.store(fw, "Days stored by DiabetesDoc: entries;bg min;bg max;bg mean;insulin;modified;SHA-1");
+    }
+    DayWriter.replace(tmp, file);
+    modified = false;
+  }
+
+  /**
+   * This Class summarizes a day.
+   */
+  static final class Entry {
+    /** The number of entries or <code>-1</code>, if they cannot be read. */
+    final int count;
+    /** The minimal bg in mg/dl or <code>0</code>, if there is no bg. */
+    final int bgMin;
+    /** The maximal bg in mg/dl or <code>0</code>, if there is no bg. */
+    final int bgMax;
+    /** The mean bg in mg/dl or <code>0</code>, if there is no bg. */
+    final float bgMean;
+    /** The total insulin units of the boluses and the insulin noted at the bg. */
+    final float insulin;
+    /** The time of the last modification in milliseconds. */
+    final long modified;
+    /** The fingerprint of the entries (see {@link DayRecord#fingerprint(List)}). */
+    final String hash;
+
+    /**
+     * Creates the summary of the given entries.
+     *
+     * @param records - The day's entries or <code>null</code>, if they cannot be read.
+     * @param modified - The time of the last modification in milliseconds.
+     */
+    Entry(final List<DayRecord> records, final long modified) {
+      int min = 0, max = 0, n = 0;
+      long sum = 0;
+      float ins = 0;
+      if(records != null) {
+        for(DayRecord r : records) {
+          int bg = r.getBG();
+          if(bg > 0 && r.getEventCode() != DayRecord.EVENT_CONTROL) {
+            min = (n == 0) ? bg : Math.min(min, bg);
+            max = Math.max(max, bg);
+            sum += bg;
+            n++;
+          }
+          if(r.name.equals("BOLUS") || r.name.equals("BG"))
+            ins += r.getInsulin();
+        }
+      }
+      this.count = (records == null) ? -1 : records.size();
+      this.bgMin = min;
+      this.bgMax = max;
+      this.bgMean = (n == 0) ? 0 : (float) sum / n;
+      this.insulin = ins;
+      this.modified = modified;
+      this.hash = (records == null) ? "" : DayRecord.fingerprint(records);
+    }
+
+    private Entry(final String[] values) {
+      this.count = Integer.parseInt(values[0]);
+      this.bgMin = Integer.parseInt(values[1]);
+      this.bgMax = Integer.parseInt(values[2]);
+      this.bgMean = Float.parseFloat(values[3]);
+      this.insulin = Float.parseFloat(values[4]);
+      this.modified = Long.parseLong(values[5]);
+      this.hash = values[6];
+    }
+
+    /**
+     * @param value - The saved entry.
+     * @return The {@code Entry} or <code>null</code>, if it cannot be parsed.
+     */
+    private static Entry parse(final String value) {
+      String[] values = value.split(SEPARATOR, -1);
+      if(values.length != 7)
+        return null;
+      try {
+        return new Entry(values);
+      } catch(NumberFormatException e) {
+        return null;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return count + SEPARATOR + bgMin + SEPARATOR + bgMax + SEPARATOR + bgMean + SEPARATOR + insulin
+          + SEPARATOR + modified + SEPARATOR + hash;
+    }
+  }
+}
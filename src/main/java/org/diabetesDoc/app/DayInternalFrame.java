@@ -29,8 +29,6 @@ import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.beans.PropertyVetoException;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Serializable;
 import java.io.StringReader;
@@ -40,6 +38,8 @@ import java.util.ArrayList;
 import javax.swing.*;
 import javax.swing.undo.UndoManager;
 
+import org.jdom2.JDOMException;
+
 /**
  *
  * @author Stephan Lunowa
@@ -50,7 +50,7 @@ final class DayInternalFrame extends JInternalFrame {
   private static final long serialVersionUID = 1L;
 
   private boolean changesSaved = true;
-  private final String file;
+  private final String date;
   private ImagePanel imgPanel;
   private JTable dataTable;
   private DayTableModel dayTableModel = new DayTableModel();
@@ -61,9 +61,9 @@ final class DayInternalFrame extends JInternalFrame {
   private Action undoAction = new UndoAction();
   private Action redoAction = new RedoAction();
 
-  DayInternalFrame(final String file, final String title, final JDesktopPane dp) {
+  DayInternalFrame(final String date, final String title, final JDesktopPane dp) {
     super(title, false, true);
-    this.file = file;
+    this.date = date;
     setDefaultCloseOperation(JInternalFrame.DO_NOTHING_ON_CLOSE);
 
     addInternalFrameListener(new javax.swing.event.InternalFrameAdapter() {
@@ -75,7 +75,7 @@ final class DayInternalFrame extends JInternalFrame {
     try {
       textPane.setEditorKit(new XMLEditorKit());
       textPane.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 14));
-      textPane.read(new FileReader(file), file);
+      textPane.read(new StringReader(DayStore.get().readXML(date)), date);
       textPane.getStyledDocument().addUndoableEditListener(new javax.swing.event.UndoableEditListener() {
         @Override
         public void undoableEditHappened(javax.swing.event.UndoableEditEvent e) {
@@ -122,10 +122,10 @@ final class DayInternalFrame extends JInternalFrame {
       outerSplitPane.setDividerLocation(0.6);
 
     } catch(FileNotFoundException e) {
-      Dialogs.showErrorMsg("%error.file.open.ttl%", Utils.localize("%error.file.notFound.msg%", file), this);
+      Dialogs.showErrorMsg("%error.file.open.ttl%", Utils.localize("%error.file.notFound.msg%", date), this);
       this.close();
-    } catch(IOException e) {
-      Dialogs.showErrorMsg("%error.file.open.ttl%", Utils.localize("%error.file.open.msg%", file), this);
+    } catch(IOException | JDOMException e) {
+      Dialogs.showErrorMsg("%error.file.open.ttl%", Utils.localize("%error.file.open.msg%", date), this);
       this.close();
     }
   }
@@ -155,15 +155,13 @@ final class DayInternalFrame extends JInternalFrame {
 
   private boolean saveFile() {
     try {
-      FileWriter fw = new FileWriter(file);
-      textPane.write(fw);
-      fw.close();
+      DayStore.get().writeXML(date, textPane.getText());
       undo.discardAllEdits();
       updateGUI();
       return true;
-    } catch(IOException e) {
+    } catch(IOException | JDOMException e) {
       Dialogs.showErrorMsg("%error.file.save.ttl%",
-           Utils.localize("%error.file.save.msg%", file), this);
+           Utils.localize("%error.file.save.msg%", date), this);
       return false;
     }
   }
@@ -345,7 +343,8 @@ final class DayInternalFrame extends JInternalFrame {
     private static final long serialVersionUID = 1L;
 
     private JLabel remarksLbl = new JLabel();
-    private List<String[]> data = new ArrayList<String[]>();
+    private List<Table> tables = new ArrayList<Table>();
+    private int rows = 0;
 
     private DayTableModel() {
       remarksLbl.setBorder(new javax.swing.border.EmptyBorder(2, 5, 2, 2));
@@ -369,20 +368,26 @@ final class DayInternalFrame extends JInternalFrame {
     }
     @Override
     public int getRowCount() {
-      return (data == null) ? 0 : data.size();
+      return rows;
     }
     @Override
     public Object getValueAt(int row, int column) {
-      return data.get(row)[column];
+      for(Table t : tables) {
+        if(row < t.getColumnCount())
+          return t.getCell(row, column);
+        row -= t.getColumnCount();
+      }
+      return null;
     }
 
     private void refreshData() {
-      data.clear();
+      tables = new ArrayList<Table>();
+      rows = 0;
       remarksLbl.setText(Utils.localize("<html><body><b>%output.remarks%:</b><br/>"));
       try {
-        for(Table t : TableFactory.createTables(
-            XML_IO.SAX_BUILDER.build(new StringReader(textPane.getText())))) {
-          data.addAll(t.getData());
+        tables = TableFactory.createTables(date, XML_IO.readDay(new StringReader(textPane.getText()), date));
+        for(Table t : tables) {
+          rows += t.getColumnCount();
           remarksLbl.setText(remarksLbl.getText() + " " + t.getRemarks());
         }
       } catch(Exception e) {}
@@ -0,0 +1,318 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jdom2.Attribute;
+import org.jdom2.Element;
+
+/**
+ * This Class represents a single entry (<code>BG</code>, <code>BASAL</code>, <code>BOLUS</code>
+ * or <code>EVENT</code>) of a day with DTD <code>DAY</code> (see <i>resources/DAY.dtd</i>).<br>
+ * Its sort keys (date, time and name) are extracted once at creation, so sorting a day
+ * does not need any attribute lookups.
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class DayRecord implements Comparable<DayRecord> {
+  /** Event code: no event. */
+  static final short EVENT_NONE = 0;
+  /** Event code: the pump was stopped. */
+  static final short EVENT_PUMP_STOP = 1;
+  /** Event code: the pump was started. */
+  static final short EVENT_PUMP_RUN = 2;
+  /** Event code: a temporary basal rate was started. */
+  static final short EVENT_TBR = 3;
+  /** Event code: a temporary basal rate ended. */
+  static final short EVENT_TBR_END = 4;
+  /** Event code: the basal rate profile was changed. */
+  static final short EVENT_BR_CHANGED = 5;
+  /** Event code: occlusion (<code>E4</code>). */
+  static final short EVENT_OCCLUSION = 6;
+  /** Event code: the infusion set was primed. */
+  static final short EVENT_PRIME = 7;
+  /** Event code: any other event. */
+  static final short EVENT_OTHER = 8;
+  /** Event code: a control measurement of the bg-device. */
+  static final short EVENT_CONTROL = 9;
+
+  /** The element's name. */
+  final String name;
+
+  /** The date (attribute <code>Dt</code>), never <code>null</code>. */
+  final String date;
+
+  /** The time (attribute <code>Tm</code>), never <code>null</code>. */
+  final String time;
+
+  /** The attributes in document order, alternating name and value. */
+  private final String[] attributes;
+
+  /** The text content or <code>null</code>, if there is none. */
+  private final String text;
+
+  /**
+   * Creates a new {@code DayRecord}.
+   *
+   * @param name - The element's name.
+   * @param attributes - The attributes, alternating name and value.
+   * @param text - The text content or <code>null</code>.
+   */
+  DayRecord(final String name, final String[] attributes, final String text) {
+    this.name = name;
+    this.attributes = attributes;
+    this.text = text;
+    String dt = getAttributeValue("Dt");
+    String tm = getAttributeValue("Tm");
+    this.date = (dt == null) ? "" : dt;
+    this.time = (tm == null) ? "" : tm;
+  }
+
+  /**
+   * Creates a new {@code DayRecord} from the given XML-{@link Element}.
+   *
+   * @param e - The {@code Element} to copy.
+   * @return The {@code DayRecord}.
+   */
+  static DayRecord of(final Element e) {
+    java.util.List<Attribute> atts = e.getAttributes();
+    String[] attributes = new String[2 * atts.size()];
+    for(int i = 0; i < atts.size(); i++) {
+      attributes[2*i] = atts.get(i).getName();
+      attributes[2*i + 1] = atts.get(i).getValue();
+    }
+    String txt = e.getText();
+    return new DayRecord(e.getName().intern(), attributes, txt.trim().isEmpty() ? null : txt);
+  }
+
+  /**
+   * Reads a {@code DayRecord} from the given {@link XMLStreamReader}, which has to be
+   * positioned at its <code>START_ELEMENT</code>.
+   * Afterwards the reader is positioned at the corresponding <code>END_ELEMENT</code>.
+   *
+   * @param r - The {@code XMLStreamReader} to read from.
+   * @return The {@code DayRecord}.
+   * @throws XMLStreamException If the element contains other elements or is not well-formed.
+   */
+  static DayRecord read(final XMLStreamReader r) throws XMLStreamException {
+    String[] attributes = new String[2 * r.getAttributeCount()];
+    for(int i = 0; i < r.getAttributeCount(); i++) {
+      attributes[2*i] = r.getAttributeLocalName(i).intern();
+      attributes[2*i + 1] = r.getAttributeValue(i);
+    }
+    String name = r.getLocalName().intern();
+    String txt = r.getElementText();
+    return new DayRecord(name, attributes, txt.trim().isEmpty() ? null : txt);
+  }
+
+  /**
+   * @return A new XML-{@link Element} with the content of this {@code DayRecord}.
+   */
+  Element toElement() {
+    Element e = new Element(name);
+    for(int i = 0; i < attributes.length; i += 2)
+      e.setAttribute(attributes[i], attributes[i + 1]);
+    if(text != null)
+      e.setText(text);
+    return e;
+  }
+
+  /**
+   * Returns the value of the attribute with the given name.
+   *
+   * @param attName - The attribute's name.
+   * @return The attribute's value or <code>null</code>, if it does not exist.
+   */
+  String getAttributeValue(final String attName) {
+    for(int i = 0; i < attributes.length; i += 2) {
+      if(attributes[i].equals(attName))
+        return attributes[i + 1];
+    }
+    return null;
+  }
+
+  /**
+   * @return The number of attributes.
+   */
+  int getAttributeCount() {
+    return attributes.length / 2;
+  }
+
+  /**
+   * @param i - The attribute's index.
+   * @return The name of the <code>i</code>-th attribute.
+   */
+  String getAttributeName(final int i) {
+    return attributes[2*i];
+  }
+
+  /**
+   * @param i - The attribute's index.
+   * @return The value of the <code>i</code>-th attribute.
+   */
+  String getAttributeValue(final int i) {
+    return attributes[2*i + 1];
+  }
+
+  /**
+   * @return The text content or <code>null</code>, if there is none.
+   */
+  String getText() {
+    return text;
+  }
+
+  /**
+   * @return The time (attribute <code>Tm</code>) as minute of the day
+   *         or <code>-1</code>, if it is not of the format <code>hh:mm</code>.
+   */
+  int getMinute() {
+    return Utils.toMinute(time);
+  }
+
+  /**
+   * @return The blood glucose value in mg/dl of a <code>BG</code> entry or <code>0</code>.
+   */
+  int getBG() {
+    return name.equals("BG") ? (int) parse(getAttributeValue("Val")) : 0;
+  }
+
+  /**
+   * @return The insulin units of a <code>BOLUS</code> (<code>amount</code>) or <code>BG</code>
+   *         (<code>Ins1</code> to <code>Ins3</code>) entry, the current basal rate in IU/h
+   *         of a <code>BASAL</code> entry or <code>0</code>.
+   */
+  float getInsulin() {
+    switch(name) {
+    case "BOLUS": return parse(getAttributeValue("amount"));
+    case "BASAL": return parse(getAttributeValue("cbrf"));
+    case "BG":
+      return parse(getAttributeValue("Ins1")) + parse(getAttributeValue("Ins2")) + parse(getAttributeValue("Ins3"));
+    default: return 0;
+    }
+  }
+
+  /**
+   * @return The carbohydrates in gram of a <code>BG</code> entry or <code>0</code>.
+   */
+  float getCarbs() {
+    return name.equals("BG") ? parse(getAttributeValue("Carb")) : 0;
+  }
+
+  /**
+   * @return The code of the event of this entry, one of the constants <code>EVENT_*</code>.
+   */
+  short getEventCode() {
+    String remark;
+    switch(name) {
+    case "BG":
+      String ctrl = getAttributeValue("Ctrl");
+      return (ctrl == null || ctrl.trim().isEmpty()) ? EVENT_NONE : EVENT_CONTROL;
+    case "BASAL":
+      remark = getAttributeValue("remark");
+      if(remark == null)
+        return (getAttributeValue("TBRdec") != null || getAttributeValue("TBRinc") != null)
+            && time.equals("00:00") ? EVENT_TBR : EVENT_NONE;
+      if(remark.equals("Stop"))
+        return EVENT_PUMP_STOP;
+      if(remark.equals("Run"))
+        return EVENT_PUMP_RUN;
+      if(remark.startsWith("changed"))
+        return EVENT_BR_CHANGED;
+      if(getAttributeValue("TBRdec") != null || getAttributeValue("TBRinc") != null)
+        return EVENT_TBR;
+      if(remark.startsWith("TBR End"))
+        return EVENT_TBR_END;
+      return EVENT_OTHER;
+    case "EVENT":
+      String shortinfo = getAttributeValue("shortinfo");
+      if(shortinfo == null)
+        return EVENT_OTHER;
+      if(shortinfo.equals("E4"))
+        return EVENT_OCCLUSION;
+      if(shortinfo.endsWith("IU"))
+        return EVENT_PRIME;
+      return EVENT_OTHER;
+    default:
+      return EVENT_NONE;
+    }
+  }
+
+  /**
+   * @param value - The number as {@code String} or <code>null</code>.
+   * @return The number or <code>0</code>, if it cannot be parsed.
+   */
+  private static float parse(final String value) {
+    if(value == null || value.isEmpty())
+      return 0;
+    try {
+      return Float.parseFloat(value.trim());
+    } catch(NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Returns a fingerprint of the content of the given entries.
+   * Two lists have the same fingerprint, if they contain the same entries in the same order,
+   * regardless of the formatting of the files they were read from.
+   *
+   * @param records - The entries.
+   * @return The fingerprint as hexadecimal {@code String}.
+   */
+  static String fingerprint(final java.util.List<DayRecord> records) {
+    java.security.MessageDigest md;
+    try {
+      md = java.security.MessageDigest.getInstance("SHA-1");
+    } catch(java.security.NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    StringBuilder sb = new StringBuilder(128);
+    for(DayRecord r : records) {
+      sb.setLength(0);
+      sb.append(r.name);
+      for(int i = 0; i < r.attributes.length; i++)
+        sb.append('\u0000').append(r.attributes[i]);
+      if(r.text != null)
+        sb.append('\u0001').append(r.text);
+      sb.append('\n');
+      md.update(sb.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    }
+    return Utils.toHexString(md.digest());
+  }
+
+  /**
+   * Compares the two {@code DayRecord}s by date, time and name.
+   *
+   * @see java.lang.Comparable#compareTo(java.lang.Object)
+   */
+  @Override
+  public int compareTo(final DayRecord o) {
+    int c = date.compareTo(o.date);
+    if(c != 0)
+      return c;
+    c = time.compareTo(o.time);
+    if(c != 0)
+      return c;
+    return name.compareTo(o.name);
+  }
+}
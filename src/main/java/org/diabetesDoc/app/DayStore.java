@@ -0,0 +1,352 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.jdom2.JDOMException;
+
+/**
+ * This Class is the storage of the days (entries with DTD <code>DAY</code>, see <i>resources/DAY.dtd</i>).<br>
+ * All reading and writing of days goes through the store selected by the setting <code>dayStore</code>
+ * (see {@link DayStore#get()}): <code>xml</code> keeps one XML-file per day (see {@link XmlDayStore}),
+ * <code>segments</code> keeps one binary file with fixed-width columns per month (see {@link SegmentDayStore}).
+ * Every store can render a day as XML-data and read it back, so the editor and the export work with both.
+ * Every store keeps a {@link DayCatalog} of its days, which is updated with every day written.
+ * All days of a range can be scanned as {@link Stream} of {@link Day}s (see {@link DayStore#stream(String, String)}).
+ * @version 0.1 - last modified 2026-10-17
+ */
+abstract class DayStore {
+  /** The directory containing the data. */
+  static final File DIR = new File("xml");
+
+  /** The store in use. */
+  private static DayStore current;
+
+  /** The file of the catalog of the days. */
+  private final File catalogFile;
+
+  /** The catalog of the days or <code>null</code>, if not yet loaded. */
+  private DayCatalog catalog;
+
+  /**
+   * Creates a new {@code DayStore}.
+   *
+   * @param catalogFile - The file of the {@link DayCatalog} of the days.
+   */
+  DayStore(final File catalogFile) {
+    this.catalogFile = catalogFile;
+  }
+
+  /**
+   * Returns the store selected by the setting <code>dayStore</code>.
+   * When the segment store is used for the first time, the existing XML-files are copied into it;
+   * when the XML-files are used again afterwards, the segments are exported as XML-files
+   * and copied again, when they are used next time.
+   *
+   * @return The {@code DayStore} in use.
+   */
+  static synchronized DayStore get() {
+    if(current == null) {
+      XmlDayStore xml = new XmlDayStore(DIR, Boolean.parseBoolean(DiabetesDoc.getSetting("syncWrites")));
+      if("segments".equals(DiabetesDoc.getSetting("dayStore"))) {
+        SegmentDayStore segments = new SegmentDayStore(new File(DIR, "segments"));
+        if(!segments.isComplete()) {
+          try {
+            copy(xml, segments);
+            segments.setComplete();
+          } catch(IOException | JDOMException e) {
+            e.printStackTrace(); // the XML-files remain, the copy is repeated next time
+          }
+        }
+        current = segments;
+      } else {
+        SegmentDayStore segments = new SegmentDayStore(new File(DIR, "segments"));
+        if(segments.isComplete()) {
+          try {
+            copy(segments, xml);
+            segments.setIncomplete();
+          } catch(IOException | JDOMException e) {
+            e.printStackTrace(); // the segments remain, the export is repeated next time
+          }
+        }
+        current = xml;
+      }
+    }
+    return current;
+  }
+
+  /**
+   * @return The {@link DayCatalog} of the days, loaded when first used.
+   */
+  synchronized DayCatalog getCatalog() {
+    if(catalog == null)
+      catalog = new DayCatalog(catalogFile, this);
+    return catalog;
+  }
+
+  /**
+   * Lists the days stored by looking at the files; use {@link DayStore#getCatalog()} instead.
+   *
+   * @return The dates of all days stored, sorted ascending.
+   * @throws IOException If an I/O exception occurs while listing the days.
+   */
+  abstract List<String> getDates() throws IOException;
+
+  /**
+   * @param date - The day's date (format <code>YYYY-MM-DD</code>).
+   * @return The time of the last modification of the day in milliseconds.
+   */
+  abstract long lastModified(String date);
+
+  /**
+   * @param date - The day's date (format <code>YYYY-MM-DD</code>).
+   * @return <b><code>true</code></b>, if the day is stored;
+   *         <b><code>false</code></b>, otherwise.
+   */
+  boolean contains(final String date) {
+    return getCatalog().get(date) != null;
+  }
+
+  /**
+   * Reads the entries of the given day.
+   *
+   * @param date - The day's date (format <code>YYYY-MM-DD</code>).
+   * @return The entries in stored order or <code>null</code>, if the day is not stored.
+   * @throws IOException If an I/O exception occurs while reading the day.
+   * @throws JDOMException If an error occurs while parsing the XML-data of the day.
+   */
+  abstract List<DayRecord> read(String date) throws IOException, JDOMException;
+
+  /**
+   * Reads the readings of the given day (see {@link DayBuffer#of(String, List)}).
+   *
+   * @param date - The day's date (format <code>YYYY-MM-DD</code>).
+   * @return The readings or <code>null</code>, if the day is not stored.
+   * @throws IOException If an I/O exception occurs while reading the day.
+   * @throws JDOMException If an error occurs while parsing the XML-data of the day.
+   */
+  DayBuffer readReadings(final String date) throws IOException, JDOMException {
+    List<DayRecord> records = read(date);
+    return (records == null) ? null : DayBuffer.of(date, records);
+  }
+
+  /**
+   * Returns the stored days between the given dates as sequential {@link Stream} in order of date.
+   * The days are read, when the stream reaches them; it can be made parallel
+   * (see {@link Stream#parallel()}) and then reads the days on the common
+   * {@link java.util.concurrent.ForkJoinPool}, still keeping their order.
+   * Days, which cannot be parsed, are left out.
+   *
+   * @param from - The first date (format <code>YYYY-MM-DD</code>, inclusive).
+   * @param to - The last date (format <code>YYYY-MM-DD</code>, inclusive).
+   * @return The {@code Stream} of the days.
+   * @throws UncheckedIOException If an I/O exception occurs while reading a day.
+   */
+  Stream<Day> stream(final String from, final String to) {
+    return stream(getCatalog().getDates(from, to));
+  }
+
+  /**
+   * Returns the given stored days as sequential {@link Stream} in the given order
+   * (see {@link DayStore#stream(String, String)}).
+   *
+   * @param dates - The dates (format <code>YYYY-MM-DD</code>); days not stored are left out.
+   * @return The {@code Stream} of the days.
+   * @throws UncheckedIOException If an I/O exception occurs while reading a day.
+   */
+  Stream<Day> stream(final List<String> dates) {
+    return StreamSupport.stream(new DaySpliterator(this, dates, 0, dates.size()), false);
+  }
+
+  /**
+   * Creates the {@link Table}s of the given day (see {@link TableFactory}).
+   *
+   * @param date - The day's date (format <code>YYYY-MM-DD</code>).
+   * @return The tables or <code>null</code>, if the day is not stored.
+   * @throws IOException If an I/O exception occurs while reading the day.
+   * @throws JDOMException If an error occurs while parsing the XML-data of the day.
+   */
+  List<Table> createTables(final String date) throws IOException, JDOMException {
+    List<DayRecord> records = read(date);
+    return (records == null) ? null : TableFactory.createTables(date, records);
+  }
+
+  /**
+   * Writes the entries of the given day, replacing the stored ones, and updates the catalog.
+   *
+   * @param date - The day's date (format <code>YYYY-MM-DD</code>).
+   * @param records - The entries.
+   * @throws IOException If an I/O exception occurs while writing the day.
+   */
+  final void write(final String date, final List<DayRecord> records) throws IOException {
+    writeRecords(date, records);
+    getCatalog().update(date, records);
+  }
+
+  /**
+   * Writes the entries of the given day, replacing the stored ones.
+   *
+   * @param date - The day's date (format <code>YYYY-MM-DD</code>).
+   * @param records - The entries.
+   * @throws IOException If an I/O exception occurs while writing the day.
+   */
+  abstract void writeRecords(String date, List<DayRecord> records) throws IOException;
+
+  /**
+   * Finishes a series of writes (e.g. an import), so all days written and the catalog are durable,
+   * and brings the {@link TimeSeries} up to date.
+   *
+   * @throws IOException If an I/O exception occurs while finishing.
+   */
+  final void flush() throws IOException {
+    flushRecords();
+    getCatalog().save();
+    TimeSeries.refresh(this);
+  }
+
+  /**
+   * Finishes a series of writes, so all days written are durable.
+   *
+   * @throws IOException If an I/O exception occurs while finishing.
+   */
+  void flushRecords() throws IOException {}
+
+  /**
+   * Returns the given day as XML-data with DTD <code>DAY</code> (see <i>resources/DAY.dtd</i>).
+   *
+   * @param date - The day's date (format <code>YYYY-MM-DD</code>).
+   * @return The XML-data.
+   * @throws FileNotFoundException If the day is not stored.
+   * @throws IOException If an I/O exception occurs while reading the day.
+   * @throws JDOMException If an error occurs while parsing the XML-data of the day.
+   */
+  String readXML(final String date) throws IOException, JDOMException {
+    List<DayRecord> records = read(date);
+    if(records == null)
+      throw new FileNotFoundException(date);
+    return new DayWriter(DIR, false).toXML(date, records);
+  }
+
+  /**
+   * Writes the given day from XML-data with DTD <code>DAY</code> (see <i>resources/DAY.dtd</i>).
+   *
+   * @param date - The day's date (format <code>YYYY-MM-DD</code>).
+   * @param xml - The XML-data.
+   * @throws IOException If an I/O exception occurs while writing the day.
+   * @throws JDOMException If an error occurs while parsing the XML-data.
+   */
+  void writeXML(final String date, final String xml) throws IOException, JDOMException {
+    write(date, XML_IO.readDay(new StringReader(xml), date));
+    flush();
+  }
+
+  /**
+   * Copies all days from one store into another, e.g. to export the segments as XML-files.
+   *
+   * @param from - The store to read.
+   * @param to - The store to write.
+   * @throws IOException If an I/O exception occurs while reading or writing a day.
+   * @throws JDOMException If an error occurs while parsing the XML-data of a day.
+   */
+  static void copy(final DayStore from, final DayStore to) throws IOException, JDOMException {
+    for(String date : from.getCatalog().getDates()) {
+      List<DayRecord> records = from.read(date);
+      if(records != null)
+        to.write(date, records);
+    }
+    to.flush();
+  }
+
+  /**
+   * The {@link Spliterator} of {@link DayStore#stream(String, String)}:
+   * it covers a range of the dates and is split by halving the range.
+   */
+  private static final class DaySpliterator implements Spliterator<Day> {
+    /** The store to read from. */
+    private final DayStore store;
+    /** The dates of the stream. */
+    private final List<String> dates;
+    /** The index of the next date. */
+    private int index;
+    /** The index after the last date. */
+    private final int fence;
+
+    DaySpliterator(final DayStore store, final List<String> dates, final int index, final int fence) {
+      this.store = store;
+      this.dates = dates;
+      this.index = index;
+      this.fence = fence;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super Day> action) {
+      while(index < fence) {
+        String date = dates.get(index++);
+        List<DayRecord> records;
+        try {
+          records = store.read(date);
+        } catch(IOException e) {
+          throw new UncheckedIOException(e);
+        } catch(JDOMException e) {
+          e.printStackTrace();
+          continue;
+        }
+        if(records != null) {
+          action.accept(new Day(date, records));
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public Spliterator<Day> trySplit() {
+      int mid = (index + fence) >>> 1;
+      if(mid <= index)
+        return null;
+      Spliterator<Day> prefix = new DaySpliterator(store, dates, index, mid);
+      index = mid;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+      // not SIZED: days removed in the meantime are left out
+      return ORDERED | NONNULL | IMMUTABLE;
+    }
+  }
+}
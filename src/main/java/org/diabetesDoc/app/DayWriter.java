@@ -0,0 +1,247 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * This Class writes the files of days with DTD <code>DAY</code> (see <i>resources/DAY.dtd</i>).<br>
+ * The entries are streamed through a buffered {@link XMLStreamWriter} into a temporary file,
+ * which then replaces the day's file by an atomic rename, so an interrupted import never
+ * leaves a half-written day. One {@code DayWriter} is used for a whole session (e.g. an import):
+ * the static resources are copied once. If the files written are synced to disk, every temporary
+ * file is synced before it replaces the day's file, the renames are synced to disk in batches.
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class DayWriter {
+  /** The number of renames synced to disk together. */
+  private static final int SYNC_BATCH_SIZE = 64;
+
+  /** The factory for the {@link XMLStreamWriter}s. */
+  private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+  /** The indentation of the entries. */
+  private static final String INDENT = "\n  ";
+
+  /** The directory containing the days. */
+  private final File dir;
+
+  /** Whether the files written are synced to disk. */
+  private final boolean sync;
+
+  /** The lock of {@link DayWriter#unsynced}. */
+  private final Object syncLock = new Object();
+
+  /** The number of files renamed, whose directory is not yet synced to disk. */
+  private int unsynced = 0;
+
+  /** Whether the static resources have been copied in this session. */
+  private volatile boolean resourcesCopied = false;
+
+  /**
+   * Creates a new {@code DayWriter}.
+   *
+   * @param dir - The directory containing the days.
+   * @param sync - Whether the files written are synced to disk (in batches of {@link DayWriter#SYNC_BATCH_SIZE}).
+   */
+  DayWriter(final File dir, final boolean sync) {
+    this.dir = dir;
+    this.sync = sync;
+  }
+
+  /**
+   * Writes the given entries into the day's file <code>YYYY-MM-DD.xml</code>.
+   *
+   * @param date - The day's date.
+   * @param records - The day's entries.
+   * @return The file written.
+   * @throws IOException If an I/O exception occurs while writing the file.
+   */
+  File write(final String date, final List<DayRecord> records) throws IOException {
+    if(!resourcesCopied)
+      copyResources();
+
+    File file = new File(dir, date + ".xml");
+    File tmp = new File(dir, "." + date + ".xml.tmp");
+    boolean replaced = false;
+    try {
+      try(FileOutputStream fos = new FileOutputStream(tmp);
+          OutputStream out = new BufferedOutputStream(fos, 16 * 1024)) {
+        XMLStreamWriter w = XML_OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+        write(w, date, records);
+        w.close();
+        out.flush();
+        // the content has to be on disk before the rename, otherwise a crash can leave an empty day
+        if(sync)
+          fos.getChannel().force(true);
+      } catch(XMLStreamException e) {
+        throw new IOException("Error while writing " + file.getPath() + ": " + e.getMessage(), e);
+      }
+      replace(tmp, file);
+      replaced = true;
+    } finally {
+      if(!replaced)
+        tmp.delete();
+    }
+
+    if(sync) {
+      boolean full;
+      synchronized(syncLock) {
+        full = ++unsynced >= SYNC_BATCH_SIZE;
+        if(full)
+          unsynced = 0;
+      }
+      if(full)
+        syncDirectory();
+    }
+    return file;
+  }
+
+  /**
+   * Returns the given entries as XML-data, as they would be written into the day's file.
+   *
+   * @param date - The day's date.
+   * @param records - The day's entries.
+   * @return The XML-data.
+   * @throws IOException If an error occurs while writing the XML-data.
+   */
+  String toXML(final String date, final List<DayRecord> records) throws IOException {
+    StringWriter sw = new StringWriter();
+    try {
+      XMLStreamWriter w = XML_OUTPUT_FACTORY.createXMLStreamWriter(sw);
+      write(w, date, records);
+      w.close();
+    } catch(XMLStreamException e) {
+      throw new IOException("Error while writing " + date + ": " + e.getMessage(), e);
+    }
+    return sw.toString();
+  }
+
+  /**
+   * Replaces the target file by the temporary file using an atomic rename, if supported.
+   *
+   * @param tmp - The temporary file, completely written.
+   * @param file - The file to replace.
+   * @throws IOException If an I/O exception occurs while renaming.
+   */
+  static void replace(final File tmp, final File file) throws IOException {
+    try {
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch(AtomicMoveNotSupportedException e) {
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Finishes the session: syncs the remaining renames to disk.
+   */
+  void finish() {
+    boolean pending;
+    synchronized(syncLock) {
+      pending = unsynced > 0;
+      unsynced = 0;
+    }
+    if(pending)
+      syncDirectory();
+  }
+
+  /**
+   * Writes the document of the day.
+   *
+   * @param w - The {@code XMLStreamWriter} to write to.
+   * @param date - The day's date.
+   * @param records - The day's entries.
+   * @throws XMLStreamException If an error occurs while writing.
+   */
+  private void write(final XMLStreamWriter w, final String date, final List<DayRecord> records)
+      throws XMLStreamException {
+    w.writeStartDocument("UTF-8", "1.0");
+    w.writeCharacters("\n");
+    w.writeProcessingInstruction("xml-stylesheet", "type='text/xsl' href='day.xsl'");
+    w.writeCharacters("\n");
+    w.writeDTD("<!DOCTYPE DAY.dtd SYSTEM \"file:///" + new File(dir, "DAY.dtd").getAbsolutePath() + "\">");
+    w.writeCharacters("\n");
+    w.writeStartElement("DAY");
+    w.writeAttribute("Dt", date);
+    for(DayRecord r : records) {
+      w.writeCharacters(INDENT);
+      if(r.getText() == null) {
+        w.writeEmptyElement(r.name);
+      } else {
+        w.writeStartElement(r.name);
+      }
+      for(int i = 0; i < r.getAttributeCount(); i++)
+        w.writeAttribute(r.getAttributeName(i), r.getAttributeValue(i));
+      if(r.getText() != null) {
+        w.writeCharacters(r.getText());
+        w.writeEndElement();
+      }
+    }
+    w.writeCharacters("\n");
+    w.writeEndElement();
+    w.writeCharacters("\n");
+    w.writeEndDocument();
+  }
+
+  /**
+   * Copies the DTD and the stylesheet into the directory, if they do not exist.
+   *
+   * @throws IOException If an I/O exception occurs while copying.
+   */
+  private synchronized void copyResources() throws IOException {
+    if(resourcesCopied)
+      return;
+    dir.mkdirs();
+    for(String resource : new String[]{ "DAY.dtd", "day.xsl" }) {
+      File target = new File(dir, resource);
+      if(!target.exists())
+        Files.copy(DayWriter.class.getResourceAsStream("/" + resource), target.toPath());
+    }
+    resourcesCopied = true;
+  }
+
+  /**
+   * Syncs the directory, i.e. the renames of the files written, to disk.
+   */
+  private void syncDirectory() {
+    try(FileChannel ch = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+      ch.force(true);
+    } catch(IOException e) {
+      // directories cannot be opened on all platforms (e.g. Windows)
+    }
+  }
+}
@@ -0,0 +1,324 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+
+/**
+ * This Class reads the XML-files of the SmartPix device as a stream.<br>
+ * The entries of <code>IPDATA</code> (insulin pump) and <code>BGDATA</code> (bg-device)
+ * are read one at a time and collected per date as {@link DayRecord}s. Only a few
+ * days are kept open in memory at the same time, others are put aside into temporary files
+ * until the end of the file, so the memory needed is bounded by the largest days and not
+ * by the whole file, and every day is still passed once with all its entries
+ * (e.g. the pump data of <code>IPDATA</code> and the bg values of <code>BGDATA</code>).
+ * Entries before a given date can be skipped,
+ * if the file has been imported before (see {@link ImportManifest}).
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class DeviceInputParser {
+  /**
+   * The maximal number of days collected in memory at the same time.
+   * If another day is started, the least recently used one is put aside into a temporary file.
+   */
+  static final int MAX_OPEN_DAYS = 7;
+
+  /** The factory for the {@link XMLStreamReader}s. */
+  static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+  static {
+    XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+  }
+
+  /** No constructor, only static methods. */
+  private DeviceInputParser() {}
+
+  /**
+   * The receiver of the data read by {@link DeviceInputParser#parse(File, Handler)}.
+   */
+  abstract static class Handler {
+    /**
+     * Receives the insulin pump profiles (element <code>IP</code>, see <i>resources/IP.dtd</i>).
+     *
+     * @param profiles - The profiles.
+     * @throws IOException If an I/O exception occurs while handling the profiles.
+     * @throws JDOMException If an error occurs while handling the profiles.
+     */
+    abstract void profiles(Element profiles) throws IOException, JDOMException;
+
+    /**
+     * Receives all entries of one day of the file; every day is received once.
+     *
+     * @param date - The date of the entries (attribute <code>Dt</code>).
+     * @param records - The entries, sorted by time and name.
+     * @throws IOException If an I/O exception occurs while handling the day.
+     * @throws JDOMException If an error occurs while handling the day.
+     */
+    abstract void day(String date, List<DayRecord> records) throws IOException, JDOMException;
+  }
+
+  /**
+   * Parses the given device input {@code File} and passes its data to the given {@link Handler}.
+   * The first dates are given per section (<code>IPDATA</code> and <code>BGDATA</code>),
+   * as the sections of a file grow independently. The entries of the last imported date
+   * of a section are passed again, as that day may have been incomplete.
+   *
+   * @param f - The {@code File} to parse from.
+   * @param fromDates - The first date (format <code>YYYY-MM-DD</code>) to pass to the handler by section,
+   *                    earlier entries are skipped; <code>null</code> to pass all entries.
+   *                    All entries of a section not contained are passed.
+   * @param handler - The {@code Handler} receiving the data.
+   * @return The last date contained in the file by section, empty if it contains no entries.
+   * @throws IOException If an I/O exception occurs while reading the file.
+   * @throws JDOMException If an error occurs while parsing the XML-data of the file.
+   * @throws IllegalArgumentException If the file <code>f</code> contains unknown XML-data.
+   */
+  static Map<String, String> parse(final File f, final Map<String, String> fromDates, final Handler handler)
+      throws IOException, JDOMException {
+    try(InputStream in = new BufferedInputStream(new FileInputStream(f))) {
+      XMLStreamReader r = XML_INPUT_FACTORY.createXMLStreamReader(in);
+      try {
+        return parse(r, (fromDates == null) ? Collections.<String, String>emptyMap() : fromDates, handler);
+      } finally {
+        r.close();
+      }
+    } catch(XMLStreamException e) {
+      throw new JDOMException("Error while parsing " + f.getPath() + ": " + e.getMessage(), e);
+    }
+  }
+
+  private static Map<String, String> parse(final XMLStreamReader r, final Map<String, String> fromDates,
+      final Handler handler) throws XMLStreamException, IOException, JDOMException {
+    Aside aside = new Aside();
+    try {
+      return parse(r, fromDates, handler, aside);
+    } finally {
+      aside.delete();
+    }
+  }
+
+  private static Map<String, String> parse(final XMLStreamReader r, final Map<String, String> fromDates,
+      final Handler handler, final Aside aside) throws XMLStreamException, IOException, JDOMException {
+    // access-ordered, so the least recently used day is the first
+    LinkedHashMap<String, List<DayRecord>> days = new LinkedHashMap<String, List<DayRecord>>(16, 0.75f, true);
+    boolean pump = false, device = false, inData = false;
+    int depth = 0;
+    Map<String, String> lastDates = new TreeMap<String, String>();
+    String section = null, fromDate = "", lastDate = null;
+
+    while(r.hasNext()) {
+      int event = r.next();
+      if(event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+        if(depth == 2) {
+          switch(r.getLocalName()) {
+          case "IP": // data from insulin pump
+            pump = true;
+            handler.profiles(readElement(r));
+            depth--;
+            break;
+          case "DEVICE": // data from bg-device
+            device = true;
+            break;
+          case "IPDATA": // data from insulin pump, also if it precedes the profiles
+            pump = true;
+            inData = true;
+            break;
+          case "BGDATA": // data from bg-device
+            device = true;
+            inData = true;
+            break;
+          }
+          if(inData) {
+            section = r.getLocalName();
+            fromDate = fromDates.containsKey(section) ? fromDates.get(section) : "";
+            lastDate = lastDates.get(section);
+          }
+        } else if(depth == 3 && inData) {
+          DayRecord record = DayRecord.read(r);
+          depth--;
+          if(lastDate == null || record.date.compareTo(lastDate) > 0) {
+            lastDate = record.date;
+            lastDates.put(section, lastDate);
+          }
+          if(record.date.compareTo(fromDate) < 0)
+            continue; // already imported
+          List<DayRecord> day = days.get(record.date);
+          if(day == null) {
+            day = new ArrayList<DayRecord>();
+            days.put(record.date, day);
+            if(days.size() > MAX_OPEN_DAYS) {
+              Iterator<Map.Entry<String, List<DayRecord>>> it = days.entrySet().iterator();
+              Map.Entry<String, List<DayRecord>> eldest = it.next();
+              it.remove();
+              // the day may continue later in the file (e.g. in BGDATA after IPDATA)
+              aside.add(eldest.getKey(), eldest.getValue());
+            }
+          }
+          day.add(record);
+        }
+      } else if(event == XMLStreamConstants.END_ELEMENT) {
+        if(depth == 2)
+          inData = false;
+        depth--;
+      }
+    }
+
+    if(!pump && !device)
+      throw new IllegalArgumentException("The file contains not supported xml-data.");
+
+    for(Map.Entry<String, List<DayRecord>> day : days.entrySet()) {
+      List<DayRecord> records = aside.remove(day.getKey());
+      if(records == null)
+        records = day.getValue();
+      else
+        records.addAll(day.getValue()); // after the earlier parts, so the document order is kept
+      passDay(day.getKey(), records, handler);
+    }
+    for(String date : aside.getDates())
+      passDay(date, aside.remove(date), handler);
+    return lastDates;
+  }
+
+  /**
+   * The days put aside into temporary files, while other days are collected.
+   */
+  private static final class Aside {
+    /** The temporary directory or <code>null</code>, if not yet created. */
+    private File dir;
+    /** The writer of the days. */
+    private DayWriter writer;
+    /** The dates of the days put aside. */
+    private final java.util.TreeSet<String> dates = new java.util.TreeSet<String>();
+
+    /**
+     * Adds the given entries to the day put aside.
+     *
+     * @param date - The date.
+     * @param records - The entries.
+     * @throws IOException If an I/O exception occurs while writing the day.
+     * @throws JDOMException If an error occurs while parsing the day put aside before.
+     */
+    void add(final String date, final List<DayRecord> records) throws IOException, JDOMException {
+      if(dir == null) {
+        dir = java.nio.file.Files.createTempDirectory("DiabetesDoc").toFile();
+        writer = new DayWriter(dir, false);
+      }
+      List<DayRecord> all = dates.contains(date) ? XML_IO.readDay(new File(dir, date + ".xml")) : records;
+      if(all != records)
+        all.addAll(records);
+      writer.write(date, all);
+      dates.add(date);
+    }
+
+    /**
+     * Removes the day put aside.
+     *
+     * @param date - The date.
+     * @return The entries of the day in the order added or <code>null</code>, if the day was not put aside.
+     * @throws IOException If an I/O exception occurs while reading the day.
+     * @throws JDOMException If an error occurs while parsing the day.
+     */
+    List<DayRecord> remove(final String date) throws IOException, JDOMException {
+      if(!dates.remove(date))
+        return null;
+      File f = new File(dir, date + ".xml");
+      List<DayRecord> records = XML_IO.readDay(f);
+      f.delete();
+      return records;
+    }
+
+    /**
+     * @return The dates of the days put aside.
+     */
+    List<String> getDates() {
+      return new ArrayList<String>(dates);
+    }
+
+    /**
+     * Deletes the temporary files.
+     */
+    void delete() {
+      if(dir == null)
+        return;
+      File[] files = dir.listFiles();
+      if(files != null) {
+        for(File f : files)
+          f.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  private static void passDay(final String date, final List<DayRecord> records, final Handler handler)
+      throws IOException, JDOMException {
+    Collections.sort(records);
+    handler.day(date, records);
+  }
+
+  /**
+   * Reads the complete element at the current position of the {@link XMLStreamReader}
+   * as XML-{@link Element}. Afterwards the reader is positioned at its <code>END_ELEMENT</code>.
+   *
+   * @param r - The {@code XMLStreamReader} positioned at a <code>START_ELEMENT</code>.
+   * @return The {@code Element} read.
+   * @throws XMLStreamException If an error occurs while reading.
+   */
+  static Element readElement(final XMLStreamReader r) throws XMLStreamException {
+    Element e = new Element(r.getLocalName());
+    for(int i = 0; i < r.getAttributeCount(); i++)
+      e.setAttribute(r.getAttributeLocalName(i), r.getAttributeValue(i));
+    StringBuilder txt = new StringBuilder();
+    while(true) {
+      int event = r.next();
+      if(event == XMLStreamConstants.START_ELEMENT) {
+        e.addContent(readElement(r));
+      } else if(event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+        txt.append(r.getText());
+      } else if(event == XMLStreamConstants.END_ELEMENT) {
+        break;
+      }
+    }
+    if(!txt.toString().trim().isEmpty())
+      e.addContent(txt.toString());
+    return e;
+  }
+}
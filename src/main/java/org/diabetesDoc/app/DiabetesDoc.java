@@ -72,6 +72,9 @@ public final class DiabetesDoc extends javax.swing.JFrame {
     defaults.setProperty("birthday", "");
     defaults.setProperty("frameSize", "800,600");
     defaults.setProperty("framePosition", "100,50");
+    defaults.setProperty("syncWrites", "false");
+    defaults.setProperty("dayStore", "xml");
+    defaults.setProperty("timeSeries", "true");
     SETTINGS = new Properties(defaults);
   }
 
@@ -99,7 +102,7 @@ public final class DiabetesDoc extends javax.swing.JFrame {
           return;
         }
       }
-      new DayInternalFrame( "xml/" + e.getActionCommand() + ".xml",
+      new DayInternalFrame( e.getActionCommand(),
           Utils.localizeDateString(e.getActionCommand()), desktopPane);
     }
   };
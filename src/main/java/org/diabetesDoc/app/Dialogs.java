@@ -106,6 +106,66 @@ class Dialogs {
     JOptionPane.showMessageDialog(owner, aboutPane, aboutTtl, JOptionPane.PLAIN_MESSAGE);
   }
 
+  /**
+   * Shows an image (e.g. of {@link ImageFactory}) scaled to the half of its size.
+   *
+   * @param img - The image.
+   * @param title - The title of the dialog.
+   * @param owner - The owning {@code Component} of the dialog.
+   */
+  static void showImageMsg(java.awt.Image img, String title, Component owner) {
+    java.awt.Image scaled = img.getScaledInstance(ImageFactory.IMAGE_WIDTH / 2, ImageFactory.IMAGE_HEIGHT / 2,
+        java.awt.Image.SCALE_SMOOTH);
+    JOptionPane.showMessageDialog(owner, new JLabel(new javax.swing.ImageIcon(scaled)), title, JOptionPane.PLAIN_MESSAGE);
+  }
+
+  /**
+   * Shows the statistics of the last 14, 30, 90 and 365 days and of all days
+   * up to the last day stored (see {@link Rollups}).
+   *
+   * @param ts - The {@link TimeSeries} of the history.
+   * @param owner - The owning {@code Component} of the dialog.
+   */
+  static void showStatisticsMsg(TimeSeries ts, Component owner) {
+    if(ts.size() == 0) {
+      showInfoMsg("%error.statistics.ttl%", "%error.statistics.msg%", owner);
+      return;
+    }
+    long first = ts.getEpochDay(0), last = ts.getEpochDay(ts.size() - 1);
+    boolean german = Locale.getDefault().equals(Locale.GERMANY);
+    FixedPointFormat f = FixedPointFormat.get();
+
+    StringBuilder sb = new StringBuilder("<html><body style=\"margin:10px\"><table border=\"1\" cellspacing=\"0\">");
+    sb.append(Utils.localize("<tr><th>%statistics.period%</th><th>%statistics.count%</th><th>%statistics.mean%</th>"
+        + "<th>%statistics.sd%</th><th>%statistics.cv%</th><th>%statistics.gmi%</th><th>%statistics.hba1c%</th>"
+        + "<th>%statistics.below%</th><th>%statistics.inRange%</th><th>%statistics.above%</th></tr>"));
+    for(int days : new int[]{ 14, 30, 90, 365, 0 }) {
+      long from = (days == 0) ? first : last - days + 1;
+      Rollups.Summary s = ts.getRollups().summarize(from, last);
+      sb.append("<tr><td>")
+        .append(days == 0 ? Utils.localize("%statistics.all%") : Utils.localize("%statistics.days%", "" + days))
+        .append("<br>").append(DateUtils.toDateString(Math.max(from, first), german))
+        .append(" - ").append(DateUtils.toDateString(last, german))
+        .append("</td><td align=\"right\">").append(s.getCount())
+        .append("</td><td align=\"right\">").append(f.format(s.getMean())).append(" mg/dl")
+        .append("</td><td align=\"right\">").append(f.format(s.getStandardDeviation())).append(" mg/dl")
+        .append("</td><td align=\"right\">").append(f.format(s.getCoefficientOfVariation())).append(" %")
+        .append("</td><td align=\"right\">").append(f.format(s.getGMI())).append(" %")
+        .append("</td><td align=\"right\">").append(f.format(s.getEstimatedHbA1c())).append(" %")
+        .append("</td><td align=\"right\">").append(f.format(s.getTimeBelowRange())).append(" %")
+        .append("</td><td align=\"right\">").append(f.format(s.getTimeInRange())).append(" %")
+        .append("</td><td align=\"right\">").append(f.format(s.getTimeAboveRange())).append(" %")
+        .append("</td></tr>");
+    }
+    sb.append("</table><p>").append(Utils.localize("%statistics.inRange%: ")).append(Rollups.RANGE_LOW).append(" - ").append(Rollups.RANGE_HIGH)
+      .append(" mg/dl</p></body></html>");
+
+    JEditorPane statisticsPane = new JEditorPane("text/html", sb.toString());
+    statisticsPane.setEditable(false);
+    JOptionPane.showMessageDialog(owner, statisticsPane,
+        Utils.localize("%statistics.ttl%", DateUtils.toDateString(last, german)), JOptionPane.PLAIN_MESSAGE);
+  }
+
   /**
    * Shows a dialog to choose a start and end date.
    *
@@ -22,15 +22,13 @@ package org.diabetesDoc.app;
 ////////////////////////////////////////////////////////////////////////////////
 
 import java.awt.event.ActionListener;
-import java.nio.file.*;
-import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.JButton;
 import javax.swing.JPanel;
 
 /**
-* This Class represents a button-list for all the XML-files given in the directory
-* specified by {@link DiabetesDoc#PROPERTIES} (key <code>&quot;xmlDir&quot;</code>).
+* This Class represents a button-list for all the days of the {@link DayStore}.
 * @author Stephan Lunowa
 * @version 0.1 - last modified 2017-10-18
 */
@@ -58,26 +56,14 @@ final class FileListPane extends javax.swing.JScrollPane {
 
   /**
    * Refreshes the {@code FileList}.
-   * This is always necessary, when the content of the directory given by
-   * {@link DiabetesDoc#PROPERTIES} (key <code>&quot;xmlDir&quot;</code>) has changed.
+   * This is always necessary, when days have been added to the {@link DayStore}.
    */
   public void refreshList() {
     p.removeAll();
-    ArrayList<String> days = new ArrayList<>();
-    try(DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get("xml"), "*.xml")) {
-      for(Path entry: stream) {
-        days.add(entry.getFileName().toString());
-      }
-    } catch(java.nio.file.NoSuchFileException e) {
-      // do nothing (no files existing)
-    }catch(DirectoryIteratorException | java.io.IOException e) {
-      e.printStackTrace();
-    }
-    java.util.Collections.sort(days);
+    List<String> days = DayStore.get().getCatalog().getDates();
 
     p.setLayout(new java.awt.GridLayout(days.size(), 1));
     for(int i = days.size()-1; i >= 0; i--) {
-      days.set(i, days.get(i).substring(0, days.get(i).length()-4));
       JButton button = new JButton(Utils.localizeDateString(days.get(i)));
       button.setActionCommand(days.get(i));
       button.addActionListener(al);
@@ -0,0 +1,122 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * This Class formats numbers with one decimal, as <code>String.format("%1.1f", value)</code> does
+ * for the locale set by {@link Locale#getDefault(Locale.Category)}, but without a {@link java.util.Formatter}:
+ * the digits are written into a reusable char buffer. A {@code FixedPointFormat} is not thread-safe,
+ * use one per thread (see {@link FixedPointFormat#get()}).<br>
+ * Unlike <code>String.format</code>, a value is rounded half up as the decimal with four decimals it is
+ * nearest to, not as the binary number: the values are computed in <code>float</code> or <code>double</code>
+ * from decimals (e.g. 4.3 bread units times a factor of 1.5), so 6.45 is rounded to 6.5 whether
+ * it is computed as 6.4499998 or 6.449999999999999.
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class FixedPointFormat {
+  /** The {@code FixedPointFormat} of each thread. */
+  private static final ThreadLocal<FixedPointFormat> FORMATS = new ThreadLocal<FixedPointFormat>() {
+    @Override
+    protected FixedPointFormat initialValue() {
+      return new FixedPointFormat();
+    }
+  };
+
+  /** The buffer the digits are written into (enough for any <code>long</code> and the decimal). */
+  private final char[] buffer = new char[24];
+
+  /** The locale of the symbols. */
+  private Locale locale;
+
+  /** The locale's decimal separator. */
+  private char decimalSeparator;
+
+  /** The locale's minus sign. */
+  private char minusSign;
+
+  /** Use {@link FixedPointFormat#get()}. */
+  private FixedPointFormat() {}
+
+  /**
+   * @return The {@code FixedPointFormat} of the current thread.
+   */
+  static FixedPointFormat get() {
+    return FORMATS.get();
+  }
+
+  /**
+   * Returns the decimal with four decimals nearest to the given value, e.g. to compare
+   * a value with a decimal threshold as it is formatted.
+   *
+   * @param value - The value computed from decimals.
+   * @return The decimal, e.g. <code>6.45</code> for <code>6.4499998</code>.
+   */
+  static double toDecimal(final double value) {
+    return Math.rint(value * 10000) / 10000;
+  }
+
+  /**
+   * Formats the given value with one decimal, rounded half up as decimal.
+   *
+   * @param value - The value to format.
+   * @return The formatted value, e.g. <code>-1.5</code> or <code>-1,5</code> (DE).
+   */
+  String format(final double value) {
+    return new String(buffer, 0, format(value, buffer));
+  }
+
+  /**
+   * Formats the given value with one decimal, rounded half up as decimal, into the given buffer.
+   *
+   * @param value - The value to format.
+   * @param dest - The buffer written to from index <code>0</code> (at least 22 chars).
+   * @return The number of chars written.
+   */
+  int format(final double value, final char[] dest) {
+    Locale l = Locale.getDefault(Locale.Category.FORMAT);
+    if(!l.equals(locale)) {
+      DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(l);
+      decimalSeparator = symbols.getDecimalSeparator();
+      minusSign = symbols.getMinusSign();
+      locale = l;
+    }
+    // the digits of the value times 10, written backwards from the end
+    long tenths = Math.round(Math.abs(toDecimal(value)) * 10);
+    int pos = dest.length;
+    dest[--pos] = (char) ('0' + tenths % 10);
+    dest[--pos] = decimalSeparator;
+    long units = tenths / 10;
+    do {
+      dest[--pos] = (char) ('0' + units % 10);
+      units /= 10;
+    } while(units > 0);
+    if(value < 0 || (value == 0 && 1 / value < 0))
+      dest[--pos] = minusSign;
+    int length = dest.length - pos;
+    System.arraycopy(dest, pos, dest, 0, length);
+    return length;
+  }
+}
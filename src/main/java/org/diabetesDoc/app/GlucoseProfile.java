@@ -0,0 +1,241 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+
+import java.util.Set;
+
+/**
+ * This Class is the engine of the ambulatory glucose profile (AGP): the percentiles 5, 25, 50, 75
+ * and 95 of the bg values by time of day over a range of days.<br>
+ * For every day of the {@link TimeSeries} a sketch of its bg values is kept: per 15-minute slot
+ * of the day, the values are counted in bins growing by 2% (so every value is known within about 1%).
+ * The sketch of a day has a fixed size ({@link GlucoseProfile#SLOTS} times {@link GlucoseProfile#BINS}
+ * counts), however many readings the day has. Sketches are merged by adding their counts, so the
+ * profile of a range is merged from the sketches of its days without touching any readings;
+ * when days change (see {@link DayStore#flush()}), only their sketches are computed again.
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class GlucoseProfile {
+  /** The minutes per slot. */
+  static final int SLOT_MINUTES = 15;
+  /** The number of slots per day. */
+  static final int SLOTS = 24 * 60 / SLOT_MINUTES;
+  /** The percentiles of the profile. */
+  static final int[] PERCENTILES = { 5, 25, 50, 75, 95 };
+
+  /** The lowest bg value in mg/dl counted, lower values are counted as this. */
+  private static final int BG_LOWEST = 10;
+  /** The highest bg value in mg/dl counted, higher values are counted as this. */
+  private static final int BG_HIGHEST = 600;
+  /** The ratio of the upper to the lower limit of a bin. */
+  private static final double GAMMA = 1.02;
+  /** The number of bins per slot. */
+  private static final int BINS = bin(BG_HIGHEST) + 1;
+  /**
+   * The maximal count of a bin of a slot of one day, higher counts are kept as this.
+   * It is not reached by any device, which records at most one value per minute.
+   */
+  private static final int MAX_DAY_COUNT = 0xff;
+
+  /**
+   * The slots on both sides of a slot, whose values are also used for its percentiles,
+   * as the few values of a single slot would give a jagged profile.
+   */
+  private static final int SMOOTHING = 2;
+  /** The minimal number of values for the percentiles of a slot. */
+  private static final int MIN_VALUES = 5;
+
+  /** The first day as days since 1970-01-01. */
+  private final long firstDay;
+
+  /**
+   * The sketches of the days: the counts of their bg values indexed by <code>slot * BINS + bin</code>,
+   * <code>null</code> for days without bg values.
+   */
+  private final byte[][] days;
+
+  /**
+   * Creates a new {@code GlucoseProfile} without any sketches.
+   *
+   * @param ts - The {@link TimeSeries} giving the range of days.
+   */
+  private GlucoseProfile(final TimeSeries ts) {
+    firstDay = (ts.size() == 0) ? 0 : ts.getEpochDay(0);
+    days = new byte[(ts.size() == 0) ? 0 : (int) (ts.getEpochDay(ts.size() - 1) - firstDay + 1)][];
+  }
+
+  /**
+   * Computes the sketches of all days of the given history.
+   *
+   * @param ts - The {@link TimeSeries}.
+   * @return The {@code GlucoseProfile}.
+   */
+  static GlucoseProfile of(final TimeSeries ts) {
+    GlucoseProfile p = new GlucoseProfile(ts);
+    for(int d = 0; d < p.days.length; d++)
+      p.days[d] = sketch(ts, p.firstDay + d);
+    return p;
+  }
+
+  /**
+   * Creates the sketches of the given, updated history: the sketches of the given days are
+   * computed again, all others are taken over.
+   *
+   * @param ts - The updated {@link TimeSeries}.
+   * @param changedDays - The days changed, added or removed as days since 1970-01-01.
+   * @return The new {@code GlucoseProfile}, this one is not modified.
+   */
+  GlucoseProfile update(final TimeSeries ts, final Set<Long> changedDays) {
+    GlucoseProfile p = new GlucoseProfile(ts);
+    for(int d = 0; d < p.days.length; d++) {
+      long day = p.firstDay + d;
+      if(changedDays.contains(day) || day < firstDay || day - firstDay >= days.length)
+        p.days[d] = sketch(ts, day);
+      else
+        p.days[d] = days[(int) (day - firstDay)];
+    }
+    return p;
+  }
+
+  /**
+   * Computes the sketch of the given day.
+   *
+   * @param ts - The {@link TimeSeries}.
+   * @param day - The day as days since 1970-01-01.
+   * @return The counts of the day's bg values or <code>null</code>, if the day has none.
+   */
+  private static byte[] sketch(final TimeSeries ts, final long day) {
+    int from = ts.indexOfFirst(day), to = ts.indexOfFirst(day + 1);
+    byte[] counts = null;
+    for(int i = from; i < to; i++) {
+      if(ts.getBG(i) <= 0)
+        continue;
+      if(counts == null)
+        counts = new byte[SLOTS * BINS];
+      int code = ts.getMinuteOfDay(i) / SLOT_MINUTES * BINS + bin(ts.getBG(i));
+      if((counts[code] & 0xff) < MAX_DAY_COUNT)
+        counts[code]++;
+    }
+    return counts;
+  }
+
+  /**
+   * Merges the sketches of the given range of days.
+   *
+   * @param fromDay - The first day as days since 1970-01-01 (inclusive).
+   * @param toDay - The last day as days since 1970-01-01 (inclusive).
+   * @return The {@link Sketch} of the range.
+   */
+  Sketch merge(final long fromDay, final long toDay) {
+    Sketch s = new Sketch();
+    for(long day = Math.max(fromDay, firstDay); day <= Math.min(toDay, firstDay + days.length - 1); day++) {
+      byte[] counts = days[(int) (day - firstDay)];
+      if(counts == null)
+        continue;
+      for(int i = 0; i < counts.length; i++)
+        s.counts[i] += counts[i] & 0xff;
+      s.days++;
+    }
+    return s;
+  }
+
+  /**
+   * @param bg - The bg value in mg/dl.
+   * @return The bin of the bg value.
+   */
+  private static int bin(final int bg) {
+    int v = Math.min(Math.max(bg, BG_LOWEST), BG_HIGHEST);
+    return (int) (Math.log((double) v / BG_LOWEST) / Math.log(GAMMA));
+  }
+
+  /**
+   * @param bin - The bin.
+   * @return The bg value in mg/dl representing the bin: the geometric mean of its limits.
+   */
+  private static int value(final int bin) {
+    return (int) Math.round(BG_LOWEST * Math.pow(GAMMA, bin + 0.5));
+  }
+
+  /**
+   * The merged sketch of a range of days: the counts of the bg values per slot and bin.
+   */
+  static final class Sketch {
+    /** The counts, indexed by <code>slot * BINS + bin</code>. */
+    private final int[] counts = new int[SLOTS * BINS];
+    /** The number of days with bg values. */
+    private int days;
+
+    private Sketch() {}
+
+    /**
+     * Adds the counts of the given sketch to this one.
+     *
+     * @param other - The {@code Sketch} to add.
+     */
+    void merge(final Sketch other) {
+      for(int i = 0; i < counts.length; i++)
+        counts[i] += other.counts[i];
+      days += other.days;
+    }
+
+    /** @return The number of days with bg values. */
+    int getDays() {
+      return days;
+    }
+
+    /**
+     * Returns the percentiles (see {@link GlucoseProfile#PERCENTILES}) of every slot, taking
+     * the values of the neighbouring slots (across midnight) into account.
+     *
+     * @return The percentiles in mg/dl, indexed by <code>[slot][percentile]</code>,
+     *         or <code>null</code> for slots with too few values.
+     */
+    int[][] getPercentiles() {
+      int[][] percentiles = new int[SLOTS][];
+      int[] window = new int[BINS];
+      for(int slot = 0; slot < SLOTS; slot++) {
+        java.util.Arrays.fill(window, 0);
+        int n = 0;
+        for(int s = slot - SMOOTHING; s <= slot + SMOOTHING; s++) {
+          int o = Math.floorMod(s, SLOTS) * BINS;
+          for(int b = 0; b < BINS; b++) {
+            window[b] += counts[o + b];
+            n += counts[o + b];
+          }
+        }
+        if(n < MIN_VALUES)
+          continue;
+        percentiles[slot] = new int[PERCENTILES.length];
+        int b = 0;
+        long cumulated = window[0];
+        for(int p = 0; p < PERCENTILES.length; p++) {
+          // the smallest bin with at least the percentile of the values at or below it
+          while(100 * cumulated < (long) PERCENTILES[p] * n)
+            cumulated += window[++b];
+          percentiles[slot][p] = value(b);
+        }
+      }
+      return percentiles;
+    }
+  }
+}
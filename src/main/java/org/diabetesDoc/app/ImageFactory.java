@@ -23,8 +23,13 @@ package org.diabetesDoc.app;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.BasicStroke;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This class creates images from XML-files with the DTD <code>DAY</code> (see <i>files/day.dtd</i>).
@@ -37,9 +42,9 @@ final class ImageFactory {
   /** The vertical offset in pixels. */
   private static final int Y_OFF = 580;
   /** The minimal displayed blood glucose value in mg/dl. */
-  private static final int BG_MIN = 40;
+  static final int BG_MIN = 40;
   /** The maximal displayed blood glucose value in mg/dl.*/
-  private static final int BG_MAX = 320;
+  static final int BG_MAX = 320;
   /** The length of a day in minutes. */
   private static final int DAY_TIME_LENGTH = 24*60;
   /** The diagram's width. */
@@ -70,7 +75,8 @@ final class ImageFactory {
    * @throws org.jdom2.JDOMException If an JDOM exception occurs while parsing the XML-String.
    */
   public static BufferedImage getImage(final String xmlTxt) throws java.io.IOException, org.jdom2.JDOMException {
-    return getImage(XML_IO.SAX_BUILDER.build(new java.io.StringReader(xmlTxt)));
+    List<DayRecord> records = XML_IO.readDay(new java.io.StringReader(xmlTxt), "image");
+    return getImage(DayBuffer.of(records.isEmpty() ? "" : records.get(0).date, records));
   }
 
   /**
@@ -80,7 +86,19 @@ final class ImageFactory {
    * @return The {@link BufferedImage} of the day's data.
    */
   public static BufferedImage getImage(final org.jdom2.Document xmlDoc) {
-    String timeStr[];
+    List<DayRecord> records = new ArrayList<DayRecord>();
+    for(org.jdom2.Element e : xmlDoc.getRootElement().getChildren())
+      records.add(DayRecord.of(e));
+    return getImage(DayBuffer.of(xmlDoc.getRootElement().getAttributeValue("Dt"), records));
+  }
+
+  /**
+   * Creates an image of the given day.
+   *
+   * @param day - The {@link DayBuffer} of the day.
+   * @return The {@link BufferedImage} of the day's data.
+   */
+  static BufferedImage getImage(final DayBuffer day) {
     int time, bz, posX, posY;
 
     BufferedImage img = new BufferedImage(template.getIconWidth(), template.getIconHeight(), BufferedImage.TYPE_INT_RGB);
@@ -89,11 +107,10 @@ final class ImageFactory {
     g.setColor(Color.BLACK);
     g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 42));
 
-    for(org.jdom2.Element e : xmlDoc.getRootElement().getChildren()) {
-      if(e.getName().equals("BG") && !e.getAttributeValue("Val").equals("---")) {
-        timeStr = e.getAttributeValue("Tm").split(":");
-        time = Integer.parseInt(timeStr[0]) * 60 + Integer.parseInt(timeStr[1]);
-        bz = Integer.parseInt(e.getAttributeValue("Val"));
+    for(int i = 0; i < day.size(); i++) {
+      if(day.getBG(i) != 0) {
+        time = day.getMinute(i);
+        bz = day.getBG(i);
         posX = X_OFF + (time*DIAGRAM_WIDTH)/DAY_TIME_LENGTH;
         posY = Y_OFF - ( Math.min(Math.max(0, bz - BG_MIN), BG_MAX - BG_MIN) * DIAGRAM_HEIGHT )
             / (BG_MAX - BG_MIN);
@@ -116,4 +133,66 @@ final class ImageFactory {
 
     return img;
   }
+
+  /**
+   * Creates an image of the ambulatory glucose profile with the axes of the day's images:
+   * the bands between the percentiles 5 and 95 and between 25 and 75 and the median.
+   *
+   * @param percentiles - The percentiles by slot (see {@link GlucoseProfile.Sketch#getPercentiles()}).
+   * @return The {@link BufferedImage} of the profile.
+   */
+  static BufferedImage getProfileImage(final int[][] percentiles) {
+    BufferedImage img = new BufferedImage(template.getIconWidth(), template.getIconHeight(), BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = (Graphics2D) img.getGraphics();
+    g.drawImage(template.getImage(), 0,0, template.getImageObserver());
+    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+    Color[] bands = { new Color(0, 0, 255, 50), new Color(0, 0, 255, 90) };
+    for(int band = 0; band < bands.length; band++) {
+      g.setColor(bands[band]);
+      for(int from = 0, to; from < GlucoseProfile.SLOTS; from = to) {
+        // fill each run of slots with percentiles
+        while(from < GlucoseProfile.SLOTS && percentiles[from] == null)
+          from++;
+        for(to = from; to < GlucoseProfile.SLOTS && percentiles[to] != null; to++);
+        if(to - from < 2)
+          continue;
+        int n = to - from;
+        int[] xs = new int[2*n], ys = new int[2*n];
+        for(int i = 0; i < n; i++) {
+          xs[i] = xs[2*n - 1 - i] = slotX(from + i);
+          ys[i] = posY(percentiles[from + i][GlucoseProfile.PERCENTILES.length - 1 - band]);
+          ys[2*n - 1 - i] = posY(percentiles[from + i][band]);
+        }
+        g.fillPolygon(xs, ys, 2*n);
+      }
+    }
+    g.setColor(Color.BLUE.darker());
+    g.setStroke(new BasicStroke(6));
+    int median = GlucoseProfile.PERCENTILES.length / 2;
+    for(int slot = 1; slot < GlucoseProfile.SLOTS; slot++) {
+      if(percentiles[slot - 1] != null && percentiles[slot] != null)
+        g.drawLine(slotX(slot - 1), posY(percentiles[slot - 1][median]), slotX(slot), posY(percentiles[slot][median]));
+    }
+
+    g.dispose();
+
+    return img;
+  }
+
+  /**
+   * @param slot - The slot of the day (see {@link GlucoseProfile#SLOT_MINUTES}).
+   * @return The horizontal position of the slot's middle in pixels.
+   */
+  private static int slotX(final int slot) {
+    return X_OFF + ((2*slot + 1) * GlucoseProfile.SLOT_MINUTES * DIAGRAM_WIDTH) / (2*DAY_TIME_LENGTH);
+  }
+
+  /**
+   * @param bz - The blood glucose value in mg/dl.
+   * @return The vertical position of the value in pixels, limited to the diagram.
+   */
+  private static int posY(final int bz) {
+    return Y_OFF - ( Math.min(Math.max(0, bz - BG_MIN), BG_MAX - BG_MIN) * DIAGRAM_HEIGHT ) / (BG_MAX - BG_MIN);
+  }
 }
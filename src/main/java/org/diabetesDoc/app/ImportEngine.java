@@ -0,0 +1,249 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+
+/**
+ * This Class imports several device input files in parallel (see {@link XML_IO#parseDeviceInputFile(File)}).<br>
+ * The files are parsed on a bounded pool of threads. All days are written through
+ * {@link ImportEngine#writeDay(String, List)}, which serializes the writing of the same date
+ * by a striped lock, so days contained in several files are merged and never overwritten.
+ * Files imported before are skipped (see {@link ImportManifest}).
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class ImportEngine {
+  /** The number of locks, the dates are distributed to. */
+  private static final int LOCK_STRIPES = 64;
+
+  /** The locks for writing the days. */
+  private final Object[] locks = new Object[LOCK_STRIPES];
+
+  /** The maximal number of threads parsing files. */
+  private final int threads;
+
+  /** The number of files read. */
+  private final AtomicInteger filesRead = new AtomicInteger();
+
+  /** The number of files skipped, because they have already been imported. */
+  private final AtomicInteger filesSkipped = new AtomicInteger();
+
+  /** The record of the files already imported. */
+  private final ImportManifest manifest = new ImportManifest();
+
+  /** The {@link XML_IO.DayState}s of the days written. */
+  private final ConcurrentHashMap<String, XML_IO.DayState> days = new ConcurrentHashMap<String, XML_IO.DayState>();
+
+  /**
+   * Creates a new {@code ImportEngine} using one thread per available processor.
+   */
+  ImportEngine() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a new {@code ImportEngine}.
+   *
+   * @param threads - The maximal number of threads parsing files.
+   */
+  ImportEngine(final int threads) {
+    this.threads = Math.max(1, threads);
+    for(int i = 0; i < LOCK_STRIPES; i++)
+      locks[i] = new Object();
+  }
+
+  /**
+   * Imports the given device input files in parallel.
+   * If an error occurs, the remaining files are not imported.
+   *
+   * @param files - The files to import.
+   * @return The {@link Summary} of the import.
+   * @throws IOException If an I/O exception occurs while reading and writing the files.
+   * @throws JDOMException If an error occurs while parsing the XML-data of the files.
+   * @throws IllegalArgumentException If a file contains unknown XML-data.
+   */
+  Summary importFiles(final List<File> files) throws IOException, JDOMException {
+    long start = System.nanoTime();
+    if(!files.isEmpty()) {
+      ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+      try {
+        List<Future<Void>> results = new ArrayList<Future<Void>>(files.size());
+        for(final File f : files) {
+          results.add(pool.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              if(XML_IO.parseDeviceInputFile(f, ImportEngine.this))
+                filesRead.incrementAndGet();
+              else
+                filesSkipped.incrementAndGet();
+              return null;
+            }
+          }));
+        }
+        for(Future<Void> result : results)
+          result.get();
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Import interrupted.", e);
+      } catch(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if(cause instanceof IOException)
+          throw (IOException) cause;
+        if(cause instanceof JDOMException)
+          throw (JDOMException) cause;
+        if(cause instanceof RuntimeException)
+          throw (RuntimeException) cause;
+        throw new IOException(cause);
+      } finally {
+        pool.shutdownNow();
+        DayStore.get().flush();
+        manifest.save(); // the files imported successfully
+      }
+    }
+    int[] count = new int[XML_IO.DayState.values().length];
+    for(XML_IO.DayState state : days.values())
+      count[state.ordinal()]++;
+    return new Summary(filesRead.get(), filesSkipped.get(), count[XML_IO.DayState.ADDED.ordinal()],
+        count[XML_IO.DayState.CHANGED.ordinal()], count[XML_IO.DayState.UNCHANGED.ordinal()],
+        System.nanoTime() - start);
+  }
+
+  /**
+   * Writes the given day (see {@link XML_IO#writeDay(String, List)}).
+   * Days with the same date are never written at the same time.
+   *
+   * @param date - The day's date.
+   * @param day - The day's entries, sorted.
+   * @throws IOException If an I/O exception occurs while reading or writing the day.
+   * @throws JDOMException If an error occurs while parsing the XML-data of the day (if existing).
+   */
+  void writeDay(final String date, final List<DayRecord> day) throws IOException, JDOMException {
+    XML_IO.DayState state;
+    synchronized(lockFor(date)) {
+      state = XML_IO.writeDay(date, day);
+    }
+    // a day may be written several times, the first time decides about ADDED
+    XML_IO.DayState old = days.putIfAbsent(date, state);
+    if(old == XML_IO.DayState.UNCHANGED && state == XML_IO.DayState.CHANGED)
+      days.replace(date, old, state);
+  }
+
+  /**
+   * Writes the given insulin pump profiles (see {@link XML_IO#writeProfiles(Element)}).
+   * Profiles with the same reading date are never written at the same time.
+   *
+   * @param profiles - The XML-{@link Element} <code>IP</code>.
+   * @throws IOException If an I/O exception occurs while writing the file.
+   */
+  void writeProfiles(final Element profiles) throws IOException {
+    synchronized(lockFor("IP " + profiles.getAttributeValue("Dt"))) {
+      XML_IO.writeProfiles(profiles);
+    }
+  }
+
+  /**
+   * @return The {@link ImportManifest} of the files already imported.
+   */
+  ImportManifest getManifest() {
+    return manifest;
+  }
+
+  /**
+   * @param key - The key (e.g. the date).
+   * @return The lock for the given key.
+   */
+  private Object lockFor(final String key) {
+    return locks[(key.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+  }
+
+  /**
+   * This Class summarizes an import.
+   */
+  static final class Summary {
+    /** The number of files read. */
+    final int files;
+    /** The number of files skipped. */
+    final int skipped;
+    /** The number of days added. */
+    final int added;
+    /** The number of days changed. */
+    final int changed;
+    /** The number of days unchanged. */
+    final int unchanged;
+    /** The duration in nanoseconds. */
+    final long nanos;
+
+    private Summary(final int files, final int skipped, final int added, final int changed, final int unchanged,
+        final long nanos) {
+      this.files = files;
+      this.skipped = skipped;
+      this.added = added;
+      this.changed = changed;
+      this.unchanged = unchanged;
+      this.nanos = Math.max(1, nanos);
+    }
+
+    /**
+     * @return The number of days read.
+     */
+    int days() {
+      return added + changed + unchanged;
+    }
+
+    /**
+     * @return The number of files read per second.
+     */
+    double filesPerSecond() {
+      return files * 1e9 / nanos;
+    }
+
+    /**
+     * @return The number of days read per second.
+     */
+    double daysPerSecond() {
+      return days() * 1e9 / nanos;
+    }
+
+    /**
+     * @return The localized summary.
+     */
+    @Override
+    public String toString() {
+      return java.text.MessageFormat.format(Utils.localize("%info.import.summary%"),
+          files, String.format("%1.1f", filesPerSecond()), skipped, days(), String.format("%1.1f", daysPerSecond()),
+          added, changed, unchanged);
+    }
+  }
+}
@@ -0,0 +1,256 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * This Class records the device input files, which have already been imported.<br>
+ * For every file its name, size, last modification time, content hash, the last date contained
+ * in each section and the hash of its content but the last {@link ImportManifest#TAIL_LENGTH} bytes
+ * are saved in {@link ImportManifest#FILE}. The entries are keyed by the name of the file, so the
+ * files are recognized, wherever the device is mounted; as size and hashes are compared, a different
+ * file of the same name is just read completely.
+ * Unchanged files are skipped; the sections of changed files only need to be read from their
+ * last imported date on, if their content before that tail is unchanged, i.e. the device only
+ * appended entries, otherwise they are read completely.
+ * The files are hashed outside the lock of the manifest, so several files can be checked at the same time.
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class ImportManifest {
+  /** The file, in which the manifest is saved. */
+  static final File FILE = new File("xml/import.manifest");
+
+  /** The separator of the values of an entry. */
+  private static final String SEPARATOR = ";";
+
+  /** The number of bytes at the end of a file, which may change when entries are appended (e.g. closing tags). */
+  static final int TAIL_LENGTH = 1024;
+
+  /** The separator of the sections of the last dates. */
+  private static final String SECTION_SEPARATOR = ",";
+
+  /** The entries, the key is the file's name. */
+  private final Properties entries = new Properties();
+
+  /** Whether the entries have been changed since loading. */
+  private boolean modified = false;
+
+  /**
+   * Creates a new {@code ImportManifest} and loads the entries of {@link ImportManifest#FILE}.
+   */
+  ImportManifest() {
+    if(FILE.exists()) {
+      try(FileReader fr = new FileReader(FILE)) {
+        entries.load(fr);
+      } catch(IOException e) {
+        e.printStackTrace(); // start with an empty manifest
+      }
+      for(String key : entries.stringPropertyNames()) { // formerly keyed by the file's path
+        String name = new File(key).getName();
+        if(!name.equals(key)) {
+          if(!entries.containsKey(name))
+            entries.setProperty(name, entries.getProperty(key));
+          entries.remove(key);
+          modified = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks, if the given file has been imported unchanged.
+   * The content hash is only calculated, if the size is unchanged but the time of modification is not.
+   *
+   * @param f - The device input file.
+   * @return <b><code>true</code></b>, if the file has been imported and not changed since;
+   *         <b><code>false</code></b>, otherwise.
+   * @throws IOException If an I/O exception occurs while reading the file.
+   */
+  boolean isImported(final File f) throws IOException {
+    String[] entry;
+    synchronized(this) {
+      entry = getEntry(f);
+    }
+    if(entry == null || Long.parseLong(entry[0]) != f.length())
+      return false;
+    if(Long.parseLong(entry[1]) == f.lastModified())
+      return true;
+    if(!entry[2].equals(hash(f, 0)[1]))
+      return false;
+    synchronized(this) { // only touched
+      entry[1] = Long.toString(f.lastModified());
+      setEntry(f, entry);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the last dates imported from the sections of the given changed file, if the device
+   * only appended entries: the entries of a section before its date need not to be imported again.
+   * This is checked by the hash of the content of the file imported but its tail.
+   *
+   * @param f - The device input file.
+   * @return The last date (format <code>YYYY-MM-DD</code>) by section or <code>null</code>, if the file
+   *         has not been imported before or its former content has been changed.
+   * @throws IOException If an I/O exception occurs while reading the file.
+   */
+  Map<String, String> getLastDates(final File f) throws IOException {
+    String[] entry;
+    synchronized(this) {
+      entry = getEntry(f);
+    }
+    if(entry == null || entry[3].isEmpty() || entry[4].isEmpty())
+      return null;
+    long prefixLength = Long.parseLong(entry[4]);
+    Map<String, String> lastDates = parseDates(entry[3]);
+    if(lastDates == null || f.length() < prefixLength || !entry[5].equals(hash(f, prefixLength)[0]))
+      return null;
+    return lastDates;
+  }
+
+  /**
+   * Records the given file as imported.
+   *
+   * @param f - The device input file.
+   * @param lastDates - The last date contained in the file by section or <code>null</code>.
+   * @throws IOException If an I/O exception occurs while reading the file.
+   */
+  void setImported(final File f, final Map<String, String> lastDates) throws IOException {
+    long length = f.length(), modified = f.lastModified(), prefixLength = Math.max(0, length - TAIL_LENGTH);
+    String[] hashes = hash(f, prefixLength);
+    synchronized(this) {
+      String[] old = getEntry(f);
+      Map<String, String> dates = new TreeMap<String, String>();
+      if(lastDates != null)
+        dates.putAll(lastDates);
+      Map<String, String> oldDates = (old == null) ? null : parseDates(old[3]);
+      if(oldDates != null) { // a read from the last dates on does not contain the earlier ones
+        for(Map.Entry<String, String> e : oldDates.entrySet()) {
+          String date = dates.get(e.getKey());
+          if(date == null || e.getValue().compareTo(date) > 0)
+            dates.put(e.getKey(), e.getValue());
+        }
+      }
+      StringBuilder sb = new StringBuilder();
+      for(Map.Entry<String, String> e : dates.entrySet()) {
+        if(sb.length() > 0)
+          sb.append(SECTION_SEPARATOR);
+        sb.append(e.getKey()).append('=').append(e.getValue());
+      }
+      setEntry(f, new String[]{ Long.toString(length), Long.toString(modified), hashes[1], sb.toString(),
+          Long.toString(prefixLength), hashes[0] });
+    }
+  }
+
+  /**
+   * Saves the entries into {@link ImportManifest#FILE}, if they have been changed.
+   *
+   * @throws IOException If an I/O exception occurs while writing the file.
+   */
+  synchronized void save() throws IOException {
+    if(!modified)
+      return;
+    FILE.getParentFile().mkdirs();
+    try(FileWriter fw = new FileWriter(FILE)) {
+      entries.store(fw, "Device input files imported by DiabetesDoc: size;modified;SHA-1;last dates by section;prefix length;prefix SHA-1");
+    }
+    modified = false;
+  }
+
+  /**
+   * Parses the last dates of an entry, e.g. <code>BGDATA=2015-01-03,IPDATA=2015-01-05</code>.
+   *
+   * @param value - The last dates of an entry.
+   * @return The last dates by section or <code>null</code>, if the value is empty
+   *         or has been saved as one date for all sections, so the file is read completely.
+   */
+  private static Map<String, String> parseDates(final String value) {
+    if(value.isEmpty())
+      return null;
+    Map<String, String> dates = new TreeMap<String, String>();
+    for(String date : value.split(SECTION_SEPARATOR)) {
+      int i = date.indexOf('=');
+      if(i < 0)
+        return null;
+      dates.put(date.substring(0, i), date.substring(i + 1));
+    }
+    return Collections.unmodifiableMap(dates);
+  }
+
+  private String[] getEntry(final File f) {
+    String value = entries.getProperty(f.getName());
+    if(value == null)
+      return null;
+    String[] entry = value.split(SEPARATOR, -1);
+    if(entry.length == 4) // saved without prefix, so the file is read completely when changed
+      return new String[]{ entry[0], entry[1], entry[2], entry[3], "", "" };
+    return (entry.length == 6) ? entry : null;
+  }
+
+  private void setEntry(final File f, final String[] entry) {
+    entries.setProperty(f.getName(), String.join(SEPARATOR, entry));
+    modified = true;
+  }
+
+  /**
+   * Calculates the SHA-1 hashes of the first bytes and of the whole content of the given file
+   * in one pass.
+   *
+   * @param f - The file.
+   * @param prefixLength - The number of the first bytes.
+   * @return The hashes of the first bytes and of the whole content as hexadecimal {@code String}s.
+   * @throws IOException If an I/O exception occurs while reading the file.
+   */
+  static String[] hash(final File f, final long prefixLength) throws IOException {
+    MessageDigest md, prefix;
+    try {
+      md = MessageDigest.getInstance("SHA-1");
+      prefix = MessageDigest.getInstance("SHA-1");
+    } catch(NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    byte[] buffer = new byte[64 * 1024];
+    long pos = 0;
+    try(InputStream in = new FileInputStream(f)) {
+      int n;
+      while((n = in.read(buffer)) > 0) {
+        if(pos < prefixLength)
+          prefix.update(buffer, 0, (int) Math.min(n, prefixLength - pos));
+        md.update(buffer, 0, n);
+        pos += n;
+      }
+    }
+    return new String[]{ Utils.toHexString(prefix.digest()), Utils.toHexString(md.digest()) };
+  }
+}
@@ -65,6 +65,8 @@ final class MenuFactory {
     menu.setMnemonic(name.charAt(0));
 
     menu.add( getMenuItem("%menu.output.asPDF%", al, 'P') );
+    menu.add( getMenuItem("%menu.output.statistics%", al) );
+    menu.add( getMenuItem("%menu.output.agp%", al) );
 
     return menu;
   }
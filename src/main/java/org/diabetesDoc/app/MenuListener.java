@@ -74,22 +74,23 @@ final class MenuListener implements ActionListener {
       if(smartPixPath == null)
         return;
 
-      new SwingWorker<Void, Void>() {
+      new SwingWorker<ImportEngine.Summary, Void>() {
         @Override
-        protected Void doInBackground() throws Exception {
+        protected ImportEngine.Summary doInBackground() throws Exception {
           File dir = new File(smartPixPath + "/REPORT/XML/");
+          List<File> files = new ArrayList<File>();
           for(File f : dir.listFiles()) {
             if(f.isFile() && f.getName().toLowerCase().endsWith(".xml"))
-            	XML_IO.parseDeviceInputFile(f);
+              files.add(f);
           }
-          return null;
+          return new ImportEngine().importFiles(files);
         }
         @Override
         protected void done() {
           try {
-            get();
+            ImportEngine.Summary summary = get();
             Dialogs.showInfoMsg("%info.successful.reading.ttl%",
-            		"%info.successful.reading.SmartPix.msg%", frame);
+            		"%info.successful.reading.SmartPix.msg% \n" + summary, frame);
             frame.fileListPane.refreshList();
             frame.revalidate();
             frame.repaint();
@@ -137,18 +138,17 @@ final class MenuListener implements ActionListener {
       final File source = Dialogs.showFileChoiceMsg(frame,
           Utils.localize("%choose.file.ttl%", "XML"), "%choose.file.read%", false, new File("reports"), "xml");
       if(source != null) {
-        new SwingWorker<Void, Void>() {
+        new SwingWorker<ImportEngine.Summary, Void>() {
           @Override
-          protected Void doInBackground() throws Exception {
-            XML_IO.parseDeviceInputFile(source);
-            return null;
+          protected ImportEngine.Summary doInBackground() throws Exception {
+            return new ImportEngine(1).importFiles(java.util.Collections.singletonList(source));
           }
           @Override
           protected void done() {
             try {
-            	get();
+            	ImportEngine.Summary summary = get();
             	Dialogs.showInfoMsg("%info.successful.reading.ttl%",
-            			Utils.localize("%info.successful.reading.ttl%", source.getPath()), frame);
+            			Utils.localize("%info.successful.reading.ttl%", source.getPath()) + " \n" + summary, frame);
               frame.fileListPane.refreshList();
               frame.revalidate();
               frame.repaint();
@@ -166,6 +166,12 @@ final class MenuListener implements ActionListener {
     case "%menu.output.asPDF%":
       createPDF();
       break;
+    case "%menu.output.statistics%":
+      showStatistics();
+      break;
+    case "%menu.output.agp%":
+      showProfile();
+      break;
     case "%menu.options.settings%":
       Dialogs.showSettingsChoiceDialog(frame);
       break;
@@ -186,6 +192,55 @@ final class MenuListener implements ActionListener {
     }
   }
 
+  /**
+   * Shows the statistics of the history, loading it in the background if necessary.
+   */
+  private void showStatistics() {
+    new SwingWorker<TimeSeries, Void>() {
+      @Override
+      protected TimeSeries doInBackground() throws Exception {
+        return TimeSeries.get();
+      }
+      @Override
+      protected void done() {
+        try {
+          Dialogs.showStatisticsMsg(get(), frame);
+        } catch(Exception e) {
+          Dialogs.showErrorMsg("%error.statistics.ttl%", "%error.statistics.msg% \n" + e.getMessage(), frame);
+          e.printStackTrace();
+        }
+      }
+    }.execute();
+  }
+
+  /**
+   * Shows the ambulatory glucose profile of the days chosen (see {@link GlucoseProfile}).
+   */
+  private void showProfile() {
+    final String begin_end = Dialogs.showDayChoiceMsg(frame, "AGP");
+    if(begin_end == null)
+      return;
+    final String be[] = begin_end.split("_");
+    new SwingWorker<java.awt.image.BufferedImage, Void>() {
+      @Override
+      protected java.awt.image.BufferedImage doInBackground() throws Exception {
+        GlucoseProfile.Sketch sketch = TimeSeries.get().getProfile().merge(
+            DateUtils.toEpochDay(be[0]), DateUtils.toEpochDay(be[1]));
+        return ImageFactory.getProfileImage(sketch.getPercentiles());
+      }
+      @Override
+      protected void done() {
+        try {
+          Dialogs.showImageMsg(get(), Utils.localize("%output.agp%") + "  "
+              + Utils.localizeDateString(be[0]) + " - " + Utils.localizeDateString(be[1]), frame);
+        } catch(Exception e) {
+          Dialogs.showErrorMsg("%error.statistics.ttl%", "%error.statistics.msg% \n" + e.getMessage(), frame);
+          e.printStackTrace();
+        }
+      }
+    }.execute();
+  }
+
   /**
    * Searches the path to the SmartPix device.
    * @return The path to the SmartPix device, if found; null, otherwise.
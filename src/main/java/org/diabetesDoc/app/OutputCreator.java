@@ -24,25 +24,51 @@ package org.diabetesDoc.app;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.ProgressMonitor;
 
 import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.io.RandomAccessFile;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectForm;
+import org.apache.pdfbox.util.PDFMergerUtility;
 
 import org.jdom2.JDOMException;
 
 /**
  * This Class provides methods to create pdf output.<br>
- * The input is taken from the XML-files in the directory <i>xml</i>}.
+ * The input is taken from the days of the {@link DayStore}: their tables are created in parallel
+ * in the background, while the pages are rendered one after the other in the order of the days.
+ * The memory needed does not grow with the number of days: only a few days' tables are waiting
+ * for rendering and the content of the pages rendered is kept in a scratch file until saving.
+ * The parts, which are the same on every page (the page header and the frames of the tables),
+ * are written only once per document as form XObjects and referenced by the pages.<br>
+ * Ranges of several months and ranges containing a whole month are rendered month by month,
+ * in parallel on several processors, each month into its own PDF-file, which are merged in the order
+ * of the months at last. Whole months are kept in the {@link PageCache} and rendered again
+ * only after their input has changed. So every month starts on a new page, independent of
+ * the machine and the cache.
  * @author Stephan Lunowa
  * @version 0.1 - last modified 2017-10-18
  */
@@ -82,6 +108,15 @@ final class OutputCreator {
    */
   static final float PDF_FONT_SIZE_TABLE = 9.0f;
 
+  /** The left border of the ambulatory glucose profile's chart. */
+  private static final float AGP_X = MARGIN_SIZE + 1.2f * CM;
+  /** The width of the ambulatory glucose profile's chart. */
+  private static final float AGP_WIDTH = 28.9f * CM - AGP_X;
+  /** The lower border of the ambulatory glucose profile's chart. */
+  private static final float AGP_Y = 3.0f * CM;
+  /** The height of the ambulatory glucose profile's chart. */
+  private static final float AGP_HEIGHT = 14.5f * CM;
+
   /** Only static methods. */
   private OutputCreator() {}
 
@@ -114,59 +149,509 @@ final class OutputCreator {
     File out = new File("pdf", Utils.toDateString(startDate) + "_" + Utils.toDateString(endDate) + ".pdf");
     out.getParentFile().mkdirs();
 
-    // Create a new document
-    PDDocument pdfDoc = new PDDocument();
-    PDRectangle pageSize = new PDRectangle(PDPage.PAGE_SIZE_A4.getHeight(), PDPage.PAGE_SIZE_A4.getWidth()); // A4 - transverse
-    PDPage page;
-    PDPageContentStream pdfStream = null;
+    if(pm != null)
+      pm.setProgress(1);
 
-    pm.setProgress(1);
+    // only the days existing, see DayCatalog
+    DayStore store = DayStore.get();
+    List<String> dates = store.getCatalog().getDates(Utils.toDateString(startDate), Utils.toDateString(endDate));
+    long fromDay = DateUtils.toEpochDay(Utils.toDateString(startDate)),
+        toDay = DateUtils.toEpochDay(Utils.toDateString(endDate));
 
-    // read XML-files
-    int totalTime = Math.max(1, endDate.compareTo(startDate));
-    List<Table> tables = new ArrayList<Table>();
-    while(!startDate.after(endDate)) {
-      if(pm != null) {
-        pm.setProgress(1 + 39 * endDate.compareTo(startDate) / totalTime);
-        if(pm.isCanceled())
-          throw new IllegalStateException("Cancelled.");
+    // the pages of a single month are the same, whether it is rendered by month or not
+    List<List<String>> months = splitByMonth(dates);
+    if(months.size() < 2 && (months.isEmpty() || !isWholeMonth(months.get(0).get(0), fromDay, toDay)))
+      render(out, store, dates, new Progress(pm, dates.size(), 100), true, fromDay, toDay);
+    else
+      renderByMonth(out, store, months, pm,
+          Math.max(1, Math.min(months.size(), Runtime.getRuntime().availableProcessors())), fromDay, toDay);
+  }
+
+  /**
+   * Renders the given months in parallel, each into its own temporary PDF-file,
+   * and merges them in the order of the months into the given file, so every month starts on a new page.
+   * Whole months are taken from the {@link PageCache}, if they have been cached,
+   * or put into it after rendering. The ambulatory glucose profile is rendered as
+   * a part of its own after the last month.
+   *
+   * @param out - The PDF-file to create.
+   * @param store - The {@link DayStore} to read from.
+   * @param months - The dates of the days, ascending and split by month.
+   * @param pm - The {@link ProgressMonitor} displaying the progress or <code>null</code>.
+   * @param threads - The number of months rendered at the same time.
+   * @param fromDay - The first day as days since 1970-01-01 (inclusive).
+   * @param toDay - The last day as days since 1970-01-01 (inclusive).
+   * @throws IOException If an I/O exception occurs while creating the PDF-file from the XML-files.
+   * @throws COSVisitorException If an exception occurs while creating the PDF-file.
+   * @throws RuntimeException If the cancel-button of the {@code ProgressMonitor} was clicked.
+   */
+  private static void renderByMonth(File out, final DayStore store, List<List<String>> months, ProgressMonitor pm,
+      int threads, final long fromDay, final long toDay) throws IOException, COSVisitorException {
+    // the files of the whole months in the cache
+    File[] cached = new File[months.size()];
+    boolean[] hit = new boolean[months.size()];
+    int days = 0;
+    for(int i = 0; i < months.size(); i++) {
+      if(isWholeMonth(months.get(i).get(0), fromDay, toDay)) {
+        cached[i] = PageCache.getFile(store.getCatalog(), months.get(i));
+        hit[i] = cached[i].isFile();
       }
+      if(!hit[i])
+        days += months.get(i).size();
+    }
+    // the last tenth is left for merging
+    final Progress progress = new Progress(pm, days, 90);
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<File> parts = new ArrayList<File>(months.size() + 1);
+    List<File> temporary = new ArrayList<File>(months.size() + 1);
+    try {
+      List<Future<Void>> rendered = new ArrayList<Future<Void>>(months.size() + 1);
+      for(int i = 0; i <= months.size(); i++) {
+        if(i < months.size() && hit[i]) {
+          parts.add(cached[i]);
+          continue;
+        }
+        final File part = File.createTempFile("DiabetesDoc", ".pdf", out.getParentFile());
+        parts.add(part);
+        temporary.add(part);
+        final List<String> dates = (i < months.size()) ? months.get(i) : Collections.<String>emptyList();
+        final boolean profile = (i == months.size());
+        final File cache = (i < months.size()) ? cached[i] : null;
+        rendered.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException, COSVisitorException {
+            render(part, store, dates, progress, profile, fromDay, toDay);
+            if(cache != null) {
+              try {
+                PageCache.put(part, cache);
+              } catch(IOException e) {
+                e.printStackTrace(); // rendered again next time
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for(Future<Void> f : rendered) {
+        try {
+          f.get();
+        } catch(InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while rendering the pages.");
+        } catch(ExecutionException e) {
+          Throwable t = e.getCause();
+          if(t instanceof IOException)
+            throw (IOException) t;
+          if(t instanceof COSVisitorException)
+            throw (COSVisitorException) t;
+          if(t instanceof RuntimeException)
+            throw (RuntimeException) t;
+          if(t instanceof Error)
+            throw (Error) t;
+          throw new IllegalStateException(t);
+        }
+      }
+
+      merge(out, parts, pm);
+    } finally {
+      // stop the other months after a failure, before their files are deleted
+      executor.shutdownNow();
       try {
-        tables.addAll( TableFactory.createTables(new File(
-            "xml/" + Utils.toDateString(startDate) + ".xml")));
-      } catch (JDOMException e) {
-        // TODO: auto-generated catch-block
-        e.printStackTrace();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      for(File part : temporary)
+        part.delete();
+    }
+  }
+
+  /**
+   * @param date - A date of the month (format <code>YYYY-MM-DD</code>).
+   * @param fromDay - The first day of the range as days since 1970-01-01 (inclusive).
+   * @param toDay - The last day of the range as days since 1970-01-01 (inclusive).
+   * @return <b><code>true</code></b>, if the range contains the whole month;
+   *         <b><code>false</code></b>, otherwise.
+   */
+  private static boolean isWholeMonth(String date, long fromDay, long toDay) {
+    int ymd = DateUtils.toYearMonthDay(DateUtils.toEpochDay(date));
+    return fromDay <= DateUtils.toEpochDay(ymd / 10000, ymd / 100 % 100, 1)
+        && DateUtils.toEpochDay(ymd / 10000, ymd / 100 % 100 + 1, 1) <= toDay + 1;
+  }
+
+  /**
+   * Merges the given parts in their order into a PDF-file. The parts are appended one at a time
+   * and closed right after, the content of the merged pages is kept in a scratch file until saving.
+   *
+   * @param out - The PDF-file to create.
+   * @param parts - The PDF-files to merge.
+   * @param pm - The {@link ProgressMonitor} displaying the progress from <code>90</code> to <code>100</code>
+   *             or <code>null</code>.
+   * @throws IOException If an I/O exception occurs while reading a part or writing the PDF-file.
+   * @throws COSVisitorException If an exception occurs while writing the PDF-file.
+   */
+  private static void merge(File out, List<File> parts, ProgressMonitor pm) throws IOException, COSVisitorException {
+    File scratch = File.createTempFile("DiabetesDoc", ".scratch", out.getParentFile());
+    RandomAccessFile scratchFile = new RandomAccessFile(scratch, "rw");
+    PDDocument pdfDoc = null;
+    try {
+      pdfDoc = new PDDocument(scratchFile);
+      PDFMergerUtility merger = new PDFMergerUtility();
+      for(int i = 0; i < parts.size(); i++) {
+        PDDocument part = PDDocument.load(parts.get(i));
+        try {
+          merger.appendDocument(pdfDoc, part);
+        } finally {
+          part.close();
+        }
+        if(pm != null)
+          pm.setProgress(90 + 10 * (i + 1) / parts.size());
+      }
+      pdfDoc.save(out);
+    } finally {
+      if(pdfDoc != null)
+        pdfDoc.close();
+      scratchFile.close();
+      scratch.delete();
+    }
+  }
+
+  /**
+   * Renders the given days into a PDF-file.
+   *
+   * @param out - The PDF-file to create.
+   * @param store - The {@link DayStore} to read from.
+   * @param dates - The dates of the days, ascending.
+   * @param progress - The {@link Progress} to report the days rendered to.
+   * @param profile - Whether the page with the ambulatory glucose profile is added.
+   * @param fromDay - The first day of the profile as days since 1970-01-01 (inclusive).
+   * @param toDay - The last day of the profile as days since 1970-01-01 (inclusive).
+   * @throws IOException If an I/O exception occurs while creating the PDF-file from the XML-files.
+   * @throws COSVisitorException If an exception occurs while creating the PDF-file.
+   * @throws RuntimeException If the cancel-button of the {@code ProgressMonitor} was clicked.
+   */
+  private static void render(File out, DayStore store, List<String> dates, Progress progress, boolean profile,
+      long fromDay, long toDay) throws IOException, COSVisitorException {
+    // read the days in the background
+    TableProducer producer = new TableProducer(store, dates, progress.pm);
+    Thread thread = new Thread(producer, "TableProducer");
+    thread.setDaemon(true);
+    thread.start();
+
+    // Create a new document, keeping the content of the pages in a scratch file
+    File scratch = File.createTempFile("DiabetesDoc", ".scratch", out.getParentFile());
+    RandomAccessFile scratchFile = new RandomAccessFile(scratch, "rw");
+    PDDocument pdfDoc = null;
+    try {
+      pdfDoc = new PDDocument(scratchFile);
+      PDRectangle pageSize = new PDRectangle(PDPage.PAGE_SIZE_A4.getHeight(), PDPage.PAGE_SIZE_A4.getWidth()); // A4 - transverse
+      PDPage page;
+      PDPageContentStream pdfStream = null;
+      PDXObjectForm header = createPageHeader(pdfDoc, pageSize);
+      PDXObjectForm frame = Table.createFrame(pdfDoc);
+
+      // Add content, as soon as the tables of the days are created
+      int i = 0;
+      for(List<Table> tables = producer.take(); tables != TableProducer.END; tables = producer.take()) {
+        progress.dayRendered();
+        for(Table table : tables) {
+          // always 5 Tables per page
+          if(i % 5 == 0) {
+            page = new PDPage(pageSize);
+            pdfDoc.addPage( page );
+            if(pdfStream != null)
+              pdfStream.close();
+            pdfStream = new PDPageContentStream(pdfDoc, page);
+            pdfStream.drawXObject(header, 0, 0, 1, 1);
+          }
+
+          table.toPDF(pdfStream, frame, 0.8f*CM, 18.44f*CM - (i % 5) * 3.65f*CM);
+          i++;
+        }
+      }
+      if(pdfStream != null)
+        pdfStream.close();
+
+      if(profile)
+        addProfilePage(pdfDoc, pageSize, fromDay, toDay);
+
+      // Save the created document
+      pdfDoc.save(out);
+    } finally {
+      producer.stop();
+      if(pdfDoc != null)
+        pdfDoc.close();
+      scratchFile.close();
+      scratch.delete();
+    }
+  }
+
+  /**
+   * Splits the given dates by month.
+   *
+   * @param dates - The dates with the format <code>YYYY-MM-DD</code>, ascending.
+   * @return The dates of every month, ascending.
+   */
+  private static List<List<String>> splitByMonth(List<String> dates) {
+    List<List<String>> months = new ArrayList<List<String>>();
+    int from = 0;
+    for(int i = 1; i <= dates.size(); i++) {
+      if(i == dates.size() || !dates.get(i).regionMatches(0, dates.get(from), 0, 7)) {
+        months.add(dates.subList(from, i));
+        from = i;
       }
-      startDate.add(Calendar.DATE, 1);
+    }
+    return months;
+  }
+
+  /**
+   * The progress of rendering the days, shared by all threads rendering pages.
+   */
+  private static final class Progress {
+    /** The {@link ProgressMonitor} displaying the progress or <code>null</code>. */
+    final ProgressMonitor pm;
+    /** The number of days to render. */
+    private final int days;
+    /** The progress after the last day. */
+    private final int max;
+    /** The number of days rendered. */
+    private int rendered = 0;
+
+    Progress(ProgressMonitor pm, int days, int max) {
+      this.pm = pm;
+      this.days = days;
+      this.max = max;
     }
 
-    // Add content
-    for(int i = 0; i < tables.size(); i++) {
+    /**
+     * Reports, that the next day is rendered.
+     *
+     * @throws RuntimeException If the cancel-button of the {@code ProgressMonitor} was clicked.
+     */
+    synchronized void dayRendered() {
       if(pm != null) {
-        pm.setProgress(40 + 60 * i / tables.size());
+        pm.setProgress(1 + (max - 1) * rendered++ / days);
         if(pm.isCanceled())
           throw new IllegalStateException("Cancelled.");
       }
-      // always 5 Tables per page
-      if(i % 5 == 0) {
-        page = new PDPage(pageSize);
-        pdfDoc.addPage( page );
-        if(pdfStream != null)
-          pdfStream.close();
-        pdfStream = new PDPageContentStream(pdfDoc, page);
-        pdfStream.setLineWidth(0.05f);
-          addPageHeader(pdfStream);
+    }
+  }
+
+  /**
+   * Creates the {@link Table}s of the given days in a {@link ForkJoinPool}, one task per day.
+   * The tables are already finished (see {@link Table#finish()}), so rendering them needs no formatting.
+   *
+   * @param store - The {@link DayStore} to read from.
+   * @param dates - The dates of the days, ascending.
+   * @param pm - The {@link ProgressMonitor}, whose cancel-button is checked, or <code>null</code>.
+   * @return The tables of every day in the order of the days, empty for days without tables.
+   * @throws IOException If an I/O exception occurs while reading a day or a day cannot be parsed.
+   * @throws RuntimeException If the cancel-button of the {@code ProgressMonitor} was clicked.
+   */
+  private static List<List<Table>> createTables(DayStore store, List<String> dates, ProgressMonitor pm) throws IOException {
+    @SuppressWarnings("unchecked")
+    List<Table>[] dayTables = new List[dates.size()];
+    try {
+      ForkJoinPool.commonPool().invoke(new TableTask(store, dates, dayTables, 0, dates.size(), pm));
+    } catch(RuntimeException e) {
+      // the pool may wrap the exception of a task into a new one of the same type
+      if(pm != null && pm.isCanceled())
+        throw new IllegalStateException("Cancelled.");
+      for(Throwable t = e; t != null; t = t.getCause()) {
+        if(t instanceof IOException)
+          throw (IOException) t;
+      }
+      throw e;
+    }
+
+    List<List<Table>> tables = new ArrayList<List<Table>>(dayTables.length);
+    for(List<Table> t : dayTables)
+      tables.add((t == null) ? new ArrayList<Table>(0) : t);
+    return tables;
+  }
+
+  /**
+   * Creates the {@link Table}s of a range of days, splitting it until a single day is left.
+   */
+  private static final class TableTask extends RecursiveAction {
+    /** @see java.io.Serializable */
+    private static final long serialVersionUID = 1L;
+
+    private final DayStore store;
+    private final List<String> dates;
+    /** The tables by index of the day, filled by the tasks. */
+    private final List<Table>[] dayTables;
+    /** The first day's index (inclusive). */
+    private final int from;
+    /** The last day's index (exclusive). */
+    private final int to;
+    private final ProgressMonitor pm;
+
+    TableTask(DayStore store, List<String> dates, List<Table>[] dayTables, int from, int to, ProgressMonitor pm) {
+      this.store = store;
+      this.dates = dates;
+      this.dayTables = dayTables;
+      this.from = from;
+      this.to = to;
+      this.pm = pm;
+    }
+
+    @Override
+    protected void compute() {
+      if(to - from > 1) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new TableTask(store, dates, dayTables, from, mid, pm),
+                  new TableTask(store, dates, dayTables, mid, to, pm));
+        return;
+      }
+      if(from == to)
+        return;
+      if(pm != null && pm.isCanceled())
+        throw new IllegalStateException("Cancelled.");
+      try {
+        List<Table> tables = store.createTables(dates.get(from));
+        if(tables != null) {
+          for(Table t : tables)
+            t.finish();
+          dayTables[from] = tables;
+        }
+      } catch(JDOMException e) {
+        throw new UncheckedIOException(new IOException("The day " + dates.get(from) + " cannot be parsed.", e));
+      } catch(IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Creates the {@link Table}s of the days chunk by chunk (each in parallel, see
+   * {@link OutputCreator#createTables(DayStore, List, ProgressMonitor)}) and passes them day by day
+   * through a bounded queue to the thread rendering the pages. So only a few chunks of tables
+   * are in memory at any time, however many days there are.
+   */
+  private static final class TableProducer implements Runnable {
+    /** The number of days, whose tables are created together. */
+    private static final int CHUNK_DAYS = 32;
+
+    /** Marks the end of the days in the queue. */
+    static final List<Table> END = new ArrayList<Table>(0);
+
+    private final DayStore store;
+    private final List<String> dates;
+    private final ProgressMonitor pm;
+
+    /** The tables of the days created, but not yet rendered. */
+    private final BlockingQueue<List<Table>> queue = new ArrayBlockingQueue<List<Table>>(2 * CHUNK_DAYS);
+
+    /** Whether the rendering thread stopped taking tables. */
+    private volatile boolean stopped = false;
+
+    /** The exception, which ended the producing, or <code>null</code>. */
+    private volatile Throwable error;
+
+    TableProducer(DayStore store, List<String> dates, ProgressMonitor pm) {
+      this.store = store;
+      this.dates = dates;
+      this.pm = pm;
+    }
+
+    @Override
+    public void run() {
+      try {
+        for(int i = 0; i < dates.size() && !stopped; i += CHUNK_DAYS) {
+          for(List<Table> tables : createTables(store, dates.subList(i, Math.min(i + CHUNK_DAYS, dates.size())), pm)) {
+            if(!put(tables))
+              return;
+          }
+        }
+      } catch(Throwable t) {
+        error = t;
+      }
+      put(END);
+    }
+
+    /**
+     * Puts the tables of a day into the queue, waiting for space while the rendering thread takes tables.
+     *
+     * @param tables - The tables of the day.
+     * @return <b><code>true</code></b>, if they were put;
+     *         <b><code>false</code></b>, if the rendering thread stopped.
+     */
+    private boolean put(List<Table> tables) {
+      try {
+        while(!stopped) {
+          if(queue.offer(tables, 100, TimeUnit.MILLISECONDS))
+            return true;
+        }
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return false;
+    }
+
+    /**
+     * Takes the tables of the next day, waiting until they are created.
+     *
+     * @return The tables of the day or {@link TableProducer#END} after the last day.
+     * @throws IOException If an I/O exception occured while reading a day.
+     * @throws RuntimeException If the cancel-button of the {@code ProgressMonitor} was clicked.
+     */
+    List<Table> take() throws IOException {
+      List<Table> tables;
+      try {
+        tables = queue.take();
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new java.io.InterruptedIOException("Interrupted while waiting for the tables.");
+      }
+      if(tables == END && error != null) {
+        if(error instanceof IOException)
+          throw (IOException) error;
+        if(error instanceof RuntimeException)
+          throw (RuntimeException) error;
+        throw (Error) error;
       }
+      return tables;
+    }
 
-      tables.get(i).toPDF(pdfStream, 0.8f*CM, 18.44f*CM - (i % 5) * 3.65f*CM);
+    /**
+     * Stops the producing, e.g. after the rendering failed.
+     */
+    void stop() {
+      stopped = true;
     }
-    if(pdfStream != null)
-      pdfStream.close();
+  }
+
+  /**
+   * Creates the page header as PDF form XObject, which is written once per document
+   * and referenced by every page.
+   *
+   * @param pdfDoc - The {@link PDDocument} the header is used in.
+   * @param pageSize - The pages' size.
+   * @return The page header with the origin of the page as origin.
+   * @throws IOException If an I/O exception occurs while writing the header.
+   */
+  private static PDXObjectForm createPageHeader(PDDocument pdfDoc, PDRectangle pageSize) throws IOException {
+    PDPage formPage = new PDPage(pageSize);
+    PDPageContentStream pdfStream = new PDPageContentStream(pdfDoc, formPage);
+    addPageHeader(pdfStream);
+    pdfStream.close();
+    return createForm(formPage);
+  }
 
-    // Save the created document
-    pdfDoc.save(out);
-    pdfDoc.close();
+  /**
+   * Creates a PDF form XObject from the content of the given page, which is not added to a document.
+   * The form keeps the page's resources and has the page's size as bounding box.
+   *
+   * @param formPage - The {@link PDPage} with the form's content.
+   * @return The form XObject.
+   */
+  static PDXObjectForm createForm(PDPage formPage) {
+    PDXObjectForm form = new PDXObjectForm(formPage.getContents());
+    form.setResources(formPage.findResources());
+    form.setBBox(formPage.getMediaBox());
+    return form;
   }
 
   /**
@@ -176,6 +661,7 @@ final class OutputCreator {
    * @throws IOException If an I/O exceotion occurs while writing to the Stream.
    */
   private static void addPageHeader(PDPageContentStream pdfStream) throws IOException {
+    pdfStream.setLineWidth(0.05f);
     pdfStream.drawLine( MARGIN_SIZE, 19.7f*CM, 28.9f*CM, 19.7f*CM);
     pdfStream.drawLine( MARGIN_SIZE, 19.0f*CM, 28.9f*CM, 19.0f*CM);
     pdfStream.drawLine( MARGIN_SIZE, 19.0f*CM,  0.8f*CM, 19.7f*CM);
@@ -197,6 +683,152 @@ final class OutputCreator {
     pdfStream.endText();
   }
 
+  /**
+   * Adds a page with the ambulatory glucose profile of the given days (see {@link GlucoseProfile}),
+   * drawn with the bg axis of the tables' charts. Nothing is added, if there are no bg values.
+   *
+   * @param pdfDoc - The {@link PDDocument} the page is added to.
+   * @param pageSize - The page's size.
+   * @param fromDay - The first day as days since 1970-01-01 (inclusive).
+   * @param toDay - The last day as days since 1970-01-01 (inclusive).
+   * @throws IOException If an I/O exception occurs while loading the history or writing the page.
+   */
+  private static void addProfilePage(PDDocument pdfDoc, PDRectangle pageSize, long fromDay, long toDay) throws IOException {
+    TimeSeries ts = TimeSeries.get();
+    GlucoseProfile.Sketch sketch = ts.getProfile().merge(fromDay, toDay);
+    if(sketch.getDays() == 0)
+      return;
+    int[][] percentiles = sketch.getPercentiles();
+    Rollups.Summary summary = ts.getRollups().summarize(fromDay, toDay);
+    boolean german = java.util.Locale.getDefault().equals(java.util.Locale.GERMANY);
+    FixedPointFormat f = FixedPointFormat.get();
+
+    PDPage page = new PDPage(pageSize);
+    pdfDoc.addPage(page);
+    PDPageContentStream pdfStream = new PDPageContentStream(pdfDoc, page);
+    try {
+      // header
+      pdfStream.beginText();
+      pdfStream.setFont(PDType1Font.TIMES_ROMAN, 12);
+      pdfStream.moveTextPositionByAmount(1.0f*CM, 20.0f*CM);
+      pdfStream.drawString(DiabetesDoc.getSetting("username") + "  " + DiabetesDoc.getSetting("birthday"));
+      pdfStream.setFont(PDType1Font.TIMES_BOLD, 12);
+      pdfStream.moveTextPositionByAmount(0, -0.8f*CM);
+      pdfStream.drawString(Utils.localize("%output.agp%") + "  " + DateUtils.toDateString(fromDay, german)
+          + " - " + DateUtils.toDateString(toDay, german) + "  (" + Utils.localize("%output.agp.days%", "" + sketch.getDays()) + ")");
+      pdfStream.setFont(PDF_FONT, PDF_FONT_SIZE_TABLE);
+      pdfStream.moveTextPositionByAmount(0, -0.6f*CM);
+      pdfStream.drawString(Utils.localize("%statistics.count%: ") + summary.getCount()
+          + Utils.localize("   %statistics.mean%: ") + f.format(summary.getMean()) + " mg/dl"
+          + Utils.localize("   %statistics.cv%: ") + f.format(summary.getCoefficientOfVariation()) + " %"
+          + Utils.localize("   %statistics.gmi%: ") + f.format(summary.getGMI()) + " %"
+          + Utils.localize("   %statistics.inRange%: ") + f.format(summary.getTimeInRange()) + " %  ("
+          + Rollups.RANGE_LOW + " - " + Rollups.RANGE_HIGH + " mg/dl)");
+      pdfStream.endText();
+
+      // background as in the tables' charts
+      pdfStream.setNonStrokingColor(0.925);
+      pdfStream.fillRect(AGP_X, profileY(160), AGP_WIDTH, profileY(ImageFactory.BG_MAX) - profileY(160));
+      pdfStream.fillRect(AGP_X, profileY(ImageFactory.BG_MIN), AGP_WIDTH, profileY(80) - profileY(ImageFactory.BG_MIN));
+
+      // the bands between the percentiles 5 and 95 and between 25 and 75
+      float[] grays = { 0.75f, 0.55f };
+      for(int band = 0; band < grays.length; band++) {
+        pdfStream.setNonStrokingColor(grays[band]);
+        for(int from = 0, to; from < GlucoseProfile.SLOTS; from = to) {
+          while(from < GlucoseProfile.SLOTS && percentiles[from] == null)
+            from++;
+          for(to = from; to < GlucoseProfile.SLOTS && percentiles[to] != null; to++);
+          if(to - from < 2)
+            continue;
+          int n = to - from;
+          float[] xs = new float[2*n], ys = new float[2*n];
+          for(int i = 0; i < n; i++) {
+            xs[i] = xs[2*n - 1 - i] = profileX(from + i);
+            ys[i] = profileY(percentiles[from + i][GlucoseProfile.PERCENTILES.length - 1 - band]);
+            ys[2*n - 1 - i] = profileY(percentiles[from + i][band]);
+          }
+          pdfStream.fillPolygon(xs, ys);
+        }
+      }
+
+      // grid and axes
+      pdfStream.setLineWidth(0.3f);
+      for(int bg = ImageFactory.BG_MIN; bg <= ImageFactory.BG_MAX; bg += 40) {
+        pdfStream.setStrokingColor((bg % 80 == 0 || bg == ImageFactory.BG_MIN) ? 0.25 : 0.75);
+        pdfStream.drawLine(AGP_X - 0.1f*CM, profileY(bg), AGP_X + AGP_WIDTH, profileY(bg));
+      }
+      for(int h = 0; h <= 24; h++) {
+        pdfStream.setStrokingColor((h % 3 == 0) ? 0.25 : 0.75);
+        pdfStream.drawLine(AGP_X + AGP_WIDTH * h / 24, AGP_Y - 0.1f*CM, AGP_X + AGP_WIDTH * h / 24, AGP_Y + AGP_HEIGHT);
+      }
+
+      // the median
+      int median = GlucoseProfile.PERCENTILES.length / 2;
+      pdfStream.setLineWidth(1.5f);
+      pdfStream.setStrokingColor(0.0);
+      for(int slot = 1; slot < GlucoseProfile.SLOTS; slot++) {
+        if(percentiles[slot - 1] != null && percentiles[slot] != null)
+          pdfStream.drawLine(profileX(slot - 1), profileY(percentiles[slot - 1][median]),
+              profileX(slot), profileY(percentiles[slot][median]));
+      }
+      pdfStream.setLineWidth(0.05f);
+
+      // labels and legend
+      pdfStream.setNonStrokingColor(0.0);
+      pdfStream.setFont(PDF_FONT, PDF_FONT_SIZE_TABLE);
+      for(int bg = ImageFactory.BG_MIN; bg <= ImageFactory.BG_MAX; bg += 40) {
+        pdfStream.beginText();
+        pdfStream.moveTextPositionByAmount(AGP_X - 0.9f*CM, profileY(bg) - 0.1f*CM);
+        drawCenteredString(pdfStream, "" + bg, 0.6f*CM);
+        pdfStream.endText();
+      }
+      for(int h = 0; h <= 24; h += 3) {
+        pdfStream.beginText();
+        pdfStream.moveTextPositionByAmount(AGP_X + AGP_WIDTH * h / 24 - 0.3f*CM, AGP_Y - 0.5f*CM);
+        drawCenteredString(pdfStream, "" + h, 0.6f*CM);
+        pdfStream.endText();
+      }
+      pdfStream.beginText();
+      pdfStream.moveTextPositionByAmount(AGP_X + 1.1f*CM, AGP_Y - 1.5f*CM);
+      pdfStream.drawString(GlucoseProfile.PERCENTILES[0] + " % - " + GlucoseProfile.PERCENTILES[4] + " %");
+      pdfStream.moveTextPositionByAmount(4.0f*CM, 0);
+      pdfStream.drawString(GlucoseProfile.PERCENTILES[1] + " % - " + GlucoseProfile.PERCENTILES[3] + " %");
+      pdfStream.moveTextPositionByAmount(4.0f*CM, 0);
+      pdfStream.drawString(Utils.localize("%output.agp.median%"));
+      pdfStream.endText();
+      float legendY = AGP_Y - 1.5f*CM;
+      for(int band = 0; band < grays.length; band++) {
+        pdfStream.setNonStrokingColor(grays[band]);
+        pdfStream.fillRect(AGP_X + band * 4.0f*CM, legendY, 0.8f*CM, 0.3f*CM);
+      }
+      pdfStream.setLineWidth(1.5f);
+      pdfStream.drawLine(AGP_X + 8.0f*CM, legendY + 0.15f*CM, AGP_X + 8.8f*CM, legendY + 0.15f*CM);
+      pdfStream.setLineWidth(0.05f);
+      pdfStream.setNonStrokingColor(0.0);
+    } finally {
+      pdfStream.close();
+    }
+  }
+
+  /**
+   * @param slot - The slot of the day (see {@link GlucoseProfile#SLOT_MINUTES}).
+   * @return The horizontal position of the slot's middle in the ambulatory glucose profile's chart.
+   */
+  private static float profileX(int slot) {
+    return AGP_X + AGP_WIDTH * (slot + 0.5f) / GlucoseProfile.SLOTS;
+  }
+
+  /**
+   * @param bg - The bg value in mg/dl.
+   * @return The vertical position of the value in the ambulatory glucose profile's chart,
+   *         limited to the bg axis of the tables' charts.
+   */
+  private static float profileY(int bg) {
+    bg = Math.min(Math.max(bg, ImageFactory.BG_MIN), ImageFactory.BG_MAX);
+    return AGP_Y + AGP_HEIGHT * (bg - ImageFactory.BG_MIN) / (ImageFactory.BG_MAX - ImageFactory.BG_MIN);
+  }
+
   /**
    * Draws the given String centered in x-direction with total width given by <code>width</code>.
    *
@@ -222,7 +854,7 @@ final class OutputCreator {
       throws IOException {
     float centering;
     try {
-      centering = (width - PDF_FONT.getStringWidth(txt) / 1000 * fontSize) / 2;
+      centering = (width - TextWidths.of(PDF_FONT).getWidth(txt, fontSize)) / 2;
     } catch(IOException e) {
       centering = 0.0f;
     }
@@ -0,0 +1,107 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This Class caches the rendered pages of whole months as PDF-files in <i>pdf/cache</i>.<br>
+ * A month's file is named by its key: a hash of everything its pages are rendered from,
+ * i.e. the fingerprints of the month's days (see {@link DayCatalog.Entry#hash}), the bolus factors,
+ * the basal rate profiles, the language and the settings shown in the page header.
+ * So a month is rendered again only after one of these has changed. The days are checked
+ * for changes made without the catalog (see {@link DayCatalog#check(List)}) before their
+ * fingerprints are used. Only the latest file of every month is kept.
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class PageCache {
+  /** The directory containing the cached months. */
+  static final File DIR = new File("pdf", "cache");
+
+  /** The version of the layout of the pages, to be increased with every change of it. */
+  private static final String VERSION = "1";
+
+  /** No constructor, only static methods. */
+  private PageCache() {}
+
+  /**
+   * Returns the file of the given month in the cache, which exists, if the month has been cached.
+   *
+   * @param catalog - The {@link DayCatalog} of the days.
+   * @param dates - The dates of the month's days, ascending.
+   * @return The month's file in the cache.
+   * @throws IOException If an I/O exception occurs while reading a day changed without the catalog.
+   */
+  static File getFile(final DayCatalog catalog, final List<String> dates) throws IOException {
+    catalog.check(dates);
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-1");
+    } catch(NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    StringBuilder sb = new StringBuilder(64 * dates.size() + 128);
+    sb.append(VERSION).append('\n').append(Locale.getDefault()).append('\n')
+      .append(DiabetesDoc.getSetting("username")).append('\n')
+      .append(DiabetesDoc.getSetting("birthday")).append('\n')
+      .append(BolusFactorIndex.get().getSignature()).append('\n')
+      .append(ProfileStore.get().getSignature()).append('\n');
+    for(String date : dates) {
+      DayCatalog.Entry e = catalog.get(date);
+      sb.append(date).append(' ').append((e == null) ? "" : e.hash).append('\n');
+    }
+    md.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+    return new File(DIR, dates.get(0).substring(0, 7) + "_" + Utils.toHexString(md.digest()) + ".pdf");
+  }
+
+  /**
+   * Puts the given rendered month into the cache, replacing the month's former file.
+   *
+   * @param part - The PDF-file of the rendered month, which is copied.
+   * @param file - The month's file in the cache (see {@link PageCache#getFile(DayCatalog, List)}).
+   * @throws IOException If an I/O exception occurs while copying the file.
+   */
+  static void put(final File part, final File file) throws IOException {
+    DIR.mkdirs();
+    File tmp = new File(DIR, "." + file.getName() + ".tmp");
+    Files.copy(part.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    DayWriter.replace(tmp, file);
+
+    String month = file.getName().substring(0, file.getName().indexOf('_') + 1);
+    File[] files = DIR.listFiles();
+    if(files != null) {
+      for(File f : files) {
+        if(f.getName().startsWith(month) && !f.equals(file))
+          f.delete();
+      }
+    }
+  }
+}
@@ -0,0 +1,296 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jdom2.Element;
+
+/**
+ * This Class is the history of the basal rate profiles of the insulin pump
+ * (see <i>resources/IP.dtd</i> and {@link XML_IO#writeProfiles(Element)}).<br>
+ * Every reading of the pump is a snapshot of its profiles. A snapshot is assumed to be valid
+ * for the time since the previous reading, as its data has been read together with the profiles;
+ * the first snapshot is valid before all readings, after the last reading the profiles are not known
+ * (the pump may have been changed since). Consecutive identical
+ * snapshots are kept only once. A profile valid at a time is found by a binary search.
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class ProfileStore {
+  /** The directory containing the profiles. */
+  static final File DIR = new File("xml/ipprofiles");
+
+  /** All snapshots by the time of reading in milliseconds. */
+  private final TreeMap<Long, Snapshot> readings = new TreeMap<Long, Snapshot>();
+
+  /** The distinct snapshots searched, replaced as a whole by {@link ProfileStore#index()}. */
+  private volatile Index index = new Index(new long[0], new Snapshot[0]);
+
+  private ProfileStore() {}
+
+  /**
+   * The holder of the store, loaded when first used (see {@link ProfileStore#get()}).
+   */
+  private static final class Holder {
+    static final ProfileStore STORE = load(DIR);
+  }
+
+  /**
+   * @return The {@code ProfileStore} containing all profiles of <i>xml/ipprofiles</i>.
+   */
+  static ProfileStore get() {
+    return Holder.STORE;
+  }
+
+  /**
+   * @param dir - The directory containing the profiles, {@link ProfileStore#DIR} but for tests.
+   * @return A new {@code ProfileStore} containing all profiles of the directory.
+   */
+  static ProfileStore load(final File dir) {
+    ProfileStore store = new ProfileStore();
+    File[] files = dir.listFiles();
+    if(files != null) {
+      for(File f : files) {
+        if(!f.isFile() || !f.getName().toLowerCase().endsWith(".xml"))
+          continue;
+        try {
+          store.addSnapshot(read(f));
+        } catch(IOException | XMLStreamException | RuntimeException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+    store.index();
+    return store;
+  }
+
+  /**
+   * Adds the given profiles of a reading of the pump.
+   *
+   * @param profiles - The XML-{@link Element} <code>IP</code>.
+   */
+  synchronized void add(final Element profiles) {
+    addSnapshot(new Snapshot(profiles));
+    index();
+  }
+
+  /**
+   * Returns the profile valid at the given time.
+   *
+   * @param millis - The time in milliseconds.
+   * @param name - The name of the profile or <code>null</code> for the active one.
+   * @return The {@link Profile} or <code>null</code>, if it is not known, e.g. after the last reading.
+   */
+  Profile getProfile(final long millis, final String name) {
+    Index x = index;
+    Snapshot[] s = x.snapshots;
+    int i = Arrays.binarySearch(x.ends, millis);
+    if(i < 0)
+      i = -i - 1; // the first reading at or after the time
+    if(i == s.length)
+      return null;
+    return (name == null) ? s[i].active : s[i].profiles.get(name);
+  }
+
+  /**
+   * Returns the profile valid at the beginning of the given day.
+   *
+   * @param date - The date (format <code>YYYY-MM-DD</code>).
+   * @param name - The name of the profile or <code>null</code> for the active one.
+   * @return The {@link Profile} or <code>null</code>, if it is not known.
+   */
+  Profile getProfile(final String date, final String name) {
+    return getProfile(Utils.toMillis(date), name);
+  }
+
+  /**
+   * Returns the basal rate of the active profile at the given time.
+   *
+   * @param c - The date and time.
+   * @return The basal rate in IU/h or <code>0</code>, if it is not known.
+   */
+  float getBasalRate(final Calendar c) {
+    Profile p = getProfile(c.getTimeInMillis(), null);
+    return (p == null) ? 0 : p.getRate(c.get(Calendar.HOUR_OF_DAY));
+  }
+
+  /**
+   * @return The signature of the times of reading and the contents of the distinct snapshots.
+   */
+  long getSignature() {
+    long signature = 0;
+    for(Snapshot s : index.snapshots)
+      signature = 31 * (31 * signature + s.time) + s.content.hashCode();
+    return signature;
+  }
+
+  private void addSnapshot(final Snapshot s) {
+    readings.put(s.time, s);
+  }
+
+  /**
+   * Builds the arrays searched from the snapshots, dropping a snapshot followed by an identical one.
+   */
+  private void index() {
+    List<Snapshot> distinct = new ArrayList<Snapshot>();
+    Snapshot previous = null;
+    for(Snapshot s : readings.descendingMap().values()) {
+      if(previous == null || !previous.content.equals(s.content))
+        distinct.add(s);
+      previous = s;
+    }
+    Collections.reverse(distinct);
+    long[] e = new long[distinct.size()];
+    for(int i = 0; i < e.length; i++)
+      e[i] = distinct.get(i).time;
+    index = new Index(e, distinct.toArray(new Snapshot[distinct.size()]));
+  }
+
+  /**
+   * Reads the profiles of the given file.
+   *
+   * @param f - The file with DTD <code>IP</code>.
+   * @return The {@link Snapshot}.
+   * @throws IOException If an I/O exception occurs while reading the file.
+   * @throws XMLStreamException If an error occurs while parsing the XML-data.
+   */
+  private static Snapshot read(final File f) throws IOException, XMLStreamException {
+    try(InputStream in = new BufferedInputStream(new FileInputStream(f))) {
+      XMLStreamReader r = DeviceInputParser.XML_INPUT_FACTORY.createXMLStreamReader(in);
+      try {
+        while(r.next() != XMLStreamConstants.START_ELEMENT) {
+          // skip the prolog
+        }
+        return new Snapshot(DeviceInputParser.readElement(r));
+      } finally {
+        r.close();
+      }
+    }
+  }
+
+  /**
+   * The distinct snapshots and their times of reading, published together.
+   */
+  private static final class Index {
+    /** The times of reading of the snapshots, sorted ascending. */
+    final long[] ends;
+    /** The snapshots in the order of {@link Index#ends}. */
+    final Snapshot[] snapshots;
+
+    Index(final long[] ends, final Snapshot[] snapshots) {
+      this.ends = ends;
+      this.snapshots = snapshots;
+    }
+  }
+
+  /**
+   * The profiles of one reading of the pump.
+   */
+  private static final class Snapshot {
+    /** The time of reading in milliseconds. */
+    final long time;
+    /** The profiles by name. */
+    final Map<String, Profile> profiles = new LinkedHashMap<String, Profile>();
+    /** The active profile or <code>null</code>. */
+    final Profile active;
+    /** The content for comparison. */
+    final String content;
+
+    Snapshot(final Element ip) {
+      Calendar c = Utils.toCalendar(ip.getAttributeValue("Dt"));
+      String tm = ip.getAttributeValue("Tm");
+      if(tm != null && tm.length() >= 5) {
+        c.set(Calendar.HOUR_OF_DAY, Integer.parseInt(tm.substring(0, 2)));
+        c.set(Calendar.MINUTE, Integer.parseInt(tm.substring(3, 5)));
+      }
+      this.time = c.getTimeInMillis();
+      StringBuilder sb = new StringBuilder();
+      for(Element e : ip.getChildren("IPPROFILE")) {
+        Profile p = new Profile(e);
+        profiles.put(p.name, p);
+        sb.append(p).append('\n');
+      }
+      String activeName = ip.getAttributeValue("ActiveProf");
+      this.active = profiles.get(activeName);
+      this.content = activeName + '\n' + sb;
+    }
+  }
+
+  /**
+   * A basal rate profile of the pump.
+   */
+  static final class Profile {
+    /** The name of the profile. */
+    final String name;
+    /** The total insulin units per day. */
+    final float total;
+    /** The basal rates in IU/h of the hours of the day. */
+    private final float[] rates = new float[24];
+
+    private Profile(final Element e) {
+      this.name = e.getAttributeValue("Name");
+      this.total = parse(e.getAttributeValue("IUday"));
+      for(Element slot : e.getChildren("IPTIMESLOT")) {
+        int hour = Integer.parseInt(slot.getAttributeValue("Number").trim()) - 1;
+        if(hour >= 0 && hour < 24)
+          rates[hour] = parse(slot.getAttributeValue("IU"));
+      }
+    }
+
+    /**
+     * @param hour - The hour of the day (<code>0</code> to <code>23</code>).
+     * @return The basal rate in IU/h.
+     */
+    float getRate(final int hour) {
+      return rates[hour];
+    }
+
+    private static float parse(final String value) {
+      try {
+        return (value == null) ? 0 : Float.parseFloat(value.trim());
+      } catch(NumberFormatException e) {
+        return 0;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return name + ' ' + total + ' ' + Arrays.toString(rates);
+    }
+  }
+}
@@ -0,0 +1,422 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * This Class holds the statistics of the {@link TimeSeries} as summary vectors per day, week
+ * (Monday to Sunday), month and year: the number, sum, sum of squares, minimum and maximum of the
+ * bg values, the number of bg values below, in and above the target range, the total insulin
+ * and the total carbohydrates. The weeks and months are summed up from their days, the years
+ * from their months.<br>
+ * The statistics of any range of days (mean, standard deviation, coefficient of variation,
+ * glucose management indicator, estimated HbA1c and time in range) are combined from the largest
+ * summaries contained, so they need only a few additions per year instead of reading every value.
+ * When days change (see {@link DayStore#flush()}), only their summaries and those of their weeks,
+ * months and years are computed again.
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class Rollups {
+  /** The lower limit of the target range in mg/dl: lower values are below the range. */
+  static final int RANGE_LOW = 70;
+  /** The upper limit of the target range in mg/dl: higher values are above the range. */
+  static final int RANGE_HIGH = 180;
+
+  /** The level of the summaries per day. */
+  static final int DAY = 0;
+  /** The level of the summaries per week (Monday to Sunday). */
+  static final int WEEK = 1;
+  /** The level of the summaries per month. */
+  static final int MONTH = 2;
+  /** The level of the summaries per year. */
+  static final int YEAR = 3;
+
+  /** Field of a summary: the number of bg values. */
+  private static final int COUNT = 0;
+  /** Field of a summary: the sum of the bg values. */
+  private static final int SUM = 1;
+  /** Field of a summary: the sum of the squares of the bg values. */
+  private static final int SUM_SQ = 2;
+  /** Field of a summary: the minimal bg value. */
+  private static final int MIN = 3;
+  /** Field of a summary: the maximal bg value. */
+  private static final int MAX = 4;
+  /** Field of a summary: the number of bg values below the target range. */
+  private static final int BELOW = 5;
+  /** Field of a summary: the number of bg values in the target range. */
+  private static final int IN = 6;
+  /** Field of a summary: the number of bg values above the target range. */
+  private static final int ABOVE = 7;
+  /** Field of a summary: the total insulin units. */
+  private static final int BOLUS = 8;
+  /** Field of a summary: the total carbohydrates in bread units. */
+  private static final int CARBS = 9;
+  /** Field of a summary: the number of days with readings. */
+  private static final int DAYS = 10;
+  /** The number of fields of a summary. */
+  private static final int FIELDS = 11;
+
+  /** The summaries by level (see {@link Rollups#DAY} to {@link Rollups#YEAR}). */
+  private final Level[] levels = new Level[4];
+
+  /** No public constructor, use {@link Rollups#of(TimeSeries)}. */
+  private Rollups() {}
+
+  /**
+   * Computes all summaries of the given history.
+   *
+   * @param ts - The {@link TimeSeries}.
+   * @return The {@code Rollups}.
+   */
+  static Rollups of(final TimeSeries ts) {
+    Rollups r = new Rollups();
+    r.allocate(ts, null);
+    for(long day = r.levels[DAY].first; day <= r.levels[DAY].last; day++)
+      r.computeDay(ts, day);
+    for(int level = WEEK; level <= YEAR; level++) {
+      for(long key = r.levels[level].first; key <= r.levels[level].last; key++)
+        r.compute(level, key);
+    }
+    return r;
+  }
+
+  /**
+   * Creates the summaries of the given, updated history: the summaries of the given days,
+   * their weeks, months and years are computed again, all others are copied.
+   *
+   * @param ts - The updated {@link TimeSeries}.
+   * @param changedDays - The days changed, added or removed as days since 1970-01-01.
+   * @return The new {@code Rollups}, this one is not modified.
+   */
+  Rollups update(final TimeSeries ts, final Set<Long> changedDays) {
+    Rollups r = new Rollups();
+    r.allocate(ts, this);
+    Set<Long> weeks = new TreeSet<Long>(), months = new TreeSet<Long>(), years = new TreeSet<Long>();
+    for(long day : changedDays) {
+      if(r.levels[DAY].contains(day)) // otherwise removed at the border of the history
+        r.computeDay(ts, day);
+      weeks.add(key(WEEK, day));
+      months.add(key(MONTH, day));
+      years.add(key(YEAR, day));
+    }
+    for(long key : weeks)
+      r.compute(WEEK, key);
+    for(long key : months)
+      r.compute(MONTH, key);
+    for(long key : years)
+      r.compute(YEAR, key);
+    return r;
+  }
+
+  /**
+   * Allocates the summaries for the days of the given history and copies those of the old
+   * summaries in range.
+   *
+   * @param ts - The {@link TimeSeries}.
+   * @param old - The old summaries or <code>null</code>.
+   */
+  private void allocate(final TimeSeries ts, final Rollups old) {
+    long firstDay = (ts.size() == 0) ? 0 : ts.getEpochDay(0);
+    long lastDay = (ts.size() == 0) ? -1 : ts.getEpochDay(ts.size() - 1);
+    for(int level = DAY; level <= YEAR; level++) {
+      levels[level] = (ts.size() == 0) ? new Level(0, -1)
+          : new Level(key(level, firstDay), key(level, lastDay));
+      if(old != null)
+        levels[level].copy(old.levels[level]);
+    }
+  }
+
+  /**
+   * Computes the summary of the given day from the readings of the history.
+   *
+   * @param ts - The {@link TimeSeries}.
+   * @param day - The day as days since 1970-01-01.
+   */
+  private void computeDay(final TimeSeries ts, final long day) {
+    double[] v = levels[DAY].values;
+    int o = levels[DAY].offset(day);
+    java.util.Arrays.fill(v, o, o + FIELDS, 0);
+    int from = ts.indexOfFirst(day), to = ts.indexOfFirst(day + 1);
+    for(int i = from; i < to; i++) {
+      int bg = ts.getBG(i);
+      if(bg > 0) {
+        v[o + MIN] = (v[o + COUNT] == 0) ? bg : Math.min(v[o + MIN], bg);
+        v[o + MAX] = Math.max(v[o + MAX], bg);
+        v[o + COUNT]++;
+        v[o + SUM] += bg;
+        v[o + SUM_SQ] += (double) bg * bg;
+        if(bg < RANGE_LOW)
+          v[o + BELOW]++;
+        else if(bg > RANGE_HIGH)
+          v[o + ABOVE]++;
+        else
+          v[o + IN]++;
+      }
+      v[o + BOLUS] += ts.getBolus(i);
+      v[o + CARBS] += ts.getCarbs(i);
+    }
+    v[o + DAYS] = (from < to) ? 1 : 0;
+  }
+
+  /**
+   * Computes the summary of the given week, month or year from the summaries of its days
+   * (or months, for a year).
+   *
+   * @param level - The level {@link Rollups#WEEK}, {@link Rollups#MONTH} or {@link Rollups#YEAR}.
+   * @param key - The key of the week, month or year (see {@link Rollups#key(int, long)}).
+   */
+  private void compute(final int level, final long key) {
+    Level l = levels[level];
+    if(!l.contains(key))
+      return;
+    int o = l.offset(key);
+    java.util.Arrays.fill(l.values, o, o + FIELDS, 0);
+    Level parts = levels[(level == YEAR) ? MONTH : DAY];
+    long from = (level == YEAR) ? 12 * key : firstDay(level, key);
+    long to = (level == YEAR) ? 12 * key + 11 : firstDay(level, key + 1) - 1;
+    for(long k = Math.max(from, parts.first); k <= Math.min(to, parts.last); k++)
+      add(l.values, o, parts.values, parts.offset(k));
+  }
+
+  /**
+   * Returns the statistics of the given range of days.
+   * The range is covered by whole years, months and weeks where possible, otherwise by days.
+   *
+   * @param fromDay - The first day as days since 1970-01-01 (inclusive).
+   * @param toDay - The last day as days since 1970-01-01 (inclusive).
+   * @return The {@link Summary} of the range.
+   */
+  Summary summarize(final long fromDay, final long toDay) {
+    Summary s = new Summary(fromDay, toDay);
+    long day = Math.max(fromDay, levels[DAY].first);
+    long end = Math.min(toDay, levels[DAY].last);
+    while(day <= end) {
+      int level = DAY;
+      for(int l = YEAR; l > DAY; l--) {
+        long key = key(l, day);
+        if(firstDay(l, key) == day && firstDay(l, key + 1) - 1 <= end) {
+          level = l;
+          break;
+        }
+      }
+      long key = key(level, day);
+      add(s.values, 0, levels[level].values, levels[level].offset(key));
+      day = firstDay(level, key + 1);
+    }
+    return s;
+  }
+
+  /**
+   * Returns the key of the summary of the given level containing the given day:
+   * the day itself, the week since 1969-12-29 (a Monday), <code>12 * year + month - 1</code>
+   * or the year.
+   *
+   * @param level - The level.
+   * @param day - The day as days since 1970-01-01.
+   * @return The key.
+   */
+  private static long key(final int level, final long day) {
+    switch(level) {
+    case WEEK:
+      return Math.floorDiv(day + 3, 7);
+    case MONTH:
+      int ymd = DateUtils.toYearMonthDay(day);
+      return 12L * (ymd / 10000) + ymd / 100 % 100 - 1;
+    case YEAR:
+      return DateUtils.toYearMonthDay(day) / 10000;
+    default:
+      return day;
+    }
+  }
+
+  /**
+   * @param level - The level.
+   * @param key - The key (see {@link Rollups#key(int, long)}).
+   * @return The first day of the summary as days since 1970-01-01.
+   */
+  private static long firstDay(final int level, final long key) {
+    switch(level) {
+    case WEEK:
+      return 7 * key - 3;
+    case MONTH:
+      return DateUtils.toEpochDay((int) Math.floorDiv(key, 12), (int) Math.floorMod(key, 12) + 1, 1);
+    case YEAR:
+      return DateUtils.toEpochDay((int) key, 1, 1);
+    default:
+      return key;
+    }
+  }
+
+  /**
+   * Adds the summary <code>src</code> to the summary <code>dst</code>.
+   *
+   * @param dst - The values of the summary added to.
+   * @param d - The offset of the summary added to.
+   * @param src - The values of the summary to add.
+   * @param s - The offset of the summary to add.
+   */
+  private static void add(final double[] dst, final int d, final double[] src, final int s) {
+    if(src[s + COUNT] > 0) {
+      dst[d + MIN] = (dst[d + COUNT] == 0) ? src[s + MIN] : Math.min(dst[d + MIN], src[s + MIN]);
+      dst[d + MAX] = Math.max(dst[d + MAX], src[s + MAX]);
+    }
+    for(int f = 0; f < FIELDS; f++) {
+      if(f != MIN && f != MAX)
+        dst[d + f] += src[s + f];
+    }
+  }
+
+  /**
+   * The summaries of one level, for consecutive keys.
+   */
+  private static final class Level {
+    /** The first key. */
+    final long first;
+    /** The last key. */
+    final long last;
+    /** The summaries, {@link Rollups#FIELDS} values per key. */
+    final double[] values;
+
+    Level(final long first, final long last) {
+      this.first = first;
+      this.last = last;
+      values = new double[(int) (last - first + 1) * FIELDS];
+    }
+
+    boolean contains(final long key) {
+      return key >= first && key <= last;
+    }
+
+    int offset(final long key) {
+      return (int) (key - first) * FIELDS;
+    }
+
+    /**
+     * Copies the summaries of the given level for the keys in range.
+     *
+     * @param old - The old summaries of the same level.
+     */
+    void copy(final Level old) {
+      long from = Math.max(first, old.first), to = Math.min(last, old.last);
+      if(from <= to)
+        System.arraycopy(old.values, old.offset(from), values, offset(from), (int) (to - from + 1) * FIELDS);
+    }
+  }
+
+  /**
+   * The statistics of a range of days.
+   */
+  static final class Summary {
+    /** The first day as days since 1970-01-01. */
+    final long fromDay;
+    /** The last day as days since 1970-01-01. */
+    final long toDay;
+    /** The summed up values. */
+    private final double[] values = new double[FIELDS];
+
+    private Summary(final long fromDay, final long toDay) {
+      this.fromDay = fromDay;
+      this.toDay = toDay;
+    }
+
+    /** @return The number of bg values. */
+    int getCount() {
+      return (int) values[COUNT];
+    }
+
+    /** @return The number of days with readings. */
+    int getDays() {
+      return (int) values[DAYS];
+    }
+
+    /** @return The minimal bg value in mg/dl or <code>0</code>, if there are none. */
+    int getMin() {
+      return (int) values[MIN];
+    }
+
+    /** @return The maximal bg value in mg/dl or <code>0</code>, if there are none. */
+    int getMax() {
+      return (int) values[MAX];
+    }
+
+    /** @return The mean bg value in mg/dl or <code>0</code>, if there are none. */
+    double getMean() {
+      return (values[COUNT] == 0) ? 0 : values[SUM] / values[COUNT];
+    }
+
+    /** @return The (sample) standard deviation of the bg values in mg/dl. */
+    double getStandardDeviation() {
+      double n = values[COUNT];
+      if(n < 2)
+        return 0;
+      return Math.sqrt(Math.max(0, (values[SUM_SQ] - values[SUM] * values[SUM] / n) / (n - 1)));
+    }
+
+    /** @return The coefficient of variation of the bg values in percent. */
+    double getCoefficientOfVariation() {
+      double mean = getMean();
+      return (mean == 0) ? 0 : 100 * getStandardDeviation() / mean;
+    }
+
+    /** @return The glucose management indicator in percent: <code>3.31 + 0.02392 * mean</code>. */
+    double getGMI() {
+      return (values[COUNT] == 0) ? 0 : 3.31 + 0.02392 * getMean();
+    }
+
+    /** @return The estimated HbA1c in percent (ADAG): <code>(mean + 46.7) / 28.7</code>. */
+    double getEstimatedHbA1c() {
+      return (values[COUNT] == 0) ? 0 : (getMean() + 46.7) / 28.7;
+    }
+
+    /** @return The share of bg values below the target range in percent. */
+    double getTimeBelowRange() {
+      return share(BELOW);
+    }
+
+    /** @return The share of bg values in the target range in percent. */
+    double getTimeInRange() {
+      return share(IN);
+    }
+
+    /** @return The share of bg values above the target range in percent. */
+    double getTimeAboveRange() {
+      return share(ABOVE);
+    }
+
+    /** @return The total insulin units. */
+    double getInsulin() {
+      return values[BOLUS];
+    }
+
+    /** @return The total carbohydrates in bread units. */
+    double getCarbs() {
+      return values[CARBS];
+    }
+
+    private double share(final int field) {
+      return (values[COUNT] == 0) ? 0 : 100 * values[field] / values[COUNT];
+    }
+  }
+}
@@ -0,0 +1,525 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * This Class stores the days of every month in one binary segment file <code>YYYY-MM.seg</code>.<br>
+ * A segment starts with an index of its days, followed by one row of fixed width per entry
+ * with the columns minute of the day, kind, bg, event code, insulin and carbohydrates, and an area
+ * containing the complete entries (name, attributes and text) as UTF-8. The readings of the {@link TimeSeries}
+ * are read directly from the columns of a memory-mapped segment without parsing
+ * (see {@link SegmentDayStore#readReadings(String)}), the complete entries are decoded only when needed.
+ * Writes are collected per month and written together by {@link DayStore#flush()}.
+ * <pre>
+ * int    magic "DDSG", version
+ * int[2] first row and number of rows (-1 if not stored) of the days 0 (unused) to 31
+ * int    number of rows
+ * row    short minute (-1 if unknown), byte kind, byte unused, short bg, short event code,
+ *        float insulin, float carbs, int offset and int length of the complete entry
+ * byte[] the complete entries: name \0 (attribute-name \0 attribute-value \0)* [\1 text]
+ * </pre>
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class SegmentDayStore extends DayStore {
+  /** The magic number of a segment file ("DDSG"). */
+  private static final int MAGIC = 0x44445347;
+  /** The version of the segment format. */
+  private static final int VERSION = 1;
+  /** The offset of the index of the days. */
+  private static final int INDEX_OFFSET = 8;
+  /** The offset of the first row. */
+  private static final int ROWS_OFFSET = INDEX_OFFSET + 32 * 8 + 4;
+  /** The width of a row in bytes. */
+  static final int ROW_SIZE = 24;
+
+  /** Kind of a row: entry <code>BG</code>. */
+  static final byte KIND_BG = 0;
+  /** Kind of a row: entry <code>BASAL</code>. */
+  static final byte KIND_BASAL = 1;
+  /** Kind of a row: entry <code>BOLUS</code>. */
+  static final byte KIND_BOLUS = 2;
+  /** Kind of a row: entry <code>EVENT</code>. */
+  static final byte KIND_EVENT = 3;
+  /** Kind of a row: any other entry. */
+  static final byte KIND_OTHER = 4;
+
+  /** The maximal number of segments kept open. */
+  private static final int MAX_OPEN_SEGMENTS = 12;
+  /** The maximal number of months with pending writes. */
+  private static final int MAX_PENDING_MONTHS = 12;
+
+  /** Whether the files are memory-mapped (mapped files cannot be replaced on Windows). */
+  private static final boolean MAP_FILES = File.separatorChar == '/';
+
+  /** The directory containing the segments. */
+  private final File dir;
+
+  /** Whether the files written are synced to disk. */
+  private final boolean sync;
+
+  /** The segments read, the least recently used first. */
+  private final LinkedHashMap<String, Segment> open = new LinkedHashMap<String, Segment>(16, 0.75f, true);
+
+  /** The days written, but not yet flushed, per month and day of month. */
+  private final TreeMap<String, TreeMap<Integer, List<DayRecord>>> pending
+      = new TreeMap<String, TreeMap<Integer, List<DayRecord>>>();
+
+  /** The dates of all days stored or <code>null</code>, if not yet listed. */
+  private TreeSet<String> dates;
+
+  /**
+   * Creates a new {@code SegmentDayStore}.
+   * The files are synced to disk, if the setting <code>syncWrites</code> is <code>true</code>.
+   *
+   * @param dir - The directory containing the segments.
+   */
+  SegmentDayStore(final File dir) {
+    super(new File(dir, "days.catalog"));
+    this.dir = dir;
+    this.sync = Boolean.parseBoolean(DiabetesDoc.getSetting("syncWrites"));
+  }
+
+  /**
+   * @return <b><code>true</code></b>, if the store has been created completely;
+   *         <b><code>false</code></b>, otherwise.
+   */
+  boolean isComplete() {
+    return new File(dir, "complete").exists();
+  }
+
+  /**
+   * Marks the store as created completely.
+   *
+   * @throws IOException If an I/O exception occurs while writing the mark.
+   */
+  void setComplete() throws IOException {
+    dir.mkdirs();
+    new File(dir, "complete").createNewFile();
+  }
+
+  /**
+   * Removes the mark of {@link SegmentDayStore#setComplete()}, e.g. after the segments are exported.
+   *
+   * @throws IOException If the mark cannot be removed.
+   */
+  void setIncomplete() throws IOException {
+    Files.deleteIfExists(new File(dir, "complete").toPath());
+  }
+
+  @Override
+  synchronized List<String> getDates() throws IOException {
+    if(dates == null) {
+      TreeSet<String> all = new TreeSet<String>();
+      String[] names = dir.list();
+      if(names != null) {
+        for(String name : names) {
+          if(name.length() != 11 || !name.endsWith(".seg") || !Utils.isDateString(name.substring(0, 7) + "-01"))
+            continue;
+          String month = name.substring(0, 7);
+          Segment s = getSegment(month);
+          for(int day = 1; day <= 31; day++) {
+            if(s != null && s.contains(day))
+              all.add(toDate(month, day));
+          }
+        }
+      }
+      for(Map.Entry<String, TreeMap<Integer, List<DayRecord>>> month : pending.entrySet()) {
+        for(Integer day : month.getValue().keySet())
+          all.add(toDate(month.getKey(), day));
+      }
+      dates = all;
+    }
+    return new ArrayList<String>(dates);
+  }
+
+  @Override
+  long lastModified(final String date) {
+    return new File(dir, date.substring(0, 7) + ".seg").lastModified();
+  }
+
+  @Override
+  List<DayRecord> read(final String date) throws IOException {
+    check(date);
+    String month = date.substring(0, 7);
+    int day = Integer.parseInt(date.substring(8));
+    Segment s;
+    synchronized(this) {
+      TreeMap<Integer, List<DayRecord>> p = pending.get(month);
+      if(p != null && p.containsKey(day))
+        return new ArrayList<DayRecord>(p.get(day));
+      s = getSegment(month);
+    }
+    // the segments are immutable, so several threads can decode them at the same time
+    return (s != null && s.contains(day)) ? s.read(day) : null;
+  }
+
+  /**
+   * Reads the readings of the given day directly from the columns of the rows,
+   * without decoding the complete entries.
+   */
+  @Override
+  DayBuffer readReadings(final String date) throws IOException {
+    check(date);
+    String month = date.substring(0, 7);
+    int day = Integer.parseInt(date.substring(8));
+    Segment s;
+    synchronized(this) {
+      TreeMap<Integer, List<DayRecord>> p = pending.get(month);
+      if(p != null && p.containsKey(day))
+        return DayBuffer.of(date, p.get(day));
+      s = getSegment(month);
+    }
+    return (s != null && s.contains(day)) ? s.readReadings(date, day) : null;
+  }
+
+  @Override
+  synchronized void writeRecords(final String date, final List<DayRecord> records) throws IOException {
+    check(date);
+    String month = date.substring(0, 7);
+    TreeMap<Integer, List<DayRecord>> p = pending.get(month);
+    if(p == null) {
+      if(pending.size() >= MAX_PENDING_MONTHS)
+        flushRecords();
+      p = new TreeMap<Integer, List<DayRecord>>();
+      pending.put(month, p);
+    }
+    p.put(Integer.parseInt(date.substring(8)), new ArrayList<DayRecord>(records));
+    if(dates != null)
+      dates.add(date);
+  }
+
+  @Override
+  synchronized void flushRecords() throws IOException {
+    Iterator<Map.Entry<String, TreeMap<Integer, List<DayRecord>>>> it = pending.entrySet().iterator();
+    while(it.hasNext()) {
+      Map.Entry<String, TreeMap<Integer, List<DayRecord>>> month = it.next();
+      writeSegment(month.getKey(), month.getValue());
+      it.remove();
+    }
+  }
+
+  /**
+   * Returns the segment of the given month.
+   *
+   * @param month - The month (format <code>YYYY-MM</code>).
+   * @return The {@link Segment} or <code>null</code>, if no day of the month is stored.
+   * @throws IOException If an I/O exception occurs while reading the segment.
+   */
+  synchronized Segment getSegment(final String month) throws IOException {
+    Segment s = open.get(month);
+    if(s == null) {
+      File f = new File(dir, month + ".seg");
+      if(!f.isFile())
+        return null;
+      ByteBuffer buf;
+      if(MAP_FILES) {
+        try(FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+          buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+      } else {
+        buf = ByteBuffer.wrap(Files.readAllBytes(f.toPath()));
+      }
+      s = new Segment(buf, f);
+      open.put(month, s);
+      if(open.size() > MAX_OPEN_SEGMENTS)
+        open.remove(open.keySet().iterator().next());
+    }
+    return s;
+  }
+
+  /**
+   * Writes the segment of the given month containing the stored and the given days.
+   *
+   * @param month - The month (format <code>YYYY-MM</code>).
+   * @param days - The days to write, replacing the stored ones.
+   * @throws IOException If an I/O exception occurs while reading or writing the segment.
+   */
+  private void writeSegment(final String month, final TreeMap<Integer, List<DayRecord>> days) throws IOException {
+    Segment old = getSegment(month);
+    TreeMap<Integer, List<DayRecord>> all = new TreeMap<Integer, List<DayRecord>>();
+    for(int day = 1; day <= 31; day++) {
+      if(old != null && old.contains(day))
+        all.put(day, old.read(day));
+    }
+    all.putAll(days);
+
+    dir.mkdirs();
+    File file = new File(dir, month + ".seg");
+    File tmp = new File(dir, "." + month + ".seg.tmp");
+    boolean replaced = false;
+    try {
+      try(FileOutputStream out = new FileOutputStream(tmp)) {
+        out.write(encode(all));
+        if(sync)
+          out.getFD().sync();
+      }
+      open.remove(month);
+      DayWriter.replace(tmp, file);
+      replaced = true;
+    } finally {
+      if(!replaced)
+        tmp.delete();
+    }
+  }
+
+  /**
+   * Encodes the given days as segment.
+   *
+   * @param days - The days by day of month.
+   * @return The content of the segment file.
+   */
+  private static byte[] encode(final TreeMap<Integer, List<DayRecord>> days) {
+    int rows = 0;
+    for(List<DayRecord> day : days.values())
+      rows += day.size();
+
+    ByteArrayOutputStream entries = new ByteArrayOutputStream(rows * 64);
+    ByteBuffer head = ByteBuffer.allocate(ROWS_OFFSET + rows * ROW_SIZE);
+    head.putInt(MAGIC).putInt(VERSION);
+    int row = 0;
+    for(int day = 0; day <= 31; day++) {
+      List<DayRecord> records = days.get(day);
+      head.putInt(row).putInt((records == null) ? -1 : records.size());
+      if(records != null)
+        row += records.size();
+    }
+    head.putInt(rows);
+    for(List<DayRecord> records : days.values()) {
+      for(DayRecord r : records) {
+        byte[] entry = encode(r);
+        head.putShort((short) r.getMinute()).put(kindOf(r)).put((byte) 0)
+            .putShort((short) r.getBG()).putShort(r.getEventCode())
+            .putFloat(r.getInsulin()).putFloat(r.getCarbs())
+            .putInt(entries.size()).putInt(entry.length);
+        entries.write(entry, 0, entry.length);
+      }
+    }
+    byte[] content = new byte[head.capacity() + entries.size()];
+    System.arraycopy(head.array(), 0, content, 0, head.capacity());
+    System.arraycopy(entries.toByteArray(), 0, content, head.capacity(), entries.size());
+    return content;
+  }
+
+  /**
+   * @param r - The entry.
+   * @return The complete entry as UTF-8: name \0 (attribute-name \0 attribute-value \0)* [\1 text]
+   */
+  private static byte[] encode(final DayRecord r) {
+    StringBuilder sb = new StringBuilder(64);
+    sb.append(r.name).append('\0');
+    for(int i = 0; i < r.getAttributeCount(); i++)
+      sb.append(r.getAttributeName(i)).append('\0').append(r.getAttributeValue(i)).append('\0');
+    if(r.getText() != null)
+      sb.append('\1').append(r.getText());
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param r - The entry.
+   * @return The kind of the entry's row.
+   */
+  private static byte kindOf(final DayRecord r) {
+    switch(r.name) {
+    case "BG": return KIND_BG;
+    case "BASAL": return KIND_BASAL;
+    case "BOLUS": return KIND_BOLUS;
+    case "EVENT": return KIND_EVENT;
+    default: return KIND_OTHER;
+    }
+  }
+
+  private static String toDate(final String month, final int day) {
+    return (day < 10) ? month + "-0" + day : month + "-" + day;
+  }
+
+  private static void check(final String date) {
+    if(!Utils.isDateString(date))
+      throw new IllegalArgumentException("Not a date: " + date);
+  }
+
+  /**
+   * This Class gives access to the rows of a segment file.
+   */
+  static final class Segment {
+    /** The content of the file. */
+    private final ByteBuffer buf;
+    /** The offset of the complete entries. */
+    private final int entriesOffset;
+
+    /**
+     * @param buf - The content of the segment file.
+     * @param f - The segment file for error messages.
+     * @throws IOException If the content is no segment of this version.
+     */
+    private Segment(final ByteBuffer buf, final File f) throws IOException {
+      if(buf.capacity() < ROWS_OFFSET || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION)
+        throw new IOException("Not a segment file: " + f.getPath());
+      this.buf = buf;
+      this.entriesOffset = ROWS_OFFSET + buf.getInt(ROWS_OFFSET - 4) * ROW_SIZE;
+      if(entriesOffset > buf.capacity())
+        throw new IOException("Segment file truncated: " + f.getPath());
+    }
+
+    /**
+     * @param day - The day of the month.
+     * @return Whether the day is stored.
+     */
+    boolean contains(final int day) {
+      return rowCount(day) >= 0;
+    }
+
+    /**
+     * @param day - The day of the month.
+     * @return The index of the day's first row.
+     */
+    int firstRow(final int day) {
+      return buf.getInt(INDEX_OFFSET + 8 * day);
+    }
+
+    /**
+     * @param day - The day of the month.
+     * @return The number of the day's rows or <code>-1</code>, if the day is not stored.
+     */
+    int rowCount(final int day) {
+      return buf.getInt(INDEX_OFFSET + 8 * day + 4);
+    }
+
+    /** @return The minute of the day of the row or <code>-1</code>. */
+    int minute(final int row) {
+      return buf.getShort(ROWS_OFFSET + row * ROW_SIZE);
+    }
+
+    /** @return The kind of the row, one of the constants <code>KIND_*</code>. */
+    byte kind(final int row) {
+      return buf.get(ROWS_OFFSET + row * ROW_SIZE + 2);
+    }
+
+    /** @return The bg of the row in mg/dl or <code>0</code>. */
+    int bg(final int row) {
+      return buf.getShort(ROWS_OFFSET + row * ROW_SIZE + 4);
+    }
+
+    /** @return The event code of the row (see {@link DayRecord#getEventCode()}). */
+    short eventCode(final int row) {
+      return buf.getShort(ROWS_OFFSET + row * ROW_SIZE + 6);
+    }
+
+    /** @return The insulin of the row (see {@link DayRecord#getInsulin()}). */
+    float insulin(final int row) {
+      return buf.getFloat(ROWS_OFFSET + row * ROW_SIZE + 8);
+    }
+
+    /** @return The carbohydrates of the row in gram. */
+    float carbs(final int row) {
+      return buf.getFloat(ROWS_OFFSET + row * ROW_SIZE + 12);
+    }
+
+    /**
+     * Creates the readings of the given day from the columns of its rows,
+     * like {@link DayBuffer#fill(String, List)} does from the entries.
+     *
+     * @param date - The day's date (format <code>YYYY-MM-DD</code>).
+     * @param day - The day of the month.
+     * @return The readings.
+     */
+    DayBuffer readReadings(final String date, final int day) {
+      int first = firstRow(day), count = rowCount(day);
+      DayBuffer buffer = new DayBuffer(count);
+      buffer.reset(date);
+      for(int row = first; row < first + count; row++) {
+        int minute = minute(row);
+        if(minute < 0)
+          continue;
+        short event = eventCode(row);
+        switch(kind(row)) {
+        case KIND_BG:
+          if(event == DayRecord.EVENT_CONTROL)
+            buffer.add(minute, 0, 0, 0, event);
+          else
+            buffer.add(minute, bg(row), insulin(row), DayBuffer.toBreadUnits(carbs(row)), event);
+          break;
+        case KIND_BOLUS:
+          buffer.add(minute, 0, insulin(row), 0, event);
+          break;
+        default:
+          if(event != DayRecord.EVENT_NONE)
+            buffer.add(minute, 0, 0, 0, event);
+        }
+      }
+      return buffer;
+    }
+
+    /**
+     * Decodes the complete entries of the given day.
+     *
+     * @param day - The day of the month.
+     * @return The entries.
+     */
+    List<DayRecord> read(final int day) {
+      int first = firstRow(day), count = rowCount(day);
+      List<DayRecord> records = new ArrayList<DayRecord>(Math.max(0, count));
+      ByteBuffer b = buf.duplicate();
+      for(int row = first; row < first + count; row++) {
+        int offset = buf.getInt(ROWS_OFFSET + row * ROW_SIZE + 16);
+        byte[] entry = new byte[buf.getInt(ROWS_OFFSET + row * ROW_SIZE + 20)];
+        b.position(entriesOffset + offset);
+        b.get(entry);
+        records.add(decode(new String(entry, StandardCharsets.UTF_8)));
+      }
+      return records;
+    }
+
+    private static DayRecord decode(final String entry) {
+      int end = entry.indexOf('\0');
+      String name = entry.substring(0, end).intern();
+      int textStart = entry.indexOf('\1', end);
+      int attEnd = (textStart < 0) ? entry.length() : textStart;
+      List<String> attributes = new ArrayList<String>();
+      int start = end + 1;
+      while(start < attEnd) {
+        end = entry.indexOf('\0', start);
+        String s = entry.substring(start, end);
+        attributes.add((attributes.size() % 2 == 0) ? s.intern() : s);
+        start = end + 1;
+      }
+      return new DayRecord(name, attributes.toArray(new String[attributes.size()]),
+          (textStart < 0) ? null : entry.substring(textStart + 1));
+    }
+  }
+}
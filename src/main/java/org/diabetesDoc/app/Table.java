@@ -21,18 +21,24 @@ package org.diabetesDoc.app;
 //
 ////////////////////////////////////////////////////////////////////////////////
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.BitSet;
 import java.util.List;
 
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectForm;
 
 import static org.diabetesDoc.app.OutputCreator.*;
 
 /**
  * This Class represents the tables of days, created by the {@link TableFactory}.
  * Every Table has a date, an active BR and contains {@link Table#MAX_COLS}
- * {@link Column}s and a remark-line.
+ * columns (kept in a {@link DayBuffer}) and a remark-line (kept as list of typed remarks,
+ * which are paired and rendered by {@link Table#finish()}).
  * @author Stephan Lunowa
  * @version 2.1 - last modified 2014-03-26
  */
@@ -43,14 +49,19 @@ final class Table {
   static final int MAX_TIME_DIFFERENCE = 30;
 
   /**
-   * The number of {@link Column}s per {@code Table}.
+   * The number of columns per {@code Table}.
    */
   static final int MAX_COLS = 12;
 
   /**
-   * The maximal length of a remark-line at output.
+   * The number of lines for the remarks at output.
    */
-  private static final int MAX_COMMENT_LINE_LENGTH = 110;
+  private static final int REMARK_LINES = 2;
+
+  /**
+   * The width of a line for the remarks at output.
+   */
+  private static final float REMARK_LINE_WIDTH = (MAX_COLS+1)*CELL_WIDTH - 0.2f*CM;
 
   /**
    * The separator sign for output as CSV.
@@ -64,13 +75,19 @@ final class Table {
   private String br;
 
   /** The table's columns. */
-  private Column[] cols = new Column[MAX_COLS];
+  private final DayBuffer cols = new DayBuffer(MAX_COLS);
 
-  /** The table's remark-line. Remarks are separated by <code>&quot;,  &quot;</code> */
-  private StringBuilder remarks = new StringBuilder();
+  /** The formatted cells of the columns, created by {@link Table#finish()}. */
+  private String[][] cells;
 
-  /** The number of the current, empty {@link Column}. */
-  private int currCol = 0;
+  /** The table's remarks in the order added. */
+  private final List<Remark> remarks = new ArrayList<Remark>();
+
+  /**
+   * The table's remark-line, created by {@link Table#finish()}.
+   * Remarks are separated by <code>&quot;,  &quot;</code>
+   */
+  private String remarkLine;
 
   /**
    * Creates a new {@code Table} with the given date.
@@ -92,112 +109,174 @@ final class Table {
   Table(String date, String br) {
     this.date = date;
     this.br = br;
+    cols.reset(date);
   }
 
   /**
-   * Adds the given {@link Column} to the {@code Table}.
+   * Adds a column with the given values to the {@code Table}. If the last column is less than
+   * {@link Table#MAX_TIME_DIFFERENCE} minutes before, the values are added to that column.
    *
-   * @param c - The {@code Column} to add.
-   * @return <b><code>true</code></b>, if the {@code Column} was added;
+   * @param minute - The minute of the day.
+   * @param bg - The blood glucose value or <code>0</code>.
+   * @param iu_total - The total insulin units.
+   * @param carbs - The carbohydrates in bread units.
+   * @return <b><code>true</code></b>, if the column was added;
    *         <b><code>false</code></b>, if {@link Table#MAX_COLS} has been reached.
    */
-  boolean addColumn(Column c) {
-    if(currCol > 0 && Utils.difference(cols[currCol-1].getCell(0), c.getCell(0)) < 30) {
-      cols[currCol-1].addColumnData(c);
+  boolean addColumn(int minute, int bg, float iu_total, float carbs) {
+    cells = null;
+    int n = cols.size();
+    if(n > 0 && minute - cols.getMinute(n-1) < MAX_TIME_DIFFERENCE) {
+      cols.merge(n-1, bg, iu_total, carbs);
     } else {
-      if(currCol == MAX_COLS)
+      if(n == MAX_COLS)
         return false;
-      cols[currCol] = c;
-      currCol++;
+      cols.add(minute, bg, iu_total, carbs, DayRecord.EVENT_NONE);
     }
     return true;
   }
 
   /**
-   * Adds a remark to the remark-line.
+   * Adds a remark to the remark-line of the {@code Table}.
+   * Pairs of pump stop and run or of TBR start and end are combined by {@link Table#finish()}.
    *
    * @param time - The remark's time.
-   * @param txt - The remark's text.
+   * @param event - The remark's event code (see {@link DayRecord#getEventCode()}).
+   * @param text - The remark's text: the percentage for {@link DayRecord#EVENT_TBR},
+   *               the text following the localized one for {@link DayRecord#EVENT_BR_CHANGED},
+   *               the value for {@link DayRecord#EVENT_CONTROL}, the text itself for
+   *               {@link DayRecord#EVENT_OTHER} and <code>null</code> otherwise.
    */
-  void addRemark(String time, String txt) {
-    int pos = -1;
-    String oldTime;
-    boolean found = false;
-
-    if(txt.equals(Utils.localize("%output.pumpRun%"))) {
-      while( (pos = remarks.indexOf(Utils.localize("%output.pumpStop%"), pos+1))
-          != -1 ) {
-        oldTime = remarks.substring(pos-7, pos-2);
-        if(Utils.difference(oldTime, time) <= MAX_TIME_DIFFERENCE) {
-          remarks.delete(pos - 7, pos + Utils.localize("%output.pumpStop%").length());
-          found = true;
-          break;
-        }
-      }
-      if (!found) {
-        remarks.append( ((remarks.length() == 0) ? "" : ",  ") + time + ": " + txt );
+  void addRemark(String time, short event, String text) {
+    remarks.add(new Remark(time, event, text));
+    remarkLine = null;
+  }
+
+  /**
+   * Finishes the {@code Table}'s content for output and formats its cells.
+   */
+  void finish() {
+    if(cells == null) {
+      FixedPointFormat format = FixedPointFormat.get();
+      cells = new String[cols.size()][6];
+      for(int c = 0; c < cols.size(); c++) {
+        for(int i = 0; i < 6; i++)
+          cells[c][i] = formatCell(format, c, i);
       }
-    } else if(txt.equals(Utils.localize("%output.tbrEnd%"))) {
-      while( (pos = remarks.indexOf("TBR ", pos+1))
-          != -1 ) {
-        if(remarks.length() < pos + 7 || remarks.charAt(pos+7) != '%')
+    }
+    if(remarkLine == null)
+      remarkLine = renderRemarks();
+  }
+
+  /**
+   * Pairs the remarks in a single pass and renders the remark-line:
+   * <ul>
+   *   <li>a pump run cancels a pump stop at most {@link Table#MAX_TIME_DIFFERENCE} minutes before,</li>
+   *   <li>a TBR end cancels a TBR start at most half that time before,</li>
+   *   <li>a TBR start at most {@code MAX_TIME_DIFFERENCE} minutes after the end of a TBR with
+   *       the same percentage continues that TBR,</li>
+   *   <li>the remaining TBR starts are shown with the time of the following TBR end.</li>
+   * </ul>
+   *
+   * @return The remark-line.
+   */
+  private String renderRemarks() {
+    List<Remark> shown = new ArrayList<Remark>(remarks.size());
+    BitSet removed = new BitSet();
+    ArrayDeque<Integer> stops = new ArrayDeque<Integer>(), tbrs = new ArrayDeque<Integer>();
+    for(Remark r : remarks) {
+      switch(r.event) {
+      case DayRecord.EVENT_PUMP_STOP:
+        if(r.minute >= 0)
+          stops.add(shown.size());
+        break;
+      case DayRecord.EVENT_PUMP_RUN:
+        if(cancel(shown, stops, removed, r.minute, MAX_TIME_DIFFERENCE))
           continue;
-        oldTime = remarks.substring(pos-7, pos-2);
-        if(Utils.difference(oldTime, time) <= MAX_TIME_DIFFERENCE / 2) {
-          remarks.delete(pos-7, pos + 8);
-          found = true;
-          break;
-        }
-      }
-      if(!found) {
-        remarks.append( ((remarks.length() == 0) ? "" : ",  ") + time + ": " + txt );
-      }
-    } else if(txt.matches("TBR (\\s|\\d)(\\s|\\d)\\d%")) {
-      while( (pos = remarks.indexOf(Utils.localize("%output.tbrEnd%"), pos+1))
-          != -1 ) {
-        oldTime = remarks.substring(pos-7, pos-2);
-        if(Utils.difference(oldTime, time) <= MAX_TIME_DIFFERENCE && pos >= 13
-            && remarks.substring(pos-13, pos-9).equals(txt.substring(4))) {
-          remarks.delete(pos-9, pos + Utils.localize("%output.tbrEnd%").length());
-          found = true;
-          break;
+        break;
+      case DayRecord.EVENT_TBR_END:
+        if(cancel(shown, tbrs, removed, r.minute, MAX_TIME_DIFFERENCE / 2))
+          continue;
+        break;
+      case DayRecord.EVENT_TBR:
+        int end = lastShown(shown.size() - 1, removed);
+        if(end >= 0 && shown.get(end).event == DayRecord.EVENT_TBR_END && r.minute >= 0
+            && r.minute - shown.get(end).minute <= MAX_TIME_DIFFERENCE) {
+          int start = lastShown(end - 1, removed);
+          if(start >= 0 && shown.get(start).event == DayRecord.EVENT_TBR
+              && shown.get(start).text.trim().equals(r.text.trim())) {
+            removed.set(end);
+            continue;
+          }
         }
+        if(r.minute >= 0)
+          tbrs.add(shown.size());
+        break;
       }
-      if(!found) {
-        remarks.append( ((remarks.length() == 0) ? "" : ",  ") + time + ": " + txt );
+      shown.add(r);
+    }
+
+    // the remaining TBR starts end at the following TBR end
+    String[] endTimes = new String[shown.size()];
+    tbrs.clear();
+    for(int i = 0; i < shown.size(); i++) {
+      if(removed.get(i))
+        continue;
+      if(shown.get(i).event == DayRecord.EVENT_TBR) {
+        tbrs.add(i);
+      } else if(shown.get(i).event == DayRecord.EVENT_TBR_END && !tbrs.isEmpty()) {
+        endTimes[tbrs.poll()] = shown.get(i).time;
+        removed.set(i);
       }
-    } else {
-      remarks.append( ((remarks.length() == 0) ? "" : ",  ") + time + ": " + txt );
     }
+
+    StringBuilder line = new StringBuilder();
+    for(int i = 0; i < shown.size(); i++) {
+      if(removed.get(i))
+        continue;
+      if(line.length() > 0)
+        line.append(",  ");
+      line.append(shown.get(i).time);
+      if(endTimes[i] != null)
+        line.append(" - ").append(endTimes[i]);
+      line.append(": ").append(shown.get(i).render());
+    }
+    return line.toString();
   }
 
   /**
-   * Finishes the {@code Table}'s content for output.
+   * Cancels the first open remark at most <code>maxDifference</code> minutes before the given minute.
+   * Open remarks older than that are dropped from the queue, as they cannot be cancelled anymore.
+   *
+   * @param shown - The remarks shown.
+   * @param open - The queue of the indices of the open remarks to cancel.
+   * @param removed - The indices of the remarks removed.
+   * @param minute - The minute of the cancelling remark.
+   * @param maxDifference - The maximal difference of time in minutes.
+   * @return <b><code>true</code></b>, if a remark was cancelled;
+   *         <b><code>false</code></b>, otherwise.
    */
-  void finish() {
-    int pos = -1, pos2;
-    while((pos = remarks.indexOf("TBR ", pos+1)) != -1) {
-      if(remarks.length() < pos+7 || remarks.charAt(pos+7) != '%')
-        continue;
-      if((pos2 = remarks.indexOf(Utils.localize("%output.tbrEnd%"), pos+1))
-          != -1) {
-        String time = remarks.substring(pos2-7, pos2-2);
-        remarks.delete(pos2-7, pos2 + Utils.localize("%output.tbrEnd%").length())
-            .insert(pos-2, " - " + time);
-        // return to new position
-        pos = remarks.indexOf("TBR ", pos+1);
-      } else {
+  private static boolean cancel(List<Remark> shown, ArrayDeque<Integer> open, BitSet removed,
+      int minute, int maxDifference) {
+    if(minute < 0)
+      return false;
+    while(!open.isEmpty() && minute - shown.get(open.peek()).minute > maxDifference)
+      open.poll();
+    if(open.isEmpty())
+      return false;
+    removed.set(open.poll());
+    return true;
+  }
 
-      }
-    }
-    while((pos = remarks.indexOf(",  ,")) != -1)
-      remarks.delete(pos, pos+3);
-    if (remarks.length() >= 3) {
-      if (remarks.substring(0, 3).equals(",  "))
-        remarks.delete(0, 3);
-      if (remarks.substring(remarks.length() - 3).equals(",  "))
-        remarks.delete(remarks.length() - 3, remarks.length());
-    }
+  /**
+   * @param i - The index to start searching backwards at.
+   * @param removed - The indices of the remarks removed.
+   * @return The index of the last remark shown at or before <code>i</code> or <code>-1</code>.
+   */
+  private static int lastShown(int i, BitSet removed) {
+    while(i >= 0 && removed.get(i))
+      i--;
+    return i;
   }
 
   /**
@@ -225,7 +304,14 @@ final class Table {
    */
   public String getRemarks() {
     finish();
-    return remarks.toString();
+    return remarkLine;
+  }
+
+  /**
+   * @return The number of columns containing data.
+   */
+  int getColumnCount() {
+    return cols.size();
   }
 
   /**
@@ -234,16 +320,32 @@ final class Table {
   public List<String[]> getData() {
     finish();
     List<String[]> data = new ArrayList<String[]>();
-    for(Column c : cols) {
-      if(c == null) break;
+    for(int i = 0; i < cols.size(); i++) {
       String[] cells = new String[6];
       for(int j = 0; j < 6; j++)
-        cells[j] = c.getCell(j);
+        cells[j] = getCell(i, j);
       data.add(cells);
     }
     return data;
   }
 
+  /**
+   * Breaks the remark-line by its width in the PDF-font into the lines for the remarks
+   * (the last line takes the rest).
+   *
+   * @return The lines, at least one.
+   */
+  private List<String> getRemarkRows() {
+    finish();
+    try {
+      return TextWidths.of(PDF_FONT).breakLines(remarkLine, ",  ", REMARK_LINE_WIDTH, PDF_FONT_SIZE_TABLE, REMARK_LINES);
+    } catch(java.io.IOException e) {
+      List<String> rows = new ArrayList<String>(1);
+      rows.add(remarkLine);
+      return rows;
+    }
+  }
+
   /**
    * @return The {@code Table} as HTML-String.
    * Has to be included in &lt;table&gt;-Tags.
@@ -251,87 +353,75 @@ final class Table {
   String toHTMLString() {
     finish();
 
-    int dayOfWeek = Utils.toCalendar(date).get(Calendar.DAY_OF_WEEK);
+    boolean weekend = DateUtils.isWeekend(DateUtils.toEpochDay(date));
     String[] rows = new String[8];
     rows[0] = "<tr><td class=\"upper\">" + Utils.localizeDateString(date)
         + "</td><td>" + Utils.localize("%output.time%") + "</td>";
-    rows[1] = "<tr><td class=\"lower\">" + Utils.localizeDayOfWeek(Utils.toCalendar(date))
+    rows[1] = "<tr><td class=\"lower\">" + Utils.localizeDayOfWeek(date)
         + "</td><td>" + Utils.localize("%output.bg%") + "</td>";
     rows[2] = "<tr><td rowspan=\"2\">"
-        + ((dayOfWeek == Calendar.SATURDAY || dayOfWeek == Calendar.SUNDAY)?
-            Utils.localize("%output.weekend%") : "")
+        + (weekend ? Utils.localize("%output.weekend%") : "")
         + "</td><td>" + Utils.localize("%output.IU% %output.carb.breadUnit%") + "</td>";
     rows[3] = "<tr><td>" + Utils.localize("%output.IU% %output.IU.corr%") + "</td>";
     rows[4] = "<tr><td rowspan=\"2\">" + (br != null ? "Basalrate " + br : "")
         + "</td><td>" + Utils.localize("%output.IU% %output.IU.total%") + "</td>";
     rows[5] = "<tr><td>" + Utils.localize("%output.carb.breadUnit%") + "</td>";
-    for(Column c : cols) {
-      rows[0] += "<td>" + ((c != null)? c.getCell(0) : "") + "</td>";
-      rows[1] += "<td>" + ((c != null)? c.getCell(1) : "") + "</td>";
-      rows[2] += "<td>" + ((c != null)? c.getCell(2) : "") + "</td>";
-      rows[3] += "<td>" + ((c != null)? c.getCell(3) : "") + "</td>";
-      rows[4] += "<td>" + ((c != null)? c.getCell(4) : "") + "</td>";
-      rows[5] += "<td>" + ((c != null)? c.getCell(5) : "") + "</td>";
+    for(int c = 0; c < MAX_COLS; c++) {
+      for(int i = 0; i < 6; i++)
+        rows[i] += "<td>" + ((c < cols.size())? getCell(c, i) : "") + "</td>";
     }
     rows[0] += "<td class=\"last\" rowspan=\"8\">Bild</td>";
     for(int i = 0; i < 6; i++)
       rows[i] += "</tr>";
-    String row = getRemarks();
-    while(row.length() > MAX_COMMENT_LINE_LENGTH) {
-      row = row.substring(0, row.lastIndexOf(",  "));
-    }
+    List<String> remarkRows = getRemarkRows();
     rows[6] = "<tr><td rowspan=\"2\">" + Utils.localize("%output.remarks%")
-        + "</td><td class=\"remarks upper\" colspan=\"13\">" + row + "</td></tr>";
+        + "</td><td class=\"remarks upper\" colspan=\"13\">" + remarkRows.get(0) + "</td></tr>";
     rows[7] = "<tr><td class=\"remarks lower\" colspan=\"13\">"
-        + remarks.substring(Math.min(row.length() + 3, remarks.length())) + "</td></tr>";
+        + (remarkRows.size() > 1 ? remarkRows.get(1) : "") + "</td></tr>";
 
     return rows[0] + "\n" + rows[1] + "\n" + rows[2] + "\n" + rows[3] + "\n"
         + rows[4] + "\n" + rows[5] + "\n" + rows[6] + "\n" + rows[7] + "\n";
   }
 
   /**
-   * Adds the {@code Table} to the given {@link PDPageContentStream} with left-upper corner
-   * at xPos, yPos.
+   * Creates the frame of the {@code Table}s as PDF form XObject, which is written once per document
+   * and referenced by every {@code Table} (see {@link Table#toPDF(PDPageContentStream, PDXObjectForm, float, float)}).
+   * The frame contains all parts, which are the same for all {@code Table}s: the borders,
+   * the labels of the rows and the background and axes of the chart.
    *
-   * @param pdfStream - The {@code PDPageContentStream} to which the {@code Table} is added.
-   * @param xPos - The left horizontal position of the {@code Table}.
-   * @param yPos - The upper vertical position of the {@code Table}.
-   * @throws java.io.IOException If an I/O exception occurs while writing to the {@code PDPageContentStream}.
+   * @param pdfDoc - The {@link PDDocument} the frame is used in.
+   * @return The frame with the left-upper corner of the {@code Table} as origin.
+   * @throws java.io.IOException If an I/O exception occurs while writing the frame.
    */
-  void toPDF(PDPageContentStream pdfStream, float xPos, float yPos) throws java.io.IOException {
-    finish();
-    int dayOfWeek = Utils.toCalendar(date).get(Calendar.DAY_OF_WEEK);
+  static PDXObjectForm createFrame(PDDocument pdfDoc) throws java.io.IOException {
+    PDRectangle bBox = new PDRectangle();
+    bBox.setLowerLeftX(-0.1f*CM);
+    bBox.setLowerLeftY(-7.25f*CELL_HEIGHT - 0.2f*CM);
+    bBox.setUpperRightX(FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH + LAST_CELL_WIDTH + 0.1f*CM);
+    bBox.setUpperRightY(0.75f*CELL_HEIGHT + 0.2f*CM);
+    PDPage formPage = new PDPage(bBox);
+    PDPageContentStream pdfStream = new PDPageContentStream(pdfDoc, formPage);
 
     pdfStream.setLineWidth(0.05f);
     ///////////////////////
     // table borders
     ///////////////////////
     pdfStream.drawPolygon(
-        new float[]{xPos, xPos + FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH,
-            	xPos + FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH, xPos},
-        new float[]{yPos + 0.75f*CELL_HEIGHT, yPos + 0.75f*CELL_HEIGHT,
-            	yPos - 7.25f*CELL_HEIGHT, yPos - 7.25f*CELL_HEIGHT} );
+        new float[]{0, FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH,
+            	FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH, 0},
+        new float[]{0.75f*CELL_HEIGHT, 0.75f*CELL_HEIGHT,
+            	-7.25f*CELL_HEIGHT, -7.25f*CELL_HEIGHT} );
     // horizontal lines
-    pdfStream.drawLine(xPos, yPos + 0.75f*CELL_HEIGHT + 0.07f*CM,
-        xPos + FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH, yPos + 0.75f*CELL_HEIGHT + 0.07f*CM);
-    pdfStream.drawLine(xPos + FIRST_CELL_WIDTH, yPos - 0.25f*CELL_HEIGHT,
-        xPos + FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH, yPos - 0.25f*CELL_HEIGHT);
-    pdfStream.drawLine(xPos, yPos - 1.25f*CELL_HEIGHT,
-        xPos + FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH, yPos - 1.25f*CELL_HEIGHT);
-    pdfStream.drawLine(xPos + FIRST_CELL_WIDTH, yPos - 2.25f*CELL_HEIGHT,
-        xPos + FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH, yPos - 2.25f*CELL_HEIGHT);
-    pdfStream.drawLine(xPos, yPos - 3.25f*CELL_HEIGHT,
-        xPos + FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH, yPos - 3.25f*CELL_HEIGHT);
-    pdfStream.drawLine(xPos + FIRST_CELL_WIDTH, yPos - 4.25f*CELL_HEIGHT,
-        xPos + FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH, yPos - 4.25f*CELL_HEIGHT);
-    pdfStream.drawLine(xPos, yPos - 5.25f*CELL_HEIGHT,
-        xPos + FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH, yPos - 5.25f*CELL_HEIGHT);
+    pdfStream.drawLine(0, 0.75f*CELL_HEIGHT + 0.07f*CM,
+        FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH, 0.75f*CELL_HEIGHT + 0.07f*CM);
+    for(int i = 0; i < 6; i++)
+      pdfStream.drawLine((i % 2 == 0) ? FIRST_CELL_WIDTH : 0, (-0.25f - i)*CELL_HEIGHT,
+          FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH, (-0.25f - i)*CELL_HEIGHT);
     // vertical lines
-    pdfStream.drawLine(xPos + FIRST_CELL_WIDTH, yPos + 0.75f*CELL_HEIGHT,
-        xPos + FIRST_CELL_WIDTH, yPos - 7.25f*CELL_HEIGHT);
+    pdfStream.drawLine(FIRST_CELL_WIDTH, 0.75f*CELL_HEIGHT, FIRST_CELL_WIDTH, -7.25f*CELL_HEIGHT);
     for(int i = 1; i <= MAX_COLS; i++)
-      pdfStream.drawLine(xPos + FIRST_CELL_WIDTH + i*CELL_WIDTH, yPos + 0.75f*CELL_HEIGHT,
-          xPos + FIRST_CELL_WIDTH + i*CELL_WIDTH, yPos - 5.25f*CELL_HEIGHT);
+      pdfStream.drawLine(FIRST_CELL_WIDTH + i*CELL_WIDTH, 0.75f*CELL_HEIGHT,
+          FIRST_CELL_WIDTH + i*CELL_WIDTH, -5.25f*CELL_HEIGHT);
 
     pdfStream.beginText();
     pdfStream.setFont( PDF_FONT , PDF_FONT_SIZE_TABLE );
@@ -339,22 +429,7 @@ final class Table {
     //////////////////////
     // first column
     //////////////////////
-    pdfStream.moveTextPositionByAmount(xPos, yPos);
-    drawCenteredString(pdfStream, Utils.localizeDateString(date), FIRST_CELL_WIDTH);
-    pdfStream.moveTextPositionByAmount(0, -CELL_HEIGHT);
-    drawCenteredString(pdfStream, Utils.localizeDayOfWeek(Utils.toCalendar(date)), FIRST_CELL_WIDTH);
-    // in two cells
-    pdfStream.moveTextPositionByAmount(0, -1.5f*CELL_HEIGHT);
-    drawCenteredString(pdfStream,
-        (dayOfWeek == Calendar.SATURDAY || dayOfWeek == Calendar.SUNDAY )
-        ? Utils.localize("%output.weekend%") : "",
-        FIRST_CELL_WIDTH);
-    // in two cells
-    pdfStream.moveTextPositionByAmount(0, -2.0f*CELL_HEIGHT);
-    if(br != null)
-      drawCenteredString(pdfStream, "Basalrate " + br, FIRST_CELL_WIDTH);
-    // in two cells
-    pdfStream.moveTextPositionByAmount(0, -2.0f*CELL_HEIGHT);
+    pdfStream.moveTextPositionByAmount(0, -6.5f*CELL_HEIGHT);
     drawCenteredString(pdfStream, Utils.localize("%output.remarks%"), FIRST_CELL_WIDTH);
 
     ///////////////////////
@@ -372,31 +447,6 @@ final class Table {
     drawCenteredString(pdfStream, Utils.localize("%output.IU% %output.IU.total%"), CELL_WIDTH);
     pdfStream.moveTextPositionByAmount(0, -CELL_HEIGHT);
     drawCenteredString(pdfStream, Utils.localize("%output.carb.breadUnit%"), CELL_WIDTH);
-
-    /////////////////////////
-    // add other columns
-    /////////////////////////
-    for(int i = 0; i < MAX_COLS; i++){
-      pdfStream.moveTextPositionByAmount(CELL_WIDTH,  +6*CELL_HEIGHT);
-      for(int j = 0; j < 6; j++) {
-        pdfStream.moveTextPositionByAmount(0, -CELL_HEIGHT);
-        if(cols[i] != null) {
-          drawCenteredString(pdfStream, cols[i].getCell(j), CELL_WIDTH);
-        }
-      }
-    }
-    ////////////////////////////
-    // add comments
-    ////////////////////////////
-    String row = getRemarks();
-    while(row.length() > MAX_COMMENT_LINE_LENGTH) {
-      row = row.substring(0, row.lastIndexOf(",  "));
-    }
-    pdfStream.moveTextPositionByAmount(0.1f*CM - MAX_COLS*CELL_WIDTH, -CELL_HEIGHT);
-    pdfStream.drawString(row);
-    pdfStream.moveTextPositionByAmount(0, -CELL_HEIGHT);
-    pdfStream.drawString(remarks.substring(Math.min(row.length() + 3, remarks.length())));
-
     pdfStream.endText();
 
     ////////////////////////////
@@ -404,34 +454,31 @@ final class Table {
     ////////////////////////////
     pdfStream.setLineWidth(0.3f);
     pdfStream.setNonStrokingColor(0.925);
-    pdfStream.fillRect(xPos + FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH + 0.5f*CM,
-        yPos - 3.5f*CELL_HEIGHT, (LAST_CELL_WIDTH - 0.5f*CM), 4*CELL_HEIGHT);
-    pdfStream.fillRect(xPos + FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH + 0.5f*CM,
-        yPos - 6.5f*CELL_HEIGHT, (LAST_CELL_WIDTH - 0.5f*CM), CELL_HEIGHT);
+    pdfStream.fillRect(FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH + 0.5f*CM,
+        -3.5f*CELL_HEIGHT, (LAST_CELL_WIDTH - 0.5f*CM), 4*CELL_HEIGHT);
+    pdfStream.fillRect(FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH + 0.5f*CM,
+        -6.5f*CELL_HEIGHT, (LAST_CELL_WIDTH - 0.5f*CM), CELL_HEIGHT);
     pdfStream.setNonStrokingColor(0.25);
     for(int i = 0; i < 8; i++) {
       if(i % 2 == 0 || i == 7)
         pdfStream.setStrokingColor(0.25);
       else
         pdfStream.setStrokingColor(0.75);
-      pdfStream.drawLine(xPos + FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH + 0.45f*CM,
-          yPos + (0.5f - i)*CELL_HEIGHT,
-          xPos + FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH
-            	+ LAST_CELL_WIDTH,
-          yPos + (0.5f - i)*CELL_HEIGHT);
+      pdfStream.drawLine(FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH + 0.45f*CM,
+          (0.5f - i)*CELL_HEIGHT,
+          FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH + LAST_CELL_WIDTH,
+          (0.5f - i)*CELL_HEIGHT);
     }
     for(int i = 0; i < 25; i++)
       pdfStream.drawLine(
-          xPos + FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH + 0.5f*CM
-            	+ (LAST_CELL_WIDTH - 0.5f*CM) * i / 24,
-          yPos + ((i % 3 == 0) ? 0.5f : - 6.5f)*CELL_HEIGHT,
-          xPos + FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH + 0.5f*CM
-            	+ (LAST_CELL_WIDTH - 0.5f*CM) * i / 24,
-          yPos - 6.5f*CELL_HEIGHT - 0.05f*CM);
+          FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH + 0.5f*CM + (LAST_CELL_WIDTH - 0.5f*CM) * i / 24,
+          ((i % 3 == 0) ? 0.5f : - 6.5f)*CELL_HEIGHT,
+          FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH + 0.5f*CM + (LAST_CELL_WIDTH - 0.5f*CM) * i / 24,
+          -6.5f*CELL_HEIGHT - 0.05f*CM);
     pdfStream.beginText();
     pdfStream.setFont( org.apache.pdfbox.pdmodel.font.PDType1Font.HELVETICA_BOLD , PDF_FONT_SIZE_TABLE * 0.7f);
-    pdfStream.moveTextPositionByAmount(xPos + FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH + 0.225f*CM,
-        yPos - 6.7f*CELL_HEIGHT);
+    pdfStream.moveTextPositionByAmount(FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH + 0.225f*CM,
+        -6.7f*CELL_HEIGHT);
     for(int i = 0; i < 8; i++) {
       drawCenteredString(pdfStream, "" + (40*(i+1)), 0.4f, PDF_FONT_SIZE_TABLE * 0.7f);
       pdfStream.moveTextPositionByAmount(0, CELL_HEIGHT);
@@ -441,32 +488,101 @@ final class Table {
       drawCenteredString(pdfStream, "" + i, 0.4f, PDF_FONT_SIZE_TABLE * 0.7f);
       pdfStream.moveTextPositionByAmount((LAST_CELL_WIDTH - 0.5f*CM) / 8, 0);
     }
-    pdfStream.setStrokingColor(0.0);
-    pdfStream.setNonStrokingColor(0.0);
-    pdfStream.moveTextPositionByAmount(-(LAST_CELL_WIDTH - 0.5f*CM) * 9/8, 0.55f*CELL_HEIGHT);
-    for(Column c : cols) {
-      if(c != null && !c.getCell(1).isEmpty()) {
-        float x = (LAST_CELL_WIDTH - 0.5f*CM) * Utils.difference("00:00", c.getCell(0)) / 1440f,
-            y = 7 * CELL_HEIGHT * (Integer.parseInt(c.getCell(1)) - 40) / 280f;
+    pdfStream.endText();
+    pdfStream.close();
+    return createForm(formPage);
+  }
+
+  /**
+   * Adds the {@code Table} to the given {@link PDPageContentStream} with left-upper corner
+   * at xPos, yPos. Only the day's content is written, the frame is referenced.
+   *
+   * @param pdfStream - The {@code PDPageContentStream} to which the {@code Table} is added.
+   * @param frame - The frame of the {@code Table}s of the document (see {@link Table#createFrame(PDDocument)}).
+   * @param xPos - The left horizontal position of the {@code Table}.
+   * @param yPos - The upper vertical position of the {@code Table}.
+   * @throws java.io.IOException If an I/O exception occurs while writing to the {@code PDPageContentStream}.
+   */
+  void toPDF(PDPageContentStream pdfStream, PDXObjectForm frame, float xPos, float yPos) throws java.io.IOException {
+    finish();
+    boolean weekend = DateUtils.isWeekend(DateUtils.toEpochDay(date));
+
+    pdfStream.drawXObject(frame, xPos, yPos, 1, 1);
+
+    pdfStream.beginText();
+    pdfStream.setFont( PDF_FONT , PDF_FONT_SIZE_TABLE );
+
+    //////////////////////
+    // first column
+    //////////////////////
+    pdfStream.moveTextPositionByAmount(xPos, yPos);
+    drawCenteredString(pdfStream, Utils.localizeDateString(date), FIRST_CELL_WIDTH);
+    pdfStream.moveTextPositionByAmount(0, -CELL_HEIGHT);
+    drawCenteredString(pdfStream, Utils.localizeDayOfWeek(date), FIRST_CELL_WIDTH);
+    // in two cells
+    pdfStream.moveTextPositionByAmount(0, -1.5f*CELL_HEIGHT);
+    drawCenteredString(pdfStream,
+        weekend ? Utils.localize("%output.weekend%") : "",
+        FIRST_CELL_WIDTH);
+    // in two cells
+    pdfStream.moveTextPositionByAmount(0, -2.0f*CELL_HEIGHT);
+    if(br != null)
+      drawCenteredString(pdfStream, "Basalrate " + br, FIRST_CELL_WIDTH);
+
+    /////////////////////////
+    // add other columns
+    /////////////////////////
+    pdfStream.moveTextPositionByAmount(FIRST_CELL_WIDTH, -0.5f*CELL_HEIGHT);
+    for(int i = 0; i < MAX_COLS; i++){
+      pdfStream.moveTextPositionByAmount(CELL_WIDTH,  +6*CELL_HEIGHT);
+      for(int j = 0; j < 6; j++) {
+        pdfStream.moveTextPositionByAmount(0, -CELL_HEIGHT);
+        if(i < cols.size()) {
+          drawCenteredString(pdfStream, getCell(i, j), CELL_WIDTH);
+        }
+      }
+    }
+    ////////////////////////////
+    // add comments
+    ////////////////////////////
+    List<String> remarkRows = getRemarkRows();
+    pdfStream.moveTextPositionByAmount(0.1f*CM - MAX_COLS*CELL_WIDTH, -CELL_HEIGHT);
+    pdfStream.drawString(remarkRows.get(0));
+    pdfStream.moveTextPositionByAmount(0, -CELL_HEIGHT);
+    pdfStream.drawString(remarkRows.size() > 1 ? remarkRows.get(1) : "");
+
+    pdfStream.endText();
+
+    ////////////////////////////
+    // add image
+    ////////////////////////////
+    pdfStream.beginText();
+    pdfStream.setFont( org.apache.pdfbox.pdmodel.font.PDType1Font.HELVETICA_BOLD , PDF_FONT_SIZE_TABLE * 0.7f);
+    pdfStream.moveTextPositionByAmount(xPos + FIRST_CELL_WIDTH + (MAX_COLS+1)*CELL_WIDTH + 0.5f*CM,
+        yPos - 6.65f*CELL_HEIGHT);
+    for(int c = 0; c < cols.size(); c++) {
+      if(cols.getBG(c) != 0) {
+        float x = (LAST_CELL_WIDTH - 0.5f*CM) * cols.getMinute(c) / 1440f,
+            y = 7 * CELL_HEIGHT * (cols.getBG(c) - 40) / 280f;
         if(x < 0 || x > (LAST_CELL_WIDTH - 0.5f*CM))
           continue;
         if(y < 0) {
           pdfStream.moveTextPositionByAmount(x, 0);
           drawCenteredString(pdfStream, "v", 0, PDF_FONT_SIZE_TABLE * 0.7f);
           pdfStream.moveTextPositionByAmount(0, 0.5f*CELL_HEIGHT);
-          drawCenteredString(pdfStream, c.getCell(1), 0, PDF_FONT_SIZE_TABLE * 0.7f);
+          drawCenteredString(pdfStream, getCell(c, 1), 0, PDF_FONT_SIZE_TABLE * 0.7f);
           pdfStream.moveTextPositionByAmount(-x, -0.5f*CELL_HEIGHT);
         } else if(y > 7 * CELL_HEIGHT) {
           pdfStream.moveTextPositionByAmount(x, 7 * CELL_HEIGHT);
           drawCenteredString(pdfStream, "^", 0, PDF_FONT_SIZE_TABLE * 0.7f);
           pdfStream.moveTextPositionByAmount(0, -0.5f*CELL_HEIGHT);
-          drawCenteredString(pdfStream, c.getCell(1), 0, PDF_FONT_SIZE_TABLE * 0.7f);
+          drawCenteredString(pdfStream, getCell(c, 1), 0, PDF_FONT_SIZE_TABLE * 0.7f);
           pdfStream.moveTextPositionByAmount(-x, -6.5f * CELL_HEIGHT);
         } else {
           pdfStream.moveTextPositionByAmount(x, y);
           drawCenteredString(pdfStream, "x", 0, PDF_FONT_SIZE_TABLE * 0.7f);
           pdfStream.moveTextPositionByAmount(0, 0.5f*CELL_HEIGHT);
-          drawCenteredString(pdfStream, c.getCell(1), 0, PDF_FONT_SIZE_TABLE * 0.7f);
+          drawCenteredString(pdfStream, getCell(c, 1), 0, PDF_FONT_SIZE_TABLE * 0.7f);
           pdfStream.moveTextPositionByAmount(-x, -y-0.5f*CELL_HEIGHT);
         }
       }
@@ -475,71 +591,91 @@ final class Table {
   }
 
   /**
-  * This Class represents the {@link Table}'s columns.
-  * Every {@code Column} contains six cells.
-  * @author Stephan Lunowa
-  * @version 2.1 - last modified 2014-03-17
-  */
-  static class Column {
-    private Measurement measurement;
-    
-    /**
-     * Creates a new {@code Column} instance with the given entries.
-     * <code>null</code> is replaced by an empty String (<code>&quot;&quot;</code>).
-     *
-     * @param time - The time of the entry (format <code>&quot;hh:mm&quot;</code>).
-     * @param bg - The blood glucose value.
-     * @param iu_carb - The insulin units for carbohydrates.
-     * @param iu_corr - The insulin units for correction of the BG.
-     * @param iu_total - The total insulin units.
-     * @param carbs - The carbohydrates.
-     */
-    Column(String time, String bg, String iu_total, String carbs) {
-      measurement = new Measurement("2014-01-01", time, bg, iu_total, carbs);
+   * The Table column's cells. Their values:
+   * <ul>
+   *   <li>cell <b>0</b>: time</li>
+   *   <li>cell <b>1</b>: blood glucose value</li>
+   *   <li>cell <b>2</b>: insulin units for carbohydrates</li>
+   *   <li>cell <b>3</b>: insulin units for correction</li>
+   *   <li>cell <b>4</b>: total insulin units </li>
+   *   <li>cell <b>5</b>: carbohydrates</li>
+   * </ul>
+   * @param col - The column's index.
+   * @param i - The cell's index.
+   * @return The content of the <code>i</code>-th cell.
+   */
+  String getCell(int col, int i) {
+    if(cells == null)
+      finish();
+    return (i >= 0 && i < 6) ? cells[col][i] : "";
+  }
+
+  /**
+   * Formats a cell (see {@link Table#getCell(int, int)}).
+   *
+   * @param format - The {@link FixedPointFormat} of the current thread.
+   * @param col - The column's index.
+   * @param i - The cell's index.
+   * @return The content of the <code>i</code>-th cell.
+   */
+  private String formatCell(FixedPointFormat format, int col, int i) {
+    switch (i) {
+    case 0: return Utils.toTimeString(cols.getMinute(col));
+    case 1:
+      int bg = cols.getBG(col);
+      return (bg != 0) ? "" + bg : "";
+    // compared as decimals, as they are formatted
+    case 2:
+      double iu = FixedPointFormat.toDecimal(cols.getCarbInsulin(col));
+      return (iu > 0.04)? format.format(iu) : "";
+    case 3:
+      iu = FixedPointFormat.toDecimal(cols.getCorrection(col));
+      return (Math.abs(iu) > 0.04)? format.format(iu) : "";
+    case 4:
+      iu = FixedPointFormat.toDecimal(cols.getBolus(col));
+      return (iu > 0.04)? format.format(iu) : "";
+    case 5:
+      double carbs = FixedPointFormat.toDecimal(cols.getCarbs(col));
+      return (carbs > 0.04)? format.format(carbs) : "";
+    default: return "";
     }
+  }
 
-    /**
-     * The Table column's cells. Their values:
-     * <ul>
-     *   <li>cell <b>0</b>: time</li>
-     *   <li>cell <b>1</b>: blood glucose value</li>
-     *   <li>cell <b>2</b>: insulin units for carbohydrates</li>
-     *   <li>cell <b>3</b>: insulin units for correction</li>
-     *   <li>cell <b>4</b>: total insulin units </li>
-     *   <li>cell <b>5</b>: carbohydrates</li>
-     * </ul>
-     * @param i - The cell's index.
-     * @return The content of the <code>i</code>-th cell.
-     */
-    String getCell(int i) {
-      switch (i) {
-      case 0: return measurement.getTime();
-      case 1:
-        int bg = measurement.getBG();
-        return (bg != 0) ? "" + bg : "";
-      case 2:
-        double iu = measurement.getIU_carb();
-        return (iu > 0.04)? String.format("%1.1f", iu) : "";
-      case 3: 
-        iu = measurement.getIU_corr();
-        return (Math.abs(iu) > 0.04)? String.format("%1.1f", iu) : "";
-      case 4: 
-        iu = measurement.getIU_total();
-        return (iu > 0.04)? String.format("%1.1f", iu) : "";
-      case 5: 
-        double carbs = measurement.getCarbs();
-        return (carbs > 0.04)? String.format("%1.1f", carbs) : "";
-      default: return "";
-      }
+  /**
+   * A remark of the remark-line.
+   */
+  private static final class Remark {
+    /** The remark's time. */
+    final String time;
+    /** The remark's minute of the day or <code>-1</code>, if the time is not of the format <code>hh:mm</code>. */
+    final int minute;
+    /** The remark's event code (see {@link DayRecord#getEventCode()}). */
+    final short event;
+    /** The remark's text (see {@link Table#addRemark(String, short, String)}). */
+    final String text;
+
+    Remark(String time, short event, String text) {
+      this.time = time;
+      this.minute = Utils.toMinute(time);
+      this.event = event;
+      this.text = (text == null) ? "" : text;
     }
-    
+
     /**
-     * Adds the other {@code Column}'s data to this one's.
-     *
-     * @param other - The other {@code Column} whose data is to be added.
+     * @return The localized text of the remark (without time).
      */
-    private void addColumnData(Column other) {
-      measurement.add(other.measurement);
+    String render() {
+      switch(event) {
+      case DayRecord.EVENT_PUMP_STOP: return Utils.localize("%output.pumpStop%");
+      case DayRecord.EVENT_PUMP_RUN: return Utils.localize("%output.pumpRun%");
+      case DayRecord.EVENT_TBR: return "TBR " + text;
+      case DayRecord.EVENT_TBR_END: return Utils.localize("%output.tbrEnd%");
+      case DayRecord.EVENT_BR_CHANGED: return Utils.localize("%output.brChanged%") + text;
+      case DayRecord.EVENT_OCCLUSION: return Utils.localize("%output.occlusion%");
+      case DayRecord.EVENT_PRIME: return Utils.localize("%output.prime%");
+      case DayRecord.EVENT_CONTROL: return "Ctrl: " + text;
+      default: return text;
+      }
     }
   }
 }
@@ -36,32 +36,85 @@ public class TableFactory {
   private TableFactory() {}
 
   /**
-   * Creates a new Table from the given XML-Document.
+   * Creates a new {@link Table} from the given XML-Document.
    *
-   * @param xmlFile a XML-{@code java.io.File} with the DTD <code>DAY</code> (see <i>files/day.dtd</i>).
+   * @param xmlDoc a XML-{@link org.jdom2.Document} with the DTD <code>DAY</code> (see <i>files/day.dtd</i>).
+   */
+  public static List<Table> createTables(org.jdom2.Document xmlDoc) {
+    List<DayRecord> records = new java.util.ArrayList<>();
+    for(org.jdom2.Element e : xmlDoc.getRootElement().getChildren())
+      records.add(DayRecord.of(e));
+    return createTables(xmlDoc.getRootElement().getAttributeValue("Dt"), records);
+  }
+
+  /**
+   * Creates new {@link Table}s from the given entries of a day (see {@link DayStore#read(String)}).
    *
+   * @param date - The day's date.
+   * @param records - The day's entries.
    */
-  static List<Table> createTables(java.io.File xmlFile) throws java.io.IOException, org.jdom2.JDOMException {
-    return createTables(XML_IO.SAX_BUILDER.build(xmlFile));
+  static List<Table> createTables(String date, List<DayRecord> records) {
+    Builder builder = new Builder(date, ProfileStore.get());
+    for(DayRecord e : records)
+      builder.record(e);
+    return builder.finish();
   }
 
   /**
-   * Creates a new {@link Table} from the given XML-Document.
+   * Creates new {@link Table}s from the given file of a day with DTD <code>DAY</code>.
+   * The entries are streamed into the tables one at a time, neither a XML-{@link org.jdom2.Document}
+   * nor a list of all entries is created.
    *
-   * @param xmlDoc a XML-{@link org.jdom2.Document} with the DTD <code>DAY</code> (see <i>files/day.dtd</i>).
+   * @param file - The day's file.
+   * @param date - The day's date.
+   * @throws java.io.IOException If an I/O exception occurs while reading the file.
+   * @throws org.jdom2.JDOMException If an error occurs while parsing the XML-data of the file.
    */
-  public static List<Table> createTables(org.jdom2.Document xmlDoc) {
-    List<Table> tables = new java.util.ArrayList<>();
-    Table.Column c;
-    Table t;
+  static List<Table> createTables(java.io.File file, String date) throws java.io.IOException, org.jdom2.JDOMException {
+    return createTables(file, date, ProfileStore.get());
+  }
+
+  /**
+   * Creates new {@link Table}s from the given file of a day with DTD <code>DAY</code>.
+   *
+   * @param file - The day's file.
+   * @param date - The day's date.
+   * @param profiles - The {@link ProfileStore} giving the basal rate profile of days without one.
+   * @throws java.io.IOException If an I/O exception occurs while reading the file.
+   * @throws org.jdom2.JDOMException If an error occurs while parsing the XML-data of the file.
+   * @see TableFactory#createTables(java.io.File, String)
+   */
+  static List<Table> createTables(java.io.File file, String date, ProfileStore profiles)
+      throws java.io.IOException, org.jdom2.JDOMException {
+    Builder builder = new Builder(date, profiles);
+    XML_IO.readDay(file, builder);
+    return builder.finish();
+  }
 
-    t = new Table(xmlDoc.getRootElement().getAttributeValue("Dt"));
-    tables.add(t);
+  /**
+   * Builds the {@link Table}s of a day from its entries, received one at a time.
+   */
+  private static final class Builder extends XML_IO.RecordHandler {
+    /** The day's date. */
+    private final String date;
+    /** The store giving the profile of days without one. */
+    private final ProfileStore profiles;
+    /** The tables of the day. */
+    private final List<Table> tables = new java.util.ArrayList<>();
+    /** The current table. */
+    private Table t;
 
-    for(org.jdom2.Element e : xmlDoc.getRootElement().getChildren()) {
+    Builder(String date, ProfileStore profiles) {
+      this.date = date;
+      this.profiles = profiles;
+      t = new Table(date);
+      tables.add(t);
+    }
 
+    @Override
+    void record(DayRecord e) {
       String time, cmd, remark;
-      switch(e.getName()) {
+      switch(e.name) {
       case "BG":
         // the amount of glucose in the blood
         String value = e.getAttributeValue("Val");
@@ -71,31 +124,16 @@ public class TableFactory {
         //String flag = e.getAttributeValue("Flg");
         // if an control was done
         String ctrl = e.getAttributeValue("Ctrl");
-        // the amount of carbohydrates in gram
-        String carb = e.getAttributeValue("Carb");
-        // the insulin amount from manual disposal // TODO: ensure
-        String insulin1 = e.getAttributeValue("Ins1");
-        // the insulin amount from manual disposal // TODO: ensure
-        String insulin2 = e.getAttributeValue("Ins2");
-        // the insulin amount from manual disposal // TODO: ensure
-        String insulin3 = e.getAttributeValue("Ins3");
+        // the amount of carbohydrates in gram (Carb) and the insulin amounts
+        // from manual disposal (Ins1 to Ins3) are read by DayRecord#getCarbs/getInsulin
         // an event (e.g sports)
         String event = e.getAttributeValue("Evt");
         // the meter device
         //String d = e.getAttributeValue("D");
         if(ctrl == null || ctrl.trim().isEmpty()) {
-          c = new Table.Column(time, (value.equals("---") ? "" : value),
-            	(insulin1 == null ? "" : insulin1)
-            			+ (insulin2 == null ? "" : insulin2)
-            			+ (insulin3 == null ? "" : insulin3),
-            	(carb == null ? "" : String.format("%1.1f", Integer.parseInt(carb) / 12.0)));
-          if(!t.addColumn(c)) {
-            t = new Table(t.getDate(), t.getBR());
-            tables.add(t);
-            t.addColumn(c);
-          }
+          addColumn(e.getMinute(), e.getBG(), e.getInsulin(), DayBuffer.toBreadUnits(e.getCarbs()));
         } else {
-          t.addRemark(time, "Ctrl: " + value);
+          t.addRemark(time, DayRecord.EVENT_CONTROL, value);
         }
         break;
       case "BOLUS":
@@ -105,20 +143,14 @@ public class TableFactory {
         String type = e.getAttributeValue("type");
         // TODO: add info
         cmd    	= e.getAttributeValue("cmd");
-        // the insulin amount
-        String amount = e.getAttributeValue("amount");
+        // the insulin amount (amount) is read by DayRecord#getInsulin
         // a comment
         remark = e.getAttributeValue("remark");
 
         if(time.isEmpty()) {
           //t.addComment(remark, amount); // optional BOLUS total + BASAL total
         } else {
-          c = new Table.Column(time, "", amount, "");
-          if(!t.addColumn(c)) {
-            t = new Table(t.getDate(), t.getBR());
-            tables.add(t);
-            t.addColumn(c);
-          }
+          addColumn(e.getMinute(), 0, e.getInsulin(), 0);
         }
         break;
       case "BASAL":
@@ -141,20 +173,19 @@ public class TableFactory {
           if(t.getBR() == null)
             t.setBR(profile);
           else if(!t.getBR().equals(profile))
-            t.addRemark(time, Utils.localize("%output.brChanged%") + profile);
+            t.addRemark(time, DayRecord.EVENT_BR_CHANGED, profile);
         }
         if(remark != null && (remark.equals("Run") || remark.equals("Stop"))) {
-          t.addRemark(time, Utils.localize("%output.pump" + remark + "%"));
+          t.addRemark(time, remark.equals("Run") ? DayRecord.EVENT_PUMP_RUN : DayRecord.EVENT_PUMP_STOP, null);
         } else if(remark != null && remark.matches("changed \\d")) {
           if(!t.getBR().equals("" + remark.charAt(8)))
-            t.addRemark(time, Utils.localize("%output.brChanged%")
-            		+ " " + remark.charAt(8));
+            t.addRemark(time, DayRecord.EVENT_BR_CHANGED, " " + remark.charAt(8));
         } else if(tBRdec != null && (remark != null || time.equals("00:00"))) {
-          t.addRemark(time, "TBR " + tBRdec);
+          t.addRemark(time, DayRecord.EVENT_TBR, tBRdec);
         } else if(tBRinc != null && (remark != null || time.equals("00:00"))) {
-          t.addRemark(time, "TBR " + tBRinc);
+          t.addRemark(time, DayRecord.EVENT_TBR, tBRinc);
         } else if(remark != null && remark.startsWith("TBR End")){
-          t.addRemark(time, Utils.localize("%output.tbrEnd%"));
+          t.addRemark(time, DayRecord.EVENT_TBR_END, null);
         } else {
           // TODO implement other basal data
         }
@@ -169,20 +200,53 @@ public class TableFactory {
 
         if(shortinfo == null) {// e.g. for cartridge changed
           if(!description.equals("cartridge changed"))
-            t.addRemark(time, description);
+            t.addRemark(time, DayRecord.EVENT_OTHER, description);
         } else if(shortinfo.equals("E4")) {    // E4 == occlusion
-          t.addRemark(time, Utils.localize("%output.occlusion%"));
+          t.addRemark(time, DayRecord.EVENT_OCCLUSION, null);
         } else if(shortinfo.endsWith("IU")) {  // prime infusion-set
-          t.addRemark(time, Utils.localize("%output.prime%"));
+          t.addRemark(time, DayRecord.EVENT_PRIME, null);
         } else if(!( shortinfo.equals("E1")    // E1 == cartridge empty
             || shortinfo.equals("W1")		// W1 == cartridge low
             || shortinfo.equals("W2")		// W2 == battery low
             || shortinfo.equals("W8"))) {	// W8 == bolus cancelled
-          t.addRemark(time, description + " (" + shortinfo + ")");
+          t.addRemark(time, DayRecord.EVENT_OTHER, description + " (" + shortinfo + ")");
         }
         break;
       }
     }
-    return tables;
+
+    /**
+     * @return The tables of the day.
+     */
+    List<Table> finish() {
+      if(tables.get(0).getBR() == null) { // no profile in the day's data
+        ProfileStore.Profile profile = profiles.getProfile(date, null);
+        if(profile != null) {
+          for(Table table : tables) {
+            if(table.getBR() == null)
+              table.setBR(profile.name);
+          }
+        }
+      }
+      return tables;
+    }
+
+    /**
+     * Adds a column to the current {@link Table} or, if it is full, to a new one.
+     *
+     * @param minute - The minute of the day; columns without a valid time are not added.
+     * @param bg - The bg in mg/dl or <code>0</code>.
+     * @param insulin - The total insulin units.
+     * @param breadUnits - The carbohydrates in bread units.
+     */
+    private void addColumn(int minute, int bg, float insulin, float breadUnits) {
+      if(minute < 0)
+        return;
+      if(!t.addColumn(minute, bg, insulin, breadUnits)) {
+        t = new Table(t.getDate(), t.getBR());
+        tables.add(t);
+        t.addColumn(minute, bg, insulin, breadUnits);
+      }
+    }
   }
 }
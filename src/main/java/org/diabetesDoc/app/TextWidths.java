@@ -0,0 +1,230 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * This Class measures texts in a {@link PDFont} and caches the widths: per text for short texts,
+ * which repeat on every table (headers, weekdays, numbers, axis labels), and per glyph,
+ * so new texts are measured without asking the font again.<br>
+ * On top of it, {@link TextWidths#breakLines(String, String, float, float, int)} breaks a text
+ * into lines by its measured width.
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class TextWidths {
+  /** The longest texts, whose widths are cached. */
+  private static final int MAX_CACHED_LENGTH = 32;
+  /** The maximal number of texts, whose widths are cached. */
+  private static final int MAX_CACHED_TEXTS = 4096;
+
+  /** The {@code TextWidths} of the fonts used. */
+  private static final Map<PDFont, TextWidths> FONTS = new ConcurrentHashMap<PDFont, TextWidths>();
+
+  /** The font. */
+  private final PDFont font;
+
+  /** The widths of the glyphs <code>0</code> to <code>255</code>, <code>NaN</code> if not yet measured. */
+  private final float[] glyphWidths = new float[256];
+
+  /** The widths of the other glyphs. */
+  private final Map<Character, Float> otherGlyphWidths = new ConcurrentHashMap<Character, Float>();
+
+  /** The widths of short texts. */
+  private final Map<String, Float> textWidths = new ConcurrentHashMap<String, Float>();
+
+  private TextWidths(final PDFont font) {
+    this.font = font;
+    java.util.Arrays.fill(glyphWidths, Float.NaN);
+  }
+
+  /**
+   * @param font - The {@link PDFont}.
+   * @return The {@code TextWidths} of the font.
+   */
+  static TextWidths of(final PDFont font) {
+    TextWidths widths = FONTS.get(font);
+    if(widths == null) {
+      FONTS.putIfAbsent(font, new TextWidths(font));
+      widths = FONTS.get(font);
+    }
+    return widths;
+  }
+
+  /**
+   * Returns the width of the given text as {@link PDFont#getStringWidth(String)} does:
+   * the sum of the widths of its glyphs in 1/1000 of the font size.
+   *
+   * @param txt - The text.
+   * @return The width.
+   * @throws IOException If an I/O exception occurs while reading the font's widths.
+   */
+  float getWidth(final String txt) throws IOException {
+    if(txt.length() > MAX_CACHED_LENGTH)
+      return measure(txt);
+    Float width = textWidths.get(txt);
+    if(width == null) {
+      width = measure(txt);
+      if(textWidths.size() >= MAX_CACHED_TEXTS)
+        textWidths.clear();
+      textWidths.put(txt, width);
+    }
+    return width;
+  }
+
+  /**
+   * Returns the width of the given text in the given font size.
+   *
+   * @param txt - The text.
+   * @param fontSize - The font size.
+   * @return The width in points.
+   * @throws IOException If an I/O exception occurs while reading the font's widths.
+   */
+  float getWidth(final String txt, final float fontSize) throws IOException {
+    return getWidth(txt) / 1000 * fontSize;
+  }
+
+  /**
+   * @param txt - The text.
+   * @return The sum of the widths of the text's glyphs.
+   * @throws IOException If an I/O exception occurs while reading the font's widths.
+   */
+  private float measure(final String txt) throws IOException {
+    float width = 0;
+    for(int i = 0; i < txt.length(); i++)
+      width += getWidth(txt.charAt(i));
+    return width;
+  }
+
+  /**
+   * @param c - The glyph's character.
+   * @return The glyph's width.
+   * @throws IOException If an I/O exception occurs while reading the font's widths.
+   */
+  private float getWidth(final char c) throws IOException {
+    if(c < glyphWidths.length) {
+      float width = glyphWidths[c];
+      if(Float.isNaN(width)) {
+        width = measure(c);
+        glyphWidths[c] = width;
+      }
+      return width;
+    }
+    Float width = otherGlyphWidths.get(c);
+    if(width == null) {
+      width = measure(c);
+      otherGlyphWidths.put(c, width);
+    }
+    return width;
+  }
+
+  /**
+   * Asks the font for the width of a glyph. The fonts are shared by the documents
+   * rendered in parallel, so they are asked by one thread at a time.
+   *
+   * @param c - The glyph's character.
+   * @return The glyph's width.
+   * @throws IOException If an I/O exception occurs while reading the font's widths.
+   */
+  private float measure(final char c) throws IOException {
+    synchronized(font) {
+      return font.getStringWidth(String.valueOf(c));
+    }
+  }
+
+  /**
+   * Breaks the given text in a single pass into lines not wider than the given width:
+   * the text is broken at the separators (which are dropped there), a part wider than a line
+   * at its last space fitting or else at its last glyph fitting. The last line allowed takes
+   * the rest of the text, whatever its width.
+   *
+   * @param txt - The text.
+   * @param separator - The separator of the text's parts (e.g. <code>",  "</code>).
+   * @param maxWidth - The width of a line in points.
+   * @param fontSize - The font size.
+   * @param maxLines - The maximal number of lines.
+   * @return The lines, at least one.
+   * @throws IOException If an I/O exception occurs while reading the font's widths.
+   */
+  List<String> breakLines(final String txt, final String separator, final float maxWidth, final float fontSize,
+      final int maxLines) throws IOException {
+    List<String> lines = new ArrayList<String>(maxLines);
+    float max = maxWidth * 1000 / fontSize, separatorWidth = getWidth(separator);
+    int lineStart = 0, pos = 0;
+    float width = 0;
+    while(lines.size() < maxLines - 1) {
+      int end = txt.indexOf(separator, pos);
+      if(end < 0)
+        end = txt.length();
+      float partWidth = getWidth(txt.substring(pos, end));
+      if(pos > lineStart && width + separatorWidth + partWidth > max) {
+        // the part starts a new line
+        lines.add(txt.substring(lineStart, pos - separator.length()));
+        lineStart = pos;
+        width = 0;
+        continue;
+      }
+      if(pos == lineStart && partWidth > max) {
+        // the part is too wide for a line on its own
+        int cut = cut(txt, pos, end, max);
+        lines.add(txt.substring(lineStart, cut));
+        pos = lineStart = (cut < txt.length() && txt.charAt(cut) == ' ') ? cut + 1 : cut;
+        width = 0;
+        continue;
+      }
+      width += (pos > lineStart ? separatorWidth : 0) + partWidth;
+      if(end == txt.length())
+        break;
+      pos = end + separator.length();
+    }
+    lines.add(txt.substring(lineStart));
+    return lines;
+  }
+
+  /**
+   * @param txt - The text.
+   * @param from - The beginning of the part.
+   * @param to - The end of the part.
+   * @param max - The maximal width.
+   * @return The end of the longest beginning of the part not wider than the maximal width,
+   *         ending before a space, if possible, and with at least one glyph.
+   * @throws IOException If an I/O exception occurs while reading the font's widths.
+   */
+  private int cut(final String txt, final int from, final int to, final float max) throws IOException {
+    float width = 0;
+    int end = from, space = -1;
+    while(end < to && (end == from || width + getWidth(txt.charAt(end)) <= max)) {
+      width += getWidth(txt.charAt(end));
+      if(txt.charAt(end) == ' ' && end > from)
+        space = end;
+      end++;
+    }
+    return (end < to && space > from) ? space : end;
+  }
+}
@@ -0,0 +1,464 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * This Class holds the readings of the whole history in memory, as primitive columns
+ * sorted by time: the minute since 1970-01-01 (local time), the bg value, the insulin,
+ * the carbohydrates and the event code of every reading (see {@link DayBuffer}).
+ * Questions spanning months or years are answered from these columns without reading any day,
+ * statistics of any range of days from the summaries per day, week, month and year (see {@link Rollups}).<br>
+ * The columns are kept in the snapshot file <i>xml/timeseries.snapshot</i>, together with the
+ * fingerprint of every day (see {@link DayCatalog}). When loading and after every import or edit
+ * (see {@link DayStore#flush()}) only the days changed since the snapshot are read again.
+ * The history is loaded at startup, if the setting <code>timeSeries</code> is <code>true</code>,
+ * otherwise when first used.
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class TimeSeries {
+  /** The name of the snapshot file in {@link DayStore#DIR}. */
+  static final String FILE_NAME = "timeseries.snapshot";
+
+  /** The magic number of the snapshot file: <code>"DDTS"</code>. */
+  private static final int MAGIC = 0x44445453;
+
+  /** The version of the format of the snapshot file. */
+  private static final int VERSION = 1;
+
+  /** The minutes per day. */
+  private static final int DAY = 1440;
+
+  /** The history in use or <code>null</code>, if not yet loaded. */
+  private static TimeSeries current;
+
+  /** The days as days since 1970-01-01, ascending. */
+  private final int[] days;
+
+  /** The fingerprints of the days (see {@link DayCatalog}). */
+  private final String[] hashes;
+
+  /** The index of the first reading of every day and, at last, the number of readings. */
+  private final int[] firstRows;
+
+  /** The minutes since 1970-01-01 (local time) of the readings. */
+  private final int[] minutes;
+
+  /** The bg values in mg/dl or <code>0</code>. */
+  private final short[] bg;
+
+  /** The total insulin units. */
+  private final float[] bolus;
+
+  /** The carbohydrates in bread units. */
+  private final float[] carbs;
+
+  /** The event codes (see {@link DayRecord#getEventCode()}). */
+  private final short[] events;
+
+  /** The statistics per day, week, month and year. */
+  private Rollups rollups;
+
+  /** The sketches of the bg values by time of day per day. */
+  private GlucoseProfile profile;
+
+  /**
+   * Creates a new, empty {@code TimeSeries} to be filled.
+   *
+   * @param dayCount - The number of days.
+   * @param rowCount - The number of readings.
+   */
+  private TimeSeries(final int dayCount, final int rowCount) {
+    days = new int[dayCount];
+    hashes = new String[dayCount];
+    firstRows = new int[dayCount + 1];
+    minutes = new int[rowCount];
+    bg = new short[rowCount];
+    bolus = new float[rowCount];
+    carbs = new float[rowCount];
+    events = new short[rowCount];
+  }
+
+  /**
+   * Returns the history of the current {@link DayStore}, loading it if necessary.
+   *
+   * @return The {@code TimeSeries}.
+   * @throws IOException If an I/O exception occurs while loading the history.
+   */
+  static TimeSeries get() throws IOException {
+    // the store is got first, as selecting it may copy the days and refresh the history
+    DayStore store = DayStore.get();
+    synchronized(TimeSeries.class) {
+      if(current == null) {
+        File file = new File(DayStore.DIR, FILE_NAME);
+        current = update(store, load(file), file);
+      }
+      return current;
+    }
+  }
+
+  /**
+   * Loads the history in a background thread, if the setting <code>timeSeries</code> is <code>true</code>.
+   */
+  static void preload() {
+    if(!Boolean.parseBoolean(DiabetesDoc.getSetting("timeSeries")))
+      return;
+    Thread t = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          get();
+        } catch(IOException e) {
+          e.printStackTrace();
+        }
+      }
+    }, "TimeSeries");
+    t.setDaemon(true);
+    t.start();
+  }
+
+  /**
+   * Brings the history up to date with the given store, if it is loaded.
+   * Only the days changed are read again.
+   *
+   * @param store - The {@link DayStore} written to.
+   * @throws IOException If an I/O exception occurs while reading the days or writing the snapshot.
+   */
+  static synchronized void refresh(final DayStore store) throws IOException {
+    if(current != null)
+      current = update(store, current, new File(DayStore.DIR, FILE_NAME));
+  }
+
+  /**
+   * Creates the history of the store, taking the unchanged days from the old history,
+   * and saves it, if anything changed.
+   *
+   * @param store - The {@link DayStore}.
+   * @param old - The old history or <code>null</code>.
+   * @param file - The snapshot file.
+   * @return The history.
+   * @throws IOException If an I/O exception occurs while reading the days or writing the snapshot.
+   */
+  private static TimeSeries update(final DayStore store, final TimeSeries old, final File file) throws IOException {
+    DayCatalog catalog = store.getCatalog();
+    List<String> dates = catalog.getDates();
+    for(java.util.Iterator<String> it = dates.iterator(); it.hasNext(); ) {
+      // a file of an invalid date (e.g. February 29th of no leap year) would break the order
+      String date = it.next();
+      if(!date.equals(DateUtils.toDateString(DateUtils.toEpochDay(date), false)))
+        it.remove();
+    }
+    int[] oldDays = new int[dates.size()];
+    String[] hashes = new String[dates.size()];
+    List<String> changed = new ArrayList<String>();
+    for(int i = 0; i < dates.size(); i++) {
+      DayCatalog.Entry entry = catalog.get(dates.get(i));
+      hashes[i] = (entry == null) ? "" : entry.hash;
+      oldDays[i] = (old == null) ? -1 : old.indexOfDay(DateUtils.toEpochDay(dates.get(i)));
+      if(oldDays[i] >= 0 && !old.hashes[oldDays[i]].equals(hashes[i]))
+        oldDays[i] = -1;
+      if(oldDays[i] < 0)
+        changed.add(dates.get(i));
+    }
+    if(old != null && changed.isEmpty() && old.days.length == dates.size())
+      return old;
+
+    // read the changed days in parallel
+    Map<String, DayBuffer> readings = new HashMap<String, DayBuffer>();
+    try {
+      for(DayBuffer b : changed.parallelStream().map(new Function<String, DayBuffer>() {
+        @Override
+        public DayBuffer apply(final String date) {
+          try {
+            return store.readReadings(date);
+          } catch(IOException e) {
+            throw new java.io.UncheckedIOException(e);
+          } catch(org.jdom2.JDOMException e) {
+            e.printStackTrace(); // left out like by DayStore.stream(List)
+            return null;
+          }
+        }
+      }).collect(Collectors.<DayBuffer>toList())) {
+        if(b != null)
+          readings.put(b.getDate(), b);
+      }
+    } catch(java.io.UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    int rowCount = 0;
+    for(int i = 0; i < dates.size(); i++) {
+      if(oldDays[i] >= 0)
+        rowCount += old.firstRows[oldDays[i] + 1] - old.firstRows[oldDays[i]];
+      else if(readings.containsKey(dates.get(i)))
+        rowCount += readings.get(dates.get(i)).size();
+    }
+    TimeSeries ts = new TimeSeries(dates.size(), rowCount);
+    int row = 0;
+    for(int i = 0; i < dates.size(); i++) {
+      int day = (int) DateUtils.toEpochDay(dates.get(i));
+      ts.days[i] = day;
+      ts.hashes[i] = hashes[i];
+      ts.firstRows[i] = row;
+      if(oldDays[i] >= 0) {
+        int from = old.firstRows[oldDays[i]], n = old.firstRows[oldDays[i] + 1] - from;
+        System.arraycopy(old.minutes, from, ts.minutes, row, n);
+        System.arraycopy(old.bg, from, ts.bg, row, n);
+        System.arraycopy(old.bolus, from, ts.bolus, row, n);
+        System.arraycopy(old.carbs, from, ts.carbs, row, n);
+        System.arraycopy(old.events, from, ts.events, row, n);
+        row += n;
+      } else {
+        DayBuffer b = readings.get(dates.get(i));
+        for(int j = 0; b != null && j < b.size(); j++, row++) {
+          ts.minutes[row] = day * DAY + b.getMinute(j);
+          ts.bg[row] = (short) b.getBG(j);
+          ts.bolus[row] = b.getBolus(j);
+          ts.carbs[row] = b.getCarbs(j);
+          ts.events[row] = b.getEvent(j);
+        }
+      }
+    }
+    ts.firstRows[dates.size()] = row;
+    if(old == null) {
+      ts.rollups = Rollups.of(ts);
+      ts.profile = GlucoseProfile.of(ts);
+    } else {
+      // the statistics and sketches of the days changed, added and removed are computed again
+      Set<Long> changedDays = new HashSet<Long>();
+      for(String date : changed)
+        changedDays.add(DateUtils.toEpochDay(date));
+      for(int day : old.days) {
+        if(ts.indexOfDay(day) < 0)
+          changedDays.add((long) day);
+      }
+      ts.rollups = old.rollups.update(ts, changedDays);
+      ts.profile = old.profile.update(ts, changedDays);
+    }
+    ts.save(file);
+    return ts;
+  }
+
+  /**
+   * Loads the history from the snapshot file.
+   *
+   * @param file - The snapshot file.
+   * @return The history or <code>null</code>, if there is no valid snapshot.
+   */
+  private static TimeSeries load(final File file) {
+    if(!file.isFile())
+      return null;
+    try {
+      ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+      if(buf.getInt() != MAGIC || buf.getInt() != VERSION)
+        return null;
+      int dayCount = buf.getInt(), rowCount = buf.getInt();
+      TimeSeries ts = new TimeSeries(dayCount, rowCount);
+      for(int i = 0; i < dayCount; i++) {
+        ts.days[i] = buf.getInt();
+        ts.firstRows[i] = buf.getInt();
+        byte[] hash = new byte[buf.get() & 0xff];
+        buf.get(hash);
+        ts.hashes[i] = new String(hash, StandardCharsets.US_ASCII);
+      }
+      ts.firstRows[dayCount] = rowCount;
+      buf.asIntBuffer().get(ts.minutes);
+      buf.position(buf.position() + 4 * rowCount);
+      buf.asShortBuffer().get(ts.bg);
+      buf.position(buf.position() + 2 * rowCount);
+      buf.asFloatBuffer().get(ts.bolus);
+      buf.position(buf.position() + 4 * rowCount);
+      buf.asFloatBuffer().get(ts.carbs);
+      buf.position(buf.position() + 4 * rowCount);
+      buf.asShortBuffer().get(ts.events);
+      ts.rollups = Rollups.of(ts);
+      ts.profile = GlucoseProfile.of(ts);
+      return ts;
+    } catch(IOException | BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+      // the snapshot is rebuilt from the days
+      return null;
+    }
+  }
+
+  /**
+   * Saves the history into the snapshot file.
+   *
+   * @param file - The snapshot file.
+   * @throws IOException If an I/O exception occurs while writing.
+   */
+  private void save(final File file) throws IOException {
+    file.getParentFile().mkdirs();
+    File tmp = new File(file.getParentFile(), "." + file.getName() + ".tmp");
+    try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(days.length);
+      out.writeInt(minutes.length);
+      for(int i = 0; i < days.length; i++) {
+        out.writeInt(days[i]);
+        out.writeInt(firstRows[i]);
+        byte[] hash = hashes[i].getBytes(StandardCharsets.US_ASCII);
+        out.writeByte(hash.length);
+        out.write(hash);
+      }
+      for(int m : minutes)
+        out.writeInt(m);
+      for(short b : bg)
+        out.writeShort(b);
+      for(float f : bolus)
+        out.writeFloat(f);
+      for(float f : carbs)
+        out.writeFloat(f);
+      for(short e : events)
+        out.writeShort(e);
+    }
+    DayWriter.replace(tmp, file);
+  }
+
+  /**
+   * @param epochDay - The days since 1970-01-01.
+   * @return The index of the day or <code>-1</code>, if it is not stored.
+   */
+  private int indexOfDay(final long epochDay) {
+    int i = java.util.Arrays.binarySearch(days, (int) epochDay);
+    return (i < 0) ? -1 : i;
+  }
+
+  /**
+   * @return The statistics per day, week, month and year of the history.
+   */
+  Rollups getRollups() {
+    return rollups;
+  }
+
+  /**
+   * @return The sketches of the bg values by time of day (see {@link GlucoseProfile}).
+   */
+  GlucoseProfile getProfile() {
+    return profile;
+  }
+
+  /** @return The number of readings. */
+  int size() {
+    return minutes.length;
+  }
+
+  /**
+   * @param epochMinute - The minute since 1970-01-01 (local time).
+   * @return The index of the first reading at or after the given minute.
+   */
+  int indexOf(final long epochMinute) {
+    int low = 0, high = minutes.length;
+    while(low < high) {
+      int mid = (low + high) >>> 1;
+      if(minutes[mid] < epochMinute)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+    return low;
+  }
+
+  /**
+   * @param epochDay - The days since 1970-01-01.
+   * @return The index of the first reading at or after the beginning of the given day.
+   */
+  int indexOfFirst(final long epochDay) {
+    return indexOf(epochDay * DAY);
+  }
+
+  /** @return The minute since 1970-01-01 (local time) of the reading. */
+  long getEpochMinute(final int i) {
+    return minutes[i];
+  }
+
+  /** @return The minute of the day of the reading. */
+  int getMinuteOfDay(final int i) {
+    return Math.floorMod(minutes[i], DAY);
+  }
+
+  /** @return The days since 1970-01-01 of the reading. */
+  long getEpochDay(final int i) {
+    return Math.floorDiv(minutes[i], DAY);
+  }
+
+  /** @return The bg of the reading in mg/dl or <code>0</code>. */
+  int getBG(final int i) {
+    return bg[i];
+  }
+
+  /** @return The total insulin units of the reading. */
+  float getBolus(final int i) {
+    return bolus[i];
+  }
+
+  /** @return The carbohydrates of the reading in bread units. */
+  float getCarbs(final int i) {
+    return carbs[i];
+  }
+
+  /** @return The event code of the reading (see {@link DayRecord#getEventCode()}). */
+  short getEvent(final int i) {
+    return events[i];
+  }
+
+  /**
+   * Returns the mean bg value per hour of the day between the given days.
+   *
+   * @param fromDay - The first day as days since 1970-01-01 (inclusive).
+   * @param toDay - The last day as days since 1970-01-01 (inclusive).
+   * @return The 24 mean values in mg/dl, <code>0</code> for hours without bg values.
+   */
+  double[] meanBGByHour(final long fromDay, final long toDay) {
+    long[] sums = new long[24];
+    int[] counts = new int[24];
+    for(int i = indexOfFirst(fromDay), end = indexOfFirst(toDay + 1); i < end; i++) {
+      if(bg[i] > 0) {
+        int hour = getMinuteOfDay(i) / 60;
+        sums[hour] += bg[i];
+        counts[hour]++;
+      }
+    }
+    double[] means = new double[24];
+    for(int h = 0; h < 24; h++)
+      means[h] = (counts[h] == 0) ? 0 : (double) sums[h] / counts[h];
+    return means;
+  }
+}
@@ -21,14 +21,16 @@ package org.diabetesDoc.app;
 //
 ////////////////////////////////////////////////////////////////////////////////
 
-import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.PropertyResourceBundle;
 import java.util.ResourceBundle;
-
-import org.jdom2.Element;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class provides useful methods for different tasks.
@@ -36,37 +38,21 @@ import org.jdom2.Element;
  * @version 0.1 - last modified 2017-10-18
  */
 final class Utils {
-  /** The last used {@link ResourceBundle} for language binding. */
-  private static ResourceBundle currResourceBundle;
+  /**
+   * The last used {@link ResourceBundle} for language binding with its parsed texts,
+   * replaced as a whole when the language changes.
+   */
+  private static Templates currTemplates;
 
   /**
    * The language of the last used {@link ResourceBundle}
-   * @see Utils#currResourceBundle
+   * @see Utils#currTemplates
    */
   private static Locale currLang;
 
   /** No constructor, only static methods. */
   private Utils() {}
 
-  private static Element factors[] = null;
-  static {
-    try {
-      File[] f = new File("xml/bolusfactors/").listFiles();
-      if(f != null) {
-        factors = new Element[f.length];
-        for(int i = 0; i < f.length; i++) {
-          try {
-            factors[i] = XML_IO.SAX_BUILDER.build(f[i]).getRootElement();
-          } catch(IOException | org.jdom2.JDOMException e) {
-            e.printStackTrace();
-          }
-        }
-      }
-    } catch(Exception e) {
-      e.printStackTrace();
-    }
-  }
-  
   /**
    * Returns the language's {@link ResourceBundle}, whereby the
    * language is set from {@link Locale#getDefault().
@@ -76,17 +62,27 @@ final class Utils {
    * @see Utils#getLang(Locale)
    */
   public static ResourceBundle getLang() throws IOException {
+    return getTemplates().bundle;
+  }
+
+  /**
+   * Returns the {@link Templates} of the language set by {@link Locale#getDefault()}.
+   *
+   * @return The {@code Templates} with the language's {@code ResourceBundle}.
+   * @see Utils#getLang()
+   */
+  private static synchronized Templates getTemplates() throws IOException {
     if(Locale.getDefault().equals(currLang)) {
       // all done
     } else {
       currLang = Locale.getDefault();
       if(currLang.equals(Locale.GERMANY)) {
-        currResourceBundle = new PropertyResourceBundle(Utils.class.getResourceAsStream("/locale/lang_de.properties"));
+        currTemplates = new Templates(new PropertyResourceBundle(Utils.class.getResourceAsStream("/locale/lang_de.properties")));
       } else {
-        currResourceBundle = new PropertyResourceBundle(Utils.class.getResourceAsStream("/locale/lang_en.properties"));
+        currTemplates = new Templates(new PropertyResourceBundle(Utils.class.getResourceAsStream("/locale/lang_en.properties")));
       }
     }
-    return currResourceBundle;
+    return currTemplates;
   }
 
   /**
@@ -103,6 +99,7 @@ final class Utils {
   /**
    * Localizes the given text to the language set by {@link Locale#getDefault()}
    * and replaces the given part.
+   * The texts are parsed once per language (see {@link Templates}).
    *
    * @param txt - The text to localize.
    * @param replacement - The replacement to do in the text.
@@ -111,17 +108,8 @@ final class Utils {
    */
   public static String localize(String txt, String replacement) {
     try {
-      ResourceBundle rb = getLang();
-      String key, value;
-      java.util.Enumeration<String> keys = rb.getKeys();
-      while(keys.hasMoreElements()) {
-        key = keys.nextElement();
-        if(txt.contains("%" + key + "%")) {
-          value = rb.getString(key);
-          txt = txt.replaceAll("%" + key + "%", value);
-        }
-      }
-
+      if(txt.indexOf('%') >= 0)
+        txt = getTemplates().localize(txt);
     } catch(IOException e) {
       e.printStackTrace();
     }
@@ -132,6 +120,78 @@ final class Utils {
     return txt;
   }
 
+  /**
+   * The texts to localize parsed with the {@link ResourceBundle} of one language.
+   * A text is parsed into literal parts and keys <code>%key%</code> once, and localized by
+   * joining the literal parts and the values of the keys. As the parsed texts belong to their
+   * {@code Templates}, they are dropped together with the {@code ResourceBundle}, when the
+   * language changes.
+   */
+  private static final class Templates {
+    /** The maximal number of parsed texts kept, further texts are parsed on every use. */
+    private static final int MAX_TEMPLATES = 1024;
+
+    /** The {@code ResourceBundle} of the language. */
+    final ResourceBundle bundle;
+
+    /** The parsed texts by the text: literal parts at even and keys at odd indices. */
+    private final Map<String, String[]> templates = new ConcurrentHashMap<String, String[]>();
+
+    Templates(ResourceBundle bundle) {
+      this.bundle = bundle;
+    }
+
+    /**
+     * Localizes the given text.
+     *
+     * @param txt - The text to localize.
+     * @return The localized text.
+     */
+    String localize(String txt) {
+      String[] parts = templates.get(txt);
+      if(parts == null) {
+        parts = parse(txt);
+        if(templates.size() < MAX_TEMPLATES)
+          templates.put(txt, parts);
+      }
+      if(parts.length == 1)
+        return parts[0];
+      StringBuilder sb = new StringBuilder(txt.length() + 32);
+      for(int i = 0; i < parts.length; i++)
+        sb.append((i % 2 == 0) ? parts[i] : bundle.getString(parts[i]));
+      return sb.toString();
+    }
+
+    /**
+     * Parses the given text into literal parts and keys <code>%key%</code> of the {@code ResourceBundle}.
+     * Text between two <code>%</code>, which is no key, is kept as it is.
+     *
+     * @param txt - The text to localize.
+     * @return The literal parts at even and the keys at odd indices, starting and ending with a literal part.
+     */
+    private String[] parse(String txt) {
+      List<String> parts = new ArrayList<String>();
+      int pos = 0, start = txt.indexOf('%');
+      while(start >= 0) {
+        int end = txt.indexOf('%', start + 1);
+        if(end < 0)
+          break;
+        String key = txt.substring(start + 1, end);
+        if(bundle.containsKey(key)) {
+          parts.add(txt.substring(pos, start));
+          parts.add(key);
+          pos = end + 1;
+          start = txt.indexOf('%', pos);
+        } else {
+          // the closing '%' may open the next key
+          start = end;
+        }
+      }
+      parts.add(txt.substring(pos));
+      return parts.toArray(new String[parts.size()]);
+    }
+  }
+
   /**
    * Localize the day to the language set by {@link Locale#getDefault()}.
    *
@@ -139,7 +199,18 @@ final class Utils {
    * @return The localized day.
    */
   public static String localizeDayOfWeek(Calendar date) {
-    return String.format("%tA", date);
+    return DateUtils.getWeekdayName(date.get(Calendar.DAY_OF_WEEK));
+  }
+
+  /**
+   * Localize the day to the language set by {@link Locale#getDefault()}.
+   *
+   * @param date - The date with the format <code>YYYY-MM-DD</code>,
+   *               <code>MM/DD/YY</code> (since 2000) or <code>DD.MM.YYYY</code>
+   * @return The localized day.
+   */
+  public static String localizeDayOfWeek(String date) {
+    return DateUtils.getWeekdayName(DateUtils.dayOfWeek(DateUtils.toEpochDay(date)));
   }
 
   /**
@@ -149,7 +220,24 @@ final class Utils {
    * @return The {@code String} with the format <code>YYYY-MM-DD</code>.
    */
   public static String toDateString(final Calendar c) {
-    return String.format("%tF", c);
+    return DateUtils.toDateString(c.get(Calendar.YEAR), c.get(Calendar.MONTH) + 1, c.get(Calendar.DAY_OF_MONTH), false);
+  }
+
+  /**
+   * Checks, if the given {@code String} is a date with the format <code>YYYY-MM-DD</code>.
+   *
+   * @param s - The {@code String} to check.
+   * @return <b><code>true</code></b>, if it is such a date;
+   *         <b><code>false</code></b>, otherwise.
+   */
+  public static boolean isDateString(final String s) {
+    if(s.length() != 10 || s.charAt(4) != '-' || s.charAt(7) != '-')
+      return false;
+    for(int i = 0; i < 10; i++) {
+      if(i != 4 && i != 7 && (s.charAt(i) < '0' || s.charAt(i) > '9'))
+        return false;
+    }
+    return true;
   }
 
   /**
@@ -161,11 +249,8 @@ final class Utils {
    *          <code>YYYY-MM-DD</code> otherwise).
    */
   public static String localizeDateString(final Calendar c) {
-    if(Locale.getDefault().equals(Locale.GERMANY)) {
-      return String.format("%td.%<tm.%<tY", c);
-    } else {
-      return String.format("%tF", c);
-    }
+    return DateUtils.toDateString(c.get(Calendar.YEAR), c.get(Calendar.MONTH) + 1, c.get(Calendar.DAY_OF_MONTH),
+        Locale.getDefault().equals(Locale.GERMANY));
   }
 
   /**
@@ -176,21 +261,20 @@ final class Utils {
    * @return The {@code Calendar} representation (with <code>hh:mm:ss == 00:00:00</code>).
    */
   public static Calendar toCalendar(final String date) {
-    Calendar c = Calendar.getInstance();
-    c.clear();
-    if(date.charAt(4) == '-') // GB and ISO-8601
-      c.set(Integer.parseInt(date.split("-")[0]),
-          Integer.parseInt(date.split("-")[1])-1,
-          Integer.parseInt(date.split("-")[2]));
-    else if(date.charAt(2) == '.') // DE
-      c.set(Integer.parseInt(date.split(".")[2]),
-          Integer.parseInt(date.split(".")[1])-1,
-          Integer.parseInt(date.split(".")[0]));
-    else // US
-      c.set(Integer.parseInt("20" + date.split("/")[2]),
-          Integer.parseInt(date.split("/")[0])-1,
-          Integer.parseInt(date.split("/")[1]));
-    return c;
+    int ymd = DateUtils.toYearMonthDay(DateUtils.toEpochDay(date));
+    return new GregorianCalendar(ymd / 10000, ymd / 100 % 100 - 1, ymd % 100);
+  }
+
+  /**
+   * Converts the given date {@code String} to milliseconds.
+   *
+   * @param date - The date with the format <code>YYYY-MM-DD</code>,
+   *               <code>MM/DD/YY</code> (since 2000) or <code>DD.MM.YYYY</code>
+   * @return The milliseconds since 1970-01-01 00:00 UTC of the beginning of the day
+   *         in the default time zone, as {@code toCalendar(date).getTimeInMillis()}.
+   */
+  public static long toMillis(final String date) {
+    return DateUtils.toMillis(DateUtils.toEpochDay(date));
   }
 
   /**
@@ -204,7 +288,29 @@ final class Utils {
    *          <code>YYYY-MM-DD</code> otherwise).
    */
   public static String localizeDateString(String date) {
-    return Utils.localizeDateString(Utils.toCalendar(date));
+    return DateUtils.toDateString(DateUtils.toEpochDay(date), Locale.getDefault().equals(Locale.GERMANY));
+  }
+
+  /**
+   * Converts the given minute of the day to a time {@code String}.
+   *
+   * @param minute - The minute of the day.
+   * @return The time with the format <code>hh:mm</code>.
+   */
+  public static String toTimeString(final int minute) {
+    char[] time = { (char) ('0' + minute / 600), (char) ('0' + minute / 60 % 10), ':',
+                    (char) ('0' + minute % 60 / 10), (char) ('0' + minute % 10) };
+    return new String(time);
+  }
+
+  /**
+   * Converts the given time {@code String} to the minute of the day.
+   *
+   * @param time - The time with the format <code>hh:mm</code>.
+   * @return The minute of the day or <code>-1</code>, if the time is not of the format <code>hh:mm</code>.
+   */
+  public static int toMinute(final String time) {
+    return DateUtils.toMinute(time);
   }
 
   /**
@@ -215,6 +321,9 @@ final class Utils {
    * @return The time difference in minutes.
    */
   public static int difference(String time1, String time2) {
+    int m1 = DateUtils.toMinute(time1), m2 = DateUtils.toMinute(time2);
+    if(m1 >= 0 && m2 >= 0)
+      return m2 - m1;
     String t1[] = time1.split(":");
     String t2[] = time2.split(":");
 
@@ -222,23 +331,26 @@ final class Utils {
         + Integer.parseInt(t2[1]) - Integer.parseInt(t1[1]);
   }
   
+  /**
+   * Returns the bolus factor for carbohydrates at the given time (see {@link BolusFactorIndex}).
+   *
+   * @param date - The date and time.
+   * @return The factor in IU per gram or <code>0</code>, if no factor is defined.
+   */
   public static double getBolusFactorCarbs(Calendar date) {
-    double factor = 0;
-    if(factors != null) {
-      java.util.List<Element> periods = null;
-      for(int i = 0; i < factors.length; i++) {
-        if(factors[i] == null) continue;
-        if(Utils.toCalendar(factors[i].getAttributeValue("begin")).before(date))
-          periods = factors[i].getChildren();
-      }
-      String time = String.format("%tR", date);
-      if(periods != null) {
-        for(Element period : periods) {
-          if(difference(time, period.getAttributeValue("begin")) < 0)
-            factor = Double.parseDouble(period.getAttributeValue("khfactor"));
-        }
-      }
-    }
-    return factor;
+    return BolusFactorIndex.get().getFactor(date);
+  }
+
+  /**
+   * Converts the given bytes (e.g. a hash) to a hexadecimal {@code String}.
+   *
+   * @param bytes - The bytes to convert.
+   * @return The hexadecimal {@code String} with two lower case digits per byte.
+   */
+  public static String toHexString(final byte[] bytes) {
+    StringBuilder hex = new StringBuilder(2 * bytes.length);
+    for(byte b : bytes)
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    return hex.toString();
   }
 }
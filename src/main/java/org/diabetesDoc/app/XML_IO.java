@@ -24,13 +24,17 @@ package org.diabetesDoc.app;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.jdom2.DocType;
 import org.jdom2.Document;
 import org.jdom2.Element;
-import org.jdom2.ProcessingInstruction;
 import org.jdom2.JDOMException;
 import org.jdom2.input.SAXBuilder;
 import org.jdom2.output.XMLOutputter;
@@ -48,149 +52,266 @@ final class XML_IO {
   private static final XMLOutputter XML_OUTPUTTER = new XMLOutputter( org.jdom2.output.Format.getPrettyFormat() );
 
   /**
-   * The {@link Comparator} to compare {@link Element}s of a XML-{@link Document}
-   * with DTD <code>DAY</code> (see <i>files/day.dtd</i>).
+   * The result of {@link XML_IO#writeDay(String, List)}.
    */
-  static final Comparator<Element> DAY_ELEMENT_COMPARATOR = new Comparator<Element>() {
-    /**
-     * Compares the two {@link Element}s by the attribute Dt (date), Tm (time) and by the name.
-     *
-     * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
-     */
-    @Override
-    public int compare(final Element e1, final Element e2) {
-      // compare dates
-      if( !(e1.getAttributeValue("Dt")).equals(e2.getAttributeValue("Dt")) )
-          return (e1.getAttributeValue("Dt")).compareTo(e2.getAttributeValue("Dt"));
-      // compare times
-      if( !(e1.getAttributeValue("Tm")).equals(e2.getAttributeValue("Tm")) )
-          return (e1.getAttributeValue("Tm")).compareTo(e2.getAttributeValue("Tm"));
-      // compare names
-      if( !(e1.getName()).equals(e2.getName()) )
-          return (e1.getName()).compareTo(e2.getName());
-      // almost equal
-      return 0;
-    }
-  };
+  enum DayState {
+    /** The day did not exist before. */
+    ADDED,
+    /** The day existed and got new entries. */
+    CHANGED,
+    /** The day existed and already contained all entries, it has not been written. */
+    UNCHANGED
+  }
 
   /** No Constructor, only static methods. */
   private XML_IO() {}
 
+  /**
+   * The receiver of the entries read by {@link XML_IO#readDay(File, RecordHandler)}.
+   */
+  abstract static class RecordHandler {
+    /**
+     * Receives the next entry of the day.
+     *
+     * @param record - The entry.
+     */
+    abstract void record(DayRecord record);
+  }
+
   /**
    * Parses the given device input {@code File} as XML-data.
    * Writes the results into the directory <code>xmlDir</code>
    * given by {@link DiabetesDoc#PROPERTIES}.
    * The output has the DTD <code>DAY</code> (see <i>files/day.dtd</i>).
+   * The file is read as a stream (see {@link DeviceInputParser})
+   * and skipped, if it has been imported before (see {@link ImportManifest}).
    *
    * @param f - The {@code File} to parse from.
    * @throws IOException If an I/O exception occurs while reading and writing the files.
    * @throws JDOMException If an error occurs while parsing the XML-data of the files.
    * @throws IllegalArgumentException If the file <code>f</code> contains unknown XML-data.
+   * @see ImportEngine#importFiles(List)
    */
   public static void parseDeviceInputFile(File f) throws IOException, JDOMException {
-    Element root = SAX_BUILDER.build(f).getRootElement();
-
-    Element profiles = root.getChild("IP");
-    if(profiles != null) { // data from insulin pump
-      profiles.detach();
-      String readingDate = profiles.getAttributeValue("Dt");
-
-      // read and write insulin pump profiles
-      File dtdFile = new File("xml/ipprofiles/IP.dtd");
-      dtdFile.getParentFile().mkdirs();
-      if(!dtdFile.exists()) {
-        java.nio.file.Files.copy(XML_IO.class.getResourceAsStream("/IP.dtd"), dtdFile.toPath());
-      }
-      DocType profilesType = new DocType("IP.dtd", "file:///" + dtdFile.getAbsolutePath());
-      XML_OUTPUTTER.output(new Document(profiles, profilesType), new FileWriter("xml/ipprofiles/" + readingDate + ".xml"));
+    new ImportEngine(1).importFiles(java.util.Collections.singletonList(f));
+  }
 
-      // read pump data
-      HashMap<String, Element> days = extractDays(root.getChild("IPDATA"), 100);
+  /**
+   * Parses the given device input {@code File} as XML-data
+   * and writes the results through the given {@link ImportEngine}.
+   * Files recorded unchanged in the engine's {@link ImportManifest} are skipped,
+   * of changed files, to which the device only appended entries, only the entries of each section
+   * from its last imported date on are written, other changed files are written completely.
+   *
+   * @param f - The {@code File} to parse from.
+   * @param engine - The {@code ImportEngine} writing the days.
+   * @return <b><code>true</code></b>, if the file has been parsed;
+   *         <b><code>false</code></b>, if it has been skipped.
+   * @throws IOException If an I/O exception occurs while reading and writing the files.
+   * @throws JDOMException If an error occurs while parsing the XML-data of the files.
+   * @throws IllegalArgumentException If the file <code>f</code> contains unknown XML-data.
+   * @see XML_IO#parseDeviceInputFile(File)
+   */
+  static boolean parseDeviceInputFile(File f, final ImportEngine engine) throws IOException, JDOMException {
+    ImportManifest manifest = engine.getManifest();
+    if(manifest.isImported(f))
+      return false;
 
-      // write days
-      for(Element day : days.values()) {
-        writeDay(day);
+    Map<String, String> lastDates = DeviceInputParser.parse(f, manifest.getLastDates(f), new DeviceInputParser.Handler() {
+      @Override
+      void profiles(Element profiles) throws IOException {
+        engine.writeProfiles(profiles);
       }
-    } else if(root.getChild("DEVICE") != null) { // data from bg-devive
-      // read device data
-      HashMap<String, Element> days = extractDays(root.getChild("BGDATA"), 100);
-
-      // write days
-      for(Element day : days.values()) {
-        writeDay(day);
+      @Override
+      void day(String date, List<DayRecord> records) throws IOException, JDOMException {
+        engine.writeDay(date, records);
       }
-    } else {
-      throw new IllegalArgumentException("The file contains not supported xml-data.");
+    });
+    manifest.setImported(f, lastDates);
+    return true;
+  }
+
+  /**
+   * Writes the given insulin pump profiles into the file <code>YYYY-MM-DD.xml</code>
+   * in the directory <code>xml/ipprofiles</code>.
+   * Its DTD is <code>IP</code> (see <i>resources/IP.dtd</i>).
+   * The profiles are added to the {@link ProfileStore}.
+   *
+   * @param profiles - The XML-{@link Element} <code>IP</code>.
+   * @throws IOException If an I/O exception occurs while writing the file.
+   */
+  static void writeProfiles(Element profiles) throws IOException {
+    String readingDate = profiles.getAttributeValue("Dt");
+
+    File dtdFile = new File("xml/ipprofiles/IP.dtd");
+    dtdFile.getParentFile().mkdirs();
+    copyResource("/IP.dtd", dtdFile);
+    DocType profilesType = new DocType("IP.dtd", "file:///" + dtdFile.getAbsolutePath());
+    try(Writer w = new FileWriter("xml/ipprofiles/" + readingDate + ".xml")) {
+      XML_OUTPUTTER.output(new Document(profiles, profilesType), w);
+    }
+    ProfileStore.get().add(profiles);
+  }
+
+  /**
+   * Writes the given day into the {@link DayStore} in use.
+   * Its DTD is <code>DAY</code> (see <i>files/day.dtd<i>).
+   * If the day exists, the entries are merged with the existing ones, whereby
+   * new entries replace old ones with the same date, time and name.
+   * The day is not written, if the merged day equals the existing one.
+   *
+   * @param date - The day's date.
+   * @param day - The day's entries, sorted by {@link DayRecord#compareTo(DayRecord)}.
+   * @return The {@link DayState} of the day.
+   * @throws IOException If an I/O exception occurs while reading or writing the day.
+   * @throws JDOMException If an error occurs while parsing the XML-data of the day (if existing).
+   */
+  static DayState writeDay(String date, List<DayRecord> day) throws IOException, JDOMException {
+    DayStore store = DayStore.get();
+
+    DayState state = DayState.ADDED;
+    List<DayRecord> old = store.contains(date) ? store.read(date) : null;
+    if(old != null) {
+      String oldFingerprint = DayRecord.fingerprint(old);
+      day = merge(day, old);
+      if(oldFingerprint.equals(DayRecord.fingerprint(day)))
+        return DayState.UNCHANGED;
+      state = DayState.CHANGED;
     }
+
+    store.write(date, day);
+    return state;
   }
 
-  private static HashMap<String, Element> extractDays(Element root, int count) {
-    HashMap<String, Element> days = new HashMap<String, Element>(count);
-    
-    // read data
-    while(!root.getChildren().isEmpty()) {
-      Element data = root.getChildren().get(0);
-      data.detach();
-      String date = data.getAttributeValue("Dt");
-      if(days.containsKey(date)) {
-        days.get(date).addContent(data);
+  /**
+   * Merges the new and the old entries of a day in linear time.
+   * An old entry is dropped, if a new entry has the same date, time and name;
+   * old entries with the same date, time and name as each other only (e.g. the BASAL
+   * entries of the profile, the TBR and the pump stop at 00:00) are all kept.
+   *
+   * @param day - The new entries, sorted.
+   * @param old - The old entries, sorted if they were written by {@link XML_IO#writeDay(String, List)}.
+   * @return The merged, sorted entries.
+   */
+  static List<DayRecord> merge(List<DayRecord> day, List<DayRecord> old) {
+    for(int i = 1; i < old.size(); i++) {
+      if(old.get(i-1).compareTo(old.get(i)) > 0) { // edited by hand
+        java.util.Collections.sort(old);
+        break;
+      }
+    }
+    List<DayRecord> merged = new java.util.ArrayList<DayRecord>(day.size() + old.size());
+    int i = 0, j = 0;
+    // the last new entry merged; the new entries of a key precede the old ones
+    DayRecord lastNew = null;
+    while(i < day.size() || j < old.size()) {
+      if(j == old.size() || (i < day.size() && day.get(i).compareTo(old.get(j)) <= 0)) {
+        lastNew = day.get(i++);
+        merged.add(lastNew);
       } else {
-        Element day = new Element("DAY");
-        day.setAttribute("Dt", date);
-        day.addContent(data);
-        days.put(date, day);
+        DayRecord r = old.get(j++);
+        if(lastNew == null || lastNew.compareTo(r) != 0)
+          merged.add(r);
       }
     }
-    
-    for(Element day : days.values())
-      day.sortChildren(DAY_ELEMENT_COMPARATOR);
+    return merged;
+  }
+
+  /**
+   * Reads the entries of the given file with DTD <code>DAY</code> (see <i>resources/DAY.dtd</i>)
+   * as a stream. Unlike {@link XML_IO#SAX_BUILDER}, this can be used by several threads at the same time.
+   *
+   * @param file - The day's file.
+   * @return The entries of the day in document order.
+   * @throws IOException If an I/O exception occurs while reading the file.
+   * @throws JDOMException If an error occurs while parsing the XML-data of the file.
+   */
+  static List<DayRecord> readDay(File file) throws IOException, JDOMException {
+    final List<DayRecord> records = new java.util.ArrayList<DayRecord>();
+    readDay(file, new RecordHandler() {
+      @Override
+      void record(DayRecord record) {
+        records.add(record);
+      }
+    });
+    return records;
+  }
 
-    return days;
+  /**
+   * Reads the entries of the given file with DTD <code>DAY</code> (see <i>resources/DAY.dtd</i>)
+   * as a stream and passes them one at a time to the handler, without keeping them.
+   *
+   * @param file - The day's file.
+   * @param handler - The receiver of the entries in document order.
+   * @throws IOException If an I/O exception occurs while reading the file.
+   * @throws JDOMException If an error occurs while parsing the XML-data of the file.
+   */
+  static void readDay(File file, RecordHandler handler) throws IOException, JDOMException {
+    try(java.io.InputStream in = new java.io.BufferedInputStream(new java.io.FileInputStream(file))) {
+      readDay(DeviceInputParser.XML_INPUT_FACTORY.createXMLStreamReader(in), file.getPath(), handler);
+    } catch(XMLStreamException e) {
+      throw new JDOMException("Error while parsing " + file.getPath() + ": " + e.getMessage(), e);
+    }
   }
 
   /**
-   * Writes the given day into the file <code>YYYY-MM-DD.xml</code> in the
-   * directory <code>xmlDir</code> given by {@link DiabetesDoc#PROPERTIES}.
-   * Its DTD is <code>DAY</code> (see <i>files/day.dtd<i>).
+   * Reads the entries of the given XML-data with DTD <code>DAY</code> (see <i>resources/DAY.dtd</i>).
    *
-   * @param day - The XML-{@link Element} representing the day.
-   * @throws IOException If an I/O exception occurs while reading or writing the file.
-   * @throws JDOMException If an error occurs while parsing the XML-data of the file (if existing).
+   * @param in - The {@code Reader} of the XML-data.
+   * @param name - The name of the data for error messages (e.g. the date).
+   * @return The entries of the day in document order.
+   * @throws IOException If an I/O exception occurs while reading.
+   * @throws JDOMException If an error occurs while parsing the XML-data.
    */
-  private static void writeDay(Element day) throws IOException, JDOMException {
-    File file = new File("xml", day.getAttributeValue("Dt") + ".xml");
-    file.getParentFile().mkdirs();
-
-    if(file.exists()) {
-      java.util.List<Element> old = SAX_BUILDER.build(file).getRootElement().getChildren();
-      while(!old.isEmpty()) {
-        Element data = old.get(0);
-        data.detach();
-
-        java.util.List<Element> dayData = day.getChildren();
-        int currPos;
-        for(currPos = 0; currPos < dayData.size(); currPos++) {
-          if(DAY_ELEMENT_COMPARATOR.compare(data, dayData.get(currPos)) == 0)
-            break;
+  static List<DayRecord> readDay(java.io.Reader in, String name) throws IOException, JDOMException {
+    final List<DayRecord> records = new java.util.ArrayList<DayRecord>();
+    try {
+      readDay(DeviceInputParser.XML_INPUT_FACTORY.createXMLStreamReader(in), name, new RecordHandler() {
+        @Override
+        void record(DayRecord record) {
+          records.add(record);
         }
-        if(currPos == dayData.size())
-          day.addContent(data);
-      }
-      day.sortChildren(DAY_ELEMENT_COMPARATOR);
+      });
+      return records;
+    } catch(XMLStreamException e) {
+      throw new JDOMException("Error while parsing " + name + ": " + e.getMessage(), e);
     }
+  }
 
-    File dtdFile = new File("xml/DAY.dtd");
-    if(!dtdFile.exists()) {
-      java.nio.file.Files.copy(XML_IO.class.getResourceAsStream("/DAY.dtd"), dtdFile.toPath());
+  private static void readDay(XMLStreamReader r, String name, RecordHandler handler) throws JDOMException {
+    try {
+      try {
+        int depth = 0;
+        while(r.hasNext()) {
+          int event = r.next();
+          if(event == XMLStreamConstants.START_ELEMENT) {
+            if(depth == 1) {
+              handler.record(DayRecord.read(r));
+            } else {
+              depth++;
+            }
+          } else if(event == XMLStreamConstants.END_ELEMENT) {
+            depth--;
+          }
+        }
+      } finally {
+        r.close();
+      }
+    } catch(XMLStreamException e) {
+      throw new JDOMException("Error while parsing " + name + ": " + e.getMessage(), e);
     }
-    DocType dayType = new DocType("DAY.dtd", "file:///" + dtdFile.getAbsolutePath());
-    Document doc = new Document(day, dayType);
-    ProcessingInstruction xsl = new ProcessingInstruction("xml-stylesheet","type='text/xsl' href='day.xsl'");
-    File xslFile = new File("xml/day.xsl");
-    if(!xslFile.exists()) {
-      java.nio.file.Files.copy(XML_IO.class.getResourceAsStream("/day.xsl"), xslFile.toPath());
+  }
+
+  /**
+   * Copies the given resource to the target file, if the target does not exist.
+   *
+   * @param resource - The name of the resource.
+   * @param target - The target file.
+   * @throws IOException If an I/O exception occurs while copying.
+   */
+  private static synchronized void copyResource(String resource, File target) throws IOException {
+    if(!target.exists()) {
+      java.nio.file.Files.copy(XML_IO.class.getResourceAsStream(resource), target.toPath());
     }
-    doc.addContent(0, xsl);
-    XML_OUTPUTTER.output(doc, new FileWriter(file));
   }
 }
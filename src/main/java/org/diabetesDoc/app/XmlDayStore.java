@@ -0,0 +1,135 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jdom2.JDOMException;
+
+/**
+ * This Class stores every day as XML-file <code>YYYY-MM-DD.xml</code> with DTD <code>DAY</code>
+ * (see <i>resources/DAY.dtd</i>) in a directory. This is the layout of the directory <i>xml</i>
+ * used since the first version, the files can be viewed in a browser (see <i>resources/day.xsl</i>).
+ * @version 0.1 - last modified 2026-10-17
+ */
+final class XmlDayStore extends DayStore {
+  /** The directory containing the days. */
+  private final File dir;
+
+  /** Whether the files written are synced to disk. */
+  private final boolean sync;
+
+  /** The writer of the current series of writes. */
+  private volatile DayWriter writer;
+
+  /**
+   * Creates a new {@code XmlDayStore}.
+   *
+   * @param dir - The directory containing the days.
+   * @param sync - Whether the files written are synced to disk.
+   */
+  XmlDayStore(final File dir, final boolean sync) {
+    super(new File(dir, "days.catalog"));
+    this.dir = dir;
+    this.sync = sync;
+    this.writer = new DayWriter(dir, sync);
+  }
+
+  @Override
+  List<String> getDates() throws IOException {
+    List<String> dates = new ArrayList<String>();
+    String[] names = dir.list();
+    if(names != null) {
+      for(String name : names) {
+        if(name.length() == 14 && name.endsWith(".xml") && Utils.isDateString(name.substring(0, 10)))
+          dates.add(name.substring(0, 10));
+      }
+    }
+    Collections.sort(dates);
+    return dates;
+  }
+
+  @Override
+  long lastModified(final String date) {
+    return new File(dir, date + ".xml").lastModified();
+  }
+
+  @Override
+  List<DayRecord> read(final String date) throws IOException, JDOMException {
+    File file = new File(dir, date + ".xml");
+    return file.isFile() ? XML_IO.readDay(file) : null;
+  }
+
+  @Override
+  List<Table> createTables(final String date) throws IOException, JDOMException {
+    // streams the file into the tables without keeping the entries
+    File file = new File(dir, date + ".xml");
+    return file.isFile() ? TableFactory.createTables(file, date) : null;
+  }
+
+  @Override
+  void writeRecords(final String date, final List<DayRecord> records) throws IOException {
+    writer.write(date, records);
+  }
+
+  @Override
+  synchronized void flushRecords() throws IOException {
+    DayWriter old = writer;
+    writer = new DayWriter(dir, sync);
+    old.finish();
+  }
+
+  /**
+   * Returns the file's content unchanged, so the formatting of a day edited by hand is kept.
+   */
+  @Override
+  String readXML(final String date) throws IOException {
+    File file = new File(dir, date + ".xml");
+    if(!file.isFile())
+      throw new FileNotFoundException(file.getPath());
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes the XML-data unchanged into the day's file.
+   */
+  @Override
+  void writeXML(final String date, final String xml) throws IOException {
+    dir.mkdirs();
+    File tmp = new File(dir, "." + date + ".xml.tmp");
+    Files.write(tmp.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+    DayWriter.replace(tmp, new File(dir, date + ".xml"));
+    try {
+      getCatalog().update(date, read(date));
+    } catch(JDOMException e) {
+      getCatalog().update(date, null); // not well-formed, but saved as edited
+    }
+    flush();
+  }
+}
@@ -0,0 +1,150 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jdom2.Element;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the streaming parser of device input files {@link DeviceInputParser}.
+ * @version 0.1 - last modified 2026-10-17
+ */
+public class DeviceInputParserTest extends TestCase {
+  /** The number of days of the test file, more than are kept open. */
+  private static final int DAYS = 3 * DeviceInputParser.MAX_OPEN_DAYS;
+
+  /** The test file. */
+  private File file;
+
+  @Override
+  protected void setUp() throws IOException {
+    file = File.createTempFile("DeviceInputParserTest", ".xml");
+  }
+
+  @Override
+  protected void tearDown() {
+    file.delete();
+  }
+
+  /**
+   * The days of <code>IPDATA</code> are continued in <code>BGDATA</code> after more than
+   * {@link DeviceInputParser#MAX_OPEN_DAYS} days: every day is passed once with all its entries.
+   */
+  public void testDaySplitAcrossSections() throws Exception {
+    writeFile();
+    final TreeMap<String, List<String>> days = new TreeMap<String, List<String>>();
+    final int[] profiles = new int[1];
+    Map<String, String> lastDates = DeviceInputParser.parse(file, null, new DeviceInputParser.Handler() {
+      @Override
+      void profiles(Element ip) {
+        profiles[0]++;
+      }
+
+      @Override
+      void day(String date, List<DayRecord> records) {
+        assertFalse("passed twice: " + date, days.containsKey(date));
+        days.put(date, describe(records));
+      }
+    });
+
+    assertEquals(1, profiles[0]);
+    assertEquals("{BGDATA=" + date(DAYS) + ", IPDATA=" + date(DAYS) + "}", lastDates.toString());
+    assertEquals(DAYS, days.size());
+    for(int d = 1; d <= DAYS; d++) {
+      assertEquals(date(d), "[BASAL 00:00 profile, BASAL 00:00 TBRdec, BASAL 00:00 remark, BG 07:55 Val, BOLUS 08:00 amount]",
+          days.get(date(d)).toString());
+    }
+  }
+
+  /**
+   * The sections are resumed from their own last dates: the readings of <code>BGDATA</code>
+   * before the last date of <code>IPDATA</code> are passed.
+   */
+  public void testResumeBySection() throws Exception {
+    writeFile();
+    Map<String, String> fromDates = new TreeMap<String, String>();
+    fromDates.put("IPDATA", date(DAYS));
+    fromDates.put("BGDATA", date(5));
+    final TreeMap<String, List<String>> days = new TreeMap<String, List<String>>();
+    DeviceInputParser.parse(file, fromDates, new DeviceInputParser.Handler() {
+      @Override
+      void profiles(Element ip) {
+        // not checked
+      }
+
+      @Override
+      void day(String date, List<DayRecord> records) {
+        days.put(date, describe(records));
+      }
+    });
+
+    assertEquals(DAYS - 4, days.size());
+    for(int d = 5; d < DAYS; d++)
+      assertEquals(date(d), "[BG 07:55 Val]", days.get(date(d)).toString());
+    assertEquals("[BASAL 00:00 profile, BASAL 00:00 TBRdec, BASAL 00:00 remark, BG 07:55 Val, BOLUS 08:00 amount]",
+        days.get(date(DAYS)).toString());
+  }
+
+  /**
+   * Writes the test file: {@link DeviceInputParserTest#DAYS} days of the insulin pump,
+   * followed by the profiles and the readings of the same days.
+   */
+  private void writeFile() throws IOException {
+    StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<IMPORT>\n<IPDATA>\n");
+    for(int d = 1; d <= DAYS; d++) {
+      xml.append(entry("BASAL", d, "00:00", "profile=\"1\""))
+          .append(entry("BASAL", d, "00:00", "TBRdec=\" 50%\""))
+          .append(entry("BASAL", d, "00:00", "remark=\"Stop\""))
+          .append(entry("BOLUS", d, "08:00", "amount=\"4.5\""));
+    }
+    xml.append("</IPDATA>\n<IP Dt=\"2015-03-31\" Tm=\"12:00\" ActiveProf=\"1\"/>\n<DEVICE/>\n<BGDATA>\n");
+    for(int d = 1; d <= DAYS; d++)
+      xml.append(entry("BG", d, "07:55", "Val=\"120\""));
+    xml.append("</BGDATA>\n</IMPORT>\n");
+    Files.write(file.toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static List<String> describe(List<DayRecord> records) {
+    List<String> s = new ArrayList<String>();
+    for(DayRecord r : records)
+      s.add(r.name + " " + r.time + " " + r.getAttributeName(2));
+    return s;
+  }
+
+  private static String date(int day) {
+    return (day < 10) ? "2015-03-0" + day : "2015-03-" + day;
+  }
+
+  private static String entry(String name, int day, String time, String attribute) {
+    return "<" + name + " Dt=\"" + date(day) + "\" Tm=\"" + time + "\" " + attribute + "/>\n";
+  }
+}
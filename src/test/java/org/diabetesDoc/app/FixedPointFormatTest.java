@@ -0,0 +1,78 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+import java.util.Locale;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the rounding of {@link FixedPointFormat}.
+ * @version 0.1 - last modified 2026-10-17
+ */
+public class FixedPointFormatTest extends TestCase {
+  /** The default language before the test. */
+  private Locale locale;
+
+  @Override
+  protected void setUp() {
+    locale = Locale.getDefault();
+    Locale.setDefault(Locale.UK);
+  }
+
+  @Override
+  protected void tearDown() {
+    Locale.setDefault(locale);
+  }
+
+  /**
+   * Values computed from decimals are rounded half up as the decimal they stand for,
+   * where <code>String.format</code> rounds the binary number.
+   */
+  public void testRoundedHalfUpAsDecimal() {
+    FixedPointFormat format = FixedPointFormat.get();
+    // 4.3 bread units at a factor of 1.5 are 6.45 IU
+    assertEquals("6.4", String.format("%1.1f", 4.3 * 1.5));
+    assertEquals("6.5", format.format(4.3 * 1.5));
+    assertEquals("6.5", format.format(4.3f * 1.5f));
+    // 4.7 bread units at a factor of 1.5 are 7.05 IU
+    assertEquals("7.1", format.format(4.7 * 1.5));
+    assertEquals("7.1", format.format(4.7f * 1.5f));
+    assertEquals("0.4", format.format(0.35));
+    assertEquals("-1.3", format.format(1.2f - 2.45f));
+    // a correction of 5.4 IU - 4.0 bread units at a factor of 1.36 is -0.04 IU, not below
+    assertEquals(-0.04, FixedPointFormat.toDecimal(5.4 - 5.44), 0);
+    assertEquals(-0.04, FixedPointFormat.toDecimal(5.4f - 4.0f * 1.36f), 0);
+  }
+
+  /**
+   * Values off the half are rounded as before.
+   */
+  public void testRounded() {
+    FixedPointFormat format = FixedPointFormat.get();
+    assertEquals("0.0", format.format(0.04));
+    assertEquals("0.1", format.format(0.0501));
+    assertEquals("12.3", format.format(12.3449));
+    assertEquals("-0.0", format.format(-0.04));
+    assertEquals("100.0", format.format(99.96));
+  }
+}
@@ -0,0 +1,438 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the {@link Table}s streamed from the files of days by {@link TableFactory}
+ * with those of the table logic working on a JDOM-{@link org.jdom2.Document}, as it was
+ * before the entries were streamed (see {@link BaselineTable}), over a synthetic corpus of
+ * pump and meter days, temporary basal rates and entries at the boundaries of the day.
+ * The bolus factors are read from a temporary directory and no profiles are known,
+ * so the tables do not depend on the files of the environment.
+ * @version 0.1 - last modified 2026-10-17
+ */
+public class TableFactoryTest extends TestCase {
+  /** The number of days of the corpus. */
+  private static final int DAYS = 400;
+
+  /** The default language before the test. */
+  private Locale locale;
+
+  /** The directory of the corpus' files. */
+  private File dir;
+
+  /** The directory of the bolus factors. */
+  private File factors;
+
+  /** The store without profiles. */
+  private ProfileStore profiles;
+
+  @Override
+  protected void setUp() throws IOException {
+    locale = Locale.getDefault();
+    // the baseline formats the bread units in the default language and parses them again
+    Locale.setDefault(Locale.UK);
+    dir = Files.createTempDirectory("TableFactoryTest").toFile();
+    factors = Files.createTempDirectory("TableFactoryTest").toFile();
+    // valid before the date of the baseline's factors, 2014-01-01
+    Files.write(new File(factors, "2010-01-01.xml").toPath(), ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<bolusfactor begin=\"2010-01-01\">\n"
+        + "  <period begin=\"00:00\" khfactor=\"0.8\"/>\n"
+        + "  <period begin=\"06:00\" khfactor=\"1.5\"/>\n"
+        + "  <period begin=\"11:00\" khfactor=\"1.2\"/>\n"
+        + "  <period begin=\"17:00\" khfactor=\"1\"/>\n"
+        + "</bolusfactor>\n").getBytes(StandardCharsets.UTF_8));
+    BolusFactorIndex.setDirectory(factors);
+    profiles = ProfileStore.load(dir);
+  }
+
+  @Override
+  protected void tearDown() {
+    Locale.setDefault(locale);
+    BolusFactorIndex.setDirectory(BolusFactorIndex.DIR);
+    for(File d : new File[]{ dir, factors }) {
+      File[] files = d.listFiles();
+      if(files != null) {
+        for(File f : files)
+          f.delete();
+      }
+      d.delete();
+    }
+  }
+
+  /**
+   * Compares the tables of every day of the corpus.
+   */
+  public void testStreamedTablesEqualBaseline() throws Exception {
+    Random rnd = new Random(4711);
+    for(int d = 0; d < DAYS; d++) {
+      String date = DateUtils.toDateString(DateUtils.toEpochDay("2016-01-01") + d, false);
+      String xml = createDay(date, d % 4, rnd);
+      File file = new File(dir, date + ".xml");
+      Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+
+      List<BaselineTable> expected = BaselineTable.createTables(XML_IO.SAX_BUILDER.build(new StringReader(xml)));
+      List<Table> actual = TableFactory.createTables(file, date, profiles);
+      assertEquals(date + ": number of tables", expected.size(), actual.size());
+      for(int i = 0; i < expected.size(); i++)
+        assertTableEquals(date + ", table " + i, expected.get(i), actual.get(i));
+    }
+  }
+
+  /**
+   * Compares the tables of days without any entries but the date.
+   */
+  public void testEmptyDay() throws Exception {
+    String xml = "<DAY Dt=\"2016-02-29\"></DAY>";
+    File file = new File(dir, "2016-02-29.xml");
+    Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+    List<Table> actual = TableFactory.createTables(file, "2016-02-29", profiles);
+    assertEquals(1, actual.size());
+    assertTableEquals("2016-02-29",
+        BaselineTable.createTables(XML_IO.SAX_BUILDER.build(new StringReader(xml))).get(0), actual.get(0));
+  }
+
+  private static void assertTableEquals(String msg, BaselineTable expected, Table actual) {
+    assertEquals(msg + ": date", expected.date, actual.getDate());
+    assertEquals(msg + ": BR", expected.br, actual.getBR());
+    List<String[]> data = actual.getData();
+    assertEquals(msg + ": number of columns", expected.cols.size(), data.size());
+    for(int c = 0; c < data.size(); c++) {
+      for(int i = 0; i < 6; i++)
+        assertEquals(msg + ", column " + c + ", cell " + i, expected.cols.get(c).getCell(i), data.get(c)[i]);
+    }
+    assertEquals(msg + ": remarks", expected.getRemarks(), actual.getRemarks());
+  }
+
+  /**
+   * Creates the XML-data of a synthetic day.
+   *
+   * @param date - The day's date.
+   * @param kind - <code>0</code> for a meter day, <code>1</code> for a pump day,
+   *               <code>2</code> for a pump day with temporary basal rates and
+   *               <code>3</code> for a full day with entries at its boundaries.
+   * @param rnd - The random numbers.
+   * @return The XML-data.
+   */
+  private static String createDay(String date, int kind, Random rnd) {
+    StringBuilder x = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<DAY Dt=\"").append(date).append("\">\n");
+    String br = null;
+    if(kind > 0) {
+      if(kind == 3 || rnd.nextBoolean()) {
+        br = "" + (1 + rnd.nextInt(3));
+        x.append(entry("BASAL", date, "00:00", "cbrf=\"0.8\" profile=\"" + br + "\""));
+      }
+      if(kind == 3) {
+        // a TBR continued from the day before and a pump stopped at midnight
+        x.append(entry("BASAL", date, "00:00", "cbrf=\"0.4\" TBRdec=\" 50%\""));
+        x.append(entry("BASAL", date, "00:00", "cbrf=\"0\" remark=\"Stop\""));
+        x.append(entry("BOLUS", date, "", "type=\"Std\" amount=\"23.4\" remark=\"total\""));
+      }
+    }
+    int m = (kind == 3) ? 0 : rnd.nextInt(90);
+    while(m < 1440) {
+      String tm = Utils.toTimeString(m);
+      int k = rnd.nextInt(kind == 0 ? 5 : 12);
+      if(k < 3) {
+        String val = (rnd.nextInt(15) == 0) ? "---" : "" + (20 + rnd.nextInt(400));
+        x.append(entry("BG", date, tm, "Val=\"" + val + "\""
+            + (rnd.nextInt(3) == 0 ? " Carb=\"" + rnd.nextInt(120) + "\"" : "")
+            + (kind == 0 && rnd.nextInt(3) == 0 ? " Ins1=\"" + rnd.nextInt(100) / 10.0 + "\"" : "")));
+      } else if(k == 3) {
+        x.append(entry("BG", date, tm, "Val=\"" + (80 + rnd.nextInt(200)) + "\" Ctrl=\"1\""));
+      } else if(k == 4) {
+        x.append(entry("BG", date, tm, "Val=\"" + (40 + rnd.nextInt(300)) + "\" Carb=\"" + rnd.nextInt(90) + "\""));
+      } else if(k < 8) {
+        x.append(entry("BOLUS", date, tm, "type=\"Std\" amount=\"" + rnd.nextInt(120) / 10.0 + "\""));
+      } else if(k == 8) {
+        x.append(entry("BASAL", date, tm, "cbrf=\"0\" remark=\"" + (rnd.nextBoolean() ? "Stop" : "Run") + "\""));
+      } else if(k == 9 && (kind == 2 || kind == 3)) {
+        // a TBR and its end
+        String pct = String.format("%3d%%", 10 * (1 + rnd.nextInt(19)));
+        int end = Math.min(1439, m + rnd.nextInt(45));
+        x.append(entry("BASAL", date, tm, "cbrf=\"0.6\" " + (rnd.nextBoolean() ? "TBRdec" : "TBRinc")
+            + "=\"" + pct + "\" remark=\"TBR start\""));
+        x.append(entry("BASAL", date, Utils.toTimeString(end), "cbrf=\"0.8\" remark=\"TBR End (" + pct + ")\""));
+        // the entries of the pump are in order, its TBRs do not overlap
+        m = end;
+      } else if(k == 10 && kind > 0) {
+        // a change of the profile is only remarked by the pump if a profile was set
+        String profile = "" + (1 + rnd.nextInt(3));
+        boolean remarked = br != null && rnd.nextBoolean();
+        x.append(entry("BASAL", date, tm, "cbrf=\"0.8\" " + (remarked
+            ? "remark=\"changed " + profile + "\"" : "profile=\"" + profile + "\"")));
+        if(br == null)
+          br = profile;
+      } else {
+        String[] info = { "E4", "1.2IU", "W1", "W8", "E7", null, null };
+        String si = info[rnd.nextInt(info.length)];
+        x.append(entry("EVENT", date, tm, (si == null ? "" : "shortinfo=\"" + si + "\" ")
+            + "description=\"" + (si == null && rnd.nextBoolean() ? "cartridge changed" : "event " + rnd.nextInt(9)) + "\""));
+      }
+      m += 1 + rnd.nextInt(kind == 3 ? 50 : 100);
+    }
+    if(kind == 3) {
+      // entries at the end of the day, a TBR ending the next day
+      x.append(entry("BG", date, "23:59", "Val=\"" + (40 + rnd.nextInt(300)) + "\""));
+      x.append(entry("BASAL", date, "23:59", "cbrf=\"0.4\" TBRinc=\"130%\" remark=\"TBR start\""));
+    }
+    return x.append("</DAY>\n").toString();
+  }
+
+  private static String entry(String name, String date, String time, String attributes) {
+    return "  <" + name + " Dt=\"" + date + "\" Tm=\"" + time + "\" " + attributes + "/>\n";
+  }
+
+  /**
+   * The table logic on a JDOM-{@link org.jdom2.Document} as it was before the entries
+   * were streamed into the tables, kept as reference: the remarks are paired by
+   * searching the remark-line, the columns are combined as {@code String}s.
+   */
+  static final class BaselineTable {
+    final String date;
+    String br;
+    final List<BaselineColumn> cols = new ArrayList<BaselineColumn>();
+    private final StringBuilder remarks = new StringBuilder();
+
+    BaselineTable(String date, String br) {
+      this.date = date;
+      this.br = br;
+    }
+
+    static List<BaselineTable> createTables(org.jdom2.Document xmlDoc) {
+      List<BaselineTable> tables = new ArrayList<BaselineTable>();
+      BaselineColumn c;
+      BaselineTable t = new BaselineTable(xmlDoc.getRootElement().getAttributeValue("Dt"), null);
+      tables.add(t);
+
+      for(org.jdom2.Element e : xmlDoc.getRootElement().getChildren()) {
+        String time = e.getAttributeValue("Tm"), remark;
+        switch(e.getName()) {
+        case "BG":
+          String value = e.getAttributeValue("Val");
+          String ctrl = e.getAttributeValue("Ctrl");
+          String carb = e.getAttributeValue("Carb");
+          String insulin1 = e.getAttributeValue("Ins1");
+          String insulin2 = e.getAttributeValue("Ins2");
+          String insulin3 = e.getAttributeValue("Ins3");
+          if(ctrl == null || ctrl.trim().isEmpty()) {
+            c = new BaselineColumn(time, (value.equals("---") ? "" : value),
+                (insulin1 == null ? "" : insulin1) + (insulin2 == null ? "" : insulin2)
+                    + (insulin3 == null ? "" : insulin3),
+                (carb == null ? "" : String.format("%1.1f", Integer.parseInt(carb) / 12.0)));
+            if(!t.addColumn(c)) {
+              t = new BaselineTable(t.date, t.br);
+              tables.add(t);
+              t.addColumn(c);
+            }
+          } else {
+            t.addRemark(time, "Ctrl: " + value);
+          }
+          break;
+        case "BOLUS":
+          if(!time.isEmpty()) {
+            c = new BaselineColumn(time, "", e.getAttributeValue("amount"), "");
+            if(!t.addColumn(c)) {
+              t = new BaselineTable(t.date, t.br);
+              tables.add(t);
+              t.addColumn(c);
+            }
+          }
+          break;
+        case "BASAL":
+          String tBRdec = e.getAttributeValue("TBRdec");
+          String tBRinc = e.getAttributeValue("TBRinc");
+          String profile = e.getAttributeValue("profile");
+          remark = e.getAttributeValue("remark");
+          if(profile != null) {
+            if(t.br == null)
+              t.br = profile;
+            else if(!t.br.equals(profile))
+              t.addRemark(time, Utils.localize("%output.brChanged%") + profile);
+          }
+          if(remark != null && (remark.equals("Run") || remark.equals("Stop"))) {
+            t.addRemark(time, Utils.localize("%output.pump" + remark + "%"));
+          } else if(remark != null && remark.matches("changed \\d")) {
+            if(!t.br.equals("" + remark.charAt(8)))
+              t.addRemark(time, Utils.localize("%output.brChanged%") + " " + remark.charAt(8));
+          } else if(tBRdec != null && (remark != null || time.equals("00:00"))) {
+            t.addRemark(time, "TBR " + tBRdec);
+          } else if(tBRinc != null && (remark != null || time.equals("00:00"))) {
+            t.addRemark(time, "TBR " + tBRinc);
+          } else if(remark != null && remark.startsWith("TBR End")) {
+            t.addRemark(time, Utils.localize("%output.tbrEnd%"));
+          }
+          break;
+        case "EVENT":
+          String shortinfo = e.getAttributeValue("shortinfo");
+          String description = e.getAttributeValue("description");
+          if(shortinfo == null) {
+            if(!description.equals("cartridge changed"))
+              t.addRemark(time, description);
+          } else if(shortinfo.equals("E4")) {
+            t.addRemark(time, Utils.localize("%output.occlusion%"));
+          } else if(shortinfo.endsWith("IU")) {
+            t.addRemark(time, Utils.localize("%output.prime%"));
+          } else if(!(shortinfo.equals("E1") || shortinfo.equals("W1")
+              || shortinfo.equals("W2") || shortinfo.equals("W8"))) {
+            t.addRemark(time, description + " (" + shortinfo + ")");
+          }
+          break;
+        }
+      }
+      return tables;
+    }
+
+    boolean addColumn(BaselineColumn c) {
+      if(!cols.isEmpty() && Utils.difference(cols.get(cols.size() - 1).getCell(0), c.getCell(0)) < 30) {
+        cols.get(cols.size() - 1).add(c);
+      } else {
+        if(cols.size() == Table.MAX_COLS)
+          return false;
+        cols.add(c);
+      }
+      return true;
+    }
+
+    void addRemark(String time, String txt) {
+      int pos = -1;
+      String oldTime;
+      boolean found = false;
+
+      if(txt.equals(Utils.localize("%output.pumpRun%"))) {
+        while((pos = remarks.indexOf(Utils.localize("%output.pumpStop%"), pos + 1)) != -1) {
+          oldTime = remarks.substring(pos - 7, pos - 2);
+          if(Utils.difference(oldTime, time) <= Table.MAX_TIME_DIFFERENCE) {
+            remarks.delete(pos - 7, pos + Utils.localize("%output.pumpStop%").length());
+            found = true;
+            break;
+          }
+        }
+      } else if(txt.equals(Utils.localize("%output.tbrEnd%"))) {
+        while((pos = remarks.indexOf("TBR ", pos + 1)) != -1) {
+          if(remarks.length() < pos + 7 || remarks.charAt(pos + 7) != '%')
+            continue;
+          oldTime = remarks.substring(pos - 7, pos - 2);
+          if(Utils.difference(oldTime, time) <= Table.MAX_TIME_DIFFERENCE / 2) {
+            remarks.delete(pos - 7, pos + 8);
+            found = true;
+            break;
+          }
+        }
+      } else if(txt.matches("TBR (\\s|\\d)(\\s|\\d)\\d%")) {
+        while((pos = remarks.indexOf(Utils.localize("%output.tbrEnd%"), pos + 1)) != -1) {
+          oldTime = remarks.substring(pos - 7, pos - 2);
+          if(Utils.difference(oldTime, time) <= Table.MAX_TIME_DIFFERENCE && pos >= 13
+              && remarks.substring(pos - 13, pos - 9).equals(txt.substring(4))) {
+            remarks.delete(pos - 9, pos + Utils.localize("%output.tbrEnd%").length());
+            found = true;
+            break;
+          }
+        }
+      }
+      if(!found)
+        remarks.append(((remarks.length() == 0) ? "" : ",  ") + time + ": " + txt);
+    }
+
+    String getRemarks() {
+      int pos = -1, pos2;
+      while((pos = remarks.indexOf("TBR ", pos + 1)) != -1) {
+        if(remarks.length() < pos + 7 || remarks.charAt(pos + 7) != '%')
+          continue;
+        if((pos2 = remarks.indexOf(Utils.localize("%output.tbrEnd%"), pos + 1)) != -1) {
+          String time = remarks.substring(pos2 - 7, pos2 - 2);
+          remarks.delete(pos2 - 7, pos2 + Utils.localize("%output.tbrEnd%").length())
+              .insert(pos - 2, " - " + time);
+          pos = remarks.indexOf("TBR ", pos + 1);
+        }
+      }
+      while((pos = remarks.indexOf(",  ,")) != -1)
+        remarks.delete(pos, pos + 3);
+      if(remarks.length() >= 3) {
+        if(remarks.substring(0, 3).equals(",  "))
+          remarks.delete(0, 3);
+        if(remarks.substring(remarks.length() - 3).equals(",  "))
+          remarks.delete(remarks.length() - 3, remarks.length());
+      }
+      return remarks.toString();
+    }
+  }
+
+  /**
+   * A column of a {@link BaselineTable}, computed with <code>double</code>s.
+   * The cells are compared with the thresholds and rounded half up as decimals like the tables
+   * (see {@link FixedPointFormat}), where the baseline used the binary values.
+   */
+  static final class BaselineColumn {
+    private int bg;
+    private double iuTotal, carbs, iuCarb;
+    private final Calendar date;
+
+    BaselineColumn(String time, String bg, String iuTotal, String carbs) {
+      this.bg = bg.isEmpty() ? 0 : Integer.parseInt(bg);
+      this.iuTotal = (iuTotal == null || iuTotal.isEmpty()) ? 0 : Double.parseDouble(iuTotal);
+      this.carbs = carbs.isEmpty() ? 0 : Double.parseDouble(carbs);
+      this.date = Utils.toCalendar("2014-01-01");
+      date.set(Calendar.HOUR, Integer.parseInt(time.substring(0, 2)));
+      date.set(Calendar.MINUTE, Integer.parseInt(time.substring(3, 5)));
+      iuCarb = this.carbs * Utils.getBolusFactorCarbs(date);
+    }
+
+    void add(BaselineColumn other) {
+      if(bg == 0 || other.bg == 0)
+        bg += other.bg;
+      else
+        bg = (bg + other.bg) / 2;
+      iuTotal += other.iuTotal;
+      carbs += other.carbs;
+      iuCarb = carbs * Utils.getBolusFactorCarbs(date);
+    }
+
+    String getCell(int i) {
+      FixedPointFormat f = FixedPointFormat.get();
+      double iuCarb = FixedPointFormat.toDecimal(this.iuCarb), iuCorr = FixedPointFormat.toDecimal(iuTotal - this.iuCarb),
+          iuTotal = FixedPointFormat.toDecimal(this.iuTotal), carbs = FixedPointFormat.toDecimal(this.carbs);
+      switch(i) {
+      case 0: return String.format("%tR", date);
+      case 1: return (bg != 0) ? "" + bg : "";
+      case 2: return (iuCarb > 0.04) ? f.format(iuCarb) : "";
+      case 3: return (Math.abs(iuCorr) > 0.04) ? f.format(iuCorr) : "";
+      case 4: return (iuTotal > 0.04) ? f.format(iuTotal) : "";
+      case 5: return (carbs > 0.04) ? f.format(carbs) : "";
+      default: return "";
+      }
+    }
+  }
+}
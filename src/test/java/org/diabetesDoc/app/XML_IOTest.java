@@ -0,0 +1,92 @@
+package org.diabetesDoc.app;
+
+////////////////////////////////////////////////////////////////////////////////
+//
+// This file is part of DiabetesDoc.
+//
+//   Copyright 2017 Stephan Lunowa
+//
+// DiabetesDoc is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// DiabetesDoc is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with DiabetesDoc. If not, see <http://www.gnu.org/licenses/>.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the merge of the new and the old entries of a day by {@link XML_IO#merge(List, List)}.
+ * @version 0.1 - last modified 2026-10-17
+ */
+public class XML_IOTest extends TestCase {
+  /**
+   * A pump day with several BASAL entries at 00:00 keeps all of them,
+   * if a bg-device only adds a BG entry.
+   */
+  public void testMergeKeepsOldEntriesOfSameKey() {
+    List<DayRecord> old = Arrays.asList(
+        entry("BASAL", "00:00", "profile", "1"),
+        entry("BASAL", "00:00", "TBRdec", " 50%"),
+        entry("BASAL", "00:00", "remark", "Stop"),
+        entry("BOLUS", "08:00", "amount", "4.5"));
+    List<DayRecord> day = Arrays.asList(entry("BG", "07:55", "Val", "120"));
+
+    List<DayRecord> merged = XML_IO.merge(day, new ArrayList<DayRecord>(old));
+    assertEquals("[BASAL 00:00 profile=1, BASAL 00:00 TBRdec= 50%, BASAL 00:00 remark=Stop,"
+        + " BG 07:55 Val=120, BOLUS 08:00 amount=4.5]", toString(merged));
+  }
+
+  /**
+   * Old entries are replaced by new entries with the same date, time and name.
+   */
+  public void testMergeReplacesOldEntriesOfNewKey() {
+    List<DayRecord> old = Arrays.asList(
+        entry("BASAL", "00:00", "profile", "1"),
+        entry("BASAL", "00:00", "remark", "Stop"),
+        entry("BG", "07:55", "Val", "118"),
+        entry("BG", "07:55", "Val", "119"));
+    List<DayRecord> day = Arrays.asList(
+        entry("BASAL", "00:00", "profile", "2"),
+        entry("BG", "07:55", "Val", "120"));
+
+    List<DayRecord> merged = XML_IO.merge(day, new ArrayList<DayRecord>(old));
+    assertEquals("[BASAL 00:00 profile=2, BG 07:55 Val=120]", toString(merged));
+  }
+
+  /**
+   * Re-importing the same entries leaves the day unchanged.
+   */
+  public void testMergeOfSameEntriesIsUnchanged() {
+    List<DayRecord> old = Arrays.asList(
+        entry("BASAL", "00:00", "profile", "1"),
+        entry("BASAL", "00:00", "remark", "Stop"),
+        entry("BG", "07:55", "Val", "120"));
+
+    List<DayRecord> merged = XML_IO.merge(old, new ArrayList<DayRecord>(old));
+    assertEquals(DayRecord.fingerprint(old), DayRecord.fingerprint(merged));
+  }
+
+  private static DayRecord entry(String name, String time, String attribute, String value) {
+    return new DayRecord(name, new String[]{ "Dt", "2015-03-01", "Tm", time, attribute, value }, null);
+  }
+
+  private static String toString(List<DayRecord> records) {
+    List<String> s = new ArrayList<String>();
+    for(DayRecord r : records)
+      s.add(r.name + " " + r.time + " " + r.getAttributeName(2) + "=" + r.getAttributeValue(2));
+    return s.toString();
+  }
+}